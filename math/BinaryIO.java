@@ -0,0 +1,252 @@
+package math;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Bulk reading and writing of arrays of numbers in the little-endian
+ * binary format of MappedDoubleMatrix, through channels (writeTo and
+ * readFrom of the vector and matrix classes) or through the
+ * DataOutput and DataInput of serialization (their writeObject and
+ * readObject). Arrays are converted a buffer at a time, through a
+ * DoubleBuffer or IntBuffer view of a ByteBuffer, rather than an
+ * element at a time.
+ *
+ * Matrices of ints have the same format as matrices of doubles, with
+ * the magic number INT_MAGIC instead of MappedDoubleMatrix.MAGIC.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+class BinaryIO {
+
+    /**
+     * The number of bytes converted at a time.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The magic number of a matrix of ints ("IMAT" as ASCII).
+     */
+    static final int INT_MAGIC = 0x54414D49;
+
+    /**
+     * Returns the header for a rows x columns matrix with the given
+     * magic number, ready to be written.
+     */
+    static ByteBuffer header(int magic, int rows, int columns) {
+	ByteBuffer header = ByteBuffer.allocate(MappedDoubleMatrix.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	header.putInt(magic).putInt(MappedDoubleMatrix.VERSION).putInt(rows).putInt(columns);
+	header.flip();
+
+	return header;
+    }
+
+    /**
+     * Reads a header with the given magic number from the given
+     * buffer, returning the numbers of rows and columns; throws
+     * IOException if it isn't a valid header.
+     */
+    static int[] readHeader(ByteBuffer header, int magic) throws IOException {
+	header.order(ByteOrder.LITTLE_ENDIAN);
+
+	int m = header.getInt();
+	int version = header.getInt();
+	int rows = header.getInt();
+	int columns = header.getInt();
+
+	if (m != magic) {
+	    throw new IOException("Not a binary matrix file (bad magic number " + Integer.toHexString(m) + ").");
+	}
+
+	if (version != MappedDoubleMatrix.VERSION) {
+	    throw new IOException("Unsupported binary matrix version: " + version + ".");
+	}
+
+	if ((rows < 0) || (columns < 0)) {
+	    throw new IOException("Invalid matrix dimensions: " + rows + "x" + columns + ".");
+	}
+
+	return new int[]{rows, columns};
+    }
+
+    /**
+     * Returns the number of elements of a matrix with the dimensions
+     * returned by readHeader, throwing IOException if it has too many
+     * to be read into a single array in the heap (unlike a
+     * MappedDoubleMatrix, which may be larger).
+     */
+    static int heapSize(int[] dims) throws IOException {
+	long size = (long) dims[0] * dims[1];
+
+	if (size > Integer.MAX_VALUE) {
+	    throw new IOException("Matrix too large for the heap: " + dims[0] + "x" + dims[1] + ".");
+	}
+
+	return (int) size;
+    }
+
+    /**
+     * Reads a header with the given magic number from the given
+     * channel; see readHeader(ByteBuffer, int).
+     */
+    static int[] readHeader(ReadableByteChannel channel, int magic) throws IOException {
+	ByteBuffer header = ByteBuffer.allocate(MappedDoubleMatrix.HEADER_SIZE);
+
+	readFully(channel, header);
+	header.flip();
+
+	return readHeader(header, magic);
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+    }
+
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    if (channel.read(buffer) < 0) {
+		throw new EOFException("Unexpected end of binary matrix data.");
+	    }
+	}
+    }
+
+    /**
+     * Returns a buffer for converting n elements of the given size,
+     * of at most BUFFER_SIZE bytes (the byte count of a large array
+     * overflows an int).
+     */
+    private static ByteBuffer buffer(int n, int size) {
+	return ByteBuffer.allocate((int) Math.min((long) size * n, BUFFER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes a[off] to a[off + n - 1] to the given channel.
+     */
+    static void write(WritableByteChannel channel, double[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 8);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 8);
+
+	    buffer.clear();
+	    buffer.asDoubleBuffer().put(a, off + k, m);
+	    buffer.limit(8 * m);
+	    writeFully(channel, buffer);
+	    k += m;
+	}
+    }
+
+    /**
+     * Reads a[off] to a[off + n - 1] from the given channel.
+     */
+    static void read(ReadableByteChannel channel, double[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 8);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 8);
+
+	    buffer.clear();
+	    buffer.limit(8 * m);
+	    readFully(channel, buffer);
+	    buffer.flip();
+	    buffer.asDoubleBuffer().get(a, off + k, m);
+	    k += m;
+	}
+    }
+
+    static void write(WritableByteChannel channel, int[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 4);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 4);
+
+	    buffer.clear();
+	    buffer.asIntBuffer().put(a, off + k, m);
+	    buffer.limit(4 * m);
+	    writeFully(channel, buffer);
+	    k += m;
+	}
+    }
+
+    static void read(ReadableByteChannel channel, int[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 4);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 4);
+
+	    buffer.clear();
+	    buffer.limit(4 * m);
+	    readFully(channel, buffer);
+	    buffer.flip();
+	    buffer.asIntBuffer().get(a, off + k, m);
+	    k += m;
+	}
+    }
+
+    /**
+     * Writes a[off] to a[off + n - 1] to the given output, as raw
+     * little-endian bytes.
+     */
+    static void write(DataOutput out, double[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 8);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 8);
+
+	    buffer.clear();
+	    buffer.asDoubleBuffer().put(a, off + k, m);
+	    out.write(buffer.array(), 0, 8 * m);
+	    k += m;
+	}
+    }
+
+    static void read(DataInput in, double[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 8);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 8);
+
+	    buffer.clear();
+	    in.readFully(buffer.array(), 0, 8 * m);
+	    buffer.asDoubleBuffer().get(a, off + k, m);
+	    k += m;
+	}
+    }
+
+    static void write(DataOutput out, int[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 4);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 4);
+
+	    buffer.clear();
+	    buffer.asIntBuffer().put(a, off + k, m);
+	    out.write(buffer.array(), 0, 4 * m);
+	    k += m;
+	}
+    }
+
+    static void read(DataInput in, int[] a, int off, int n) throws IOException {
+	ByteBuffer buffer = buffer(n, 4);
+
+	for (int k = 0; k < n; ) {
+	    int m = Math.min(n - k, buffer.capacity() / 4);
+
+	    buffer.clear();
+	    in.readFully(buffer.array(), 0, 4 * m);
+	    buffer.asIntBuffer().get(a, off + k, m);
+	    k += m;
+	}
+    }
+
+}
@@ -0,0 +1,291 @@
+package math;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A cache-blocked, multi-threaded matrix multiplication kernel for
+ * large matrices.
+ *
+ * The product is divided into tiles of TILE_ROWS x TILE_COLUMNS
+ * elements, and the tiles are computed in parallel in a shared
+ * ForkJoinPool. Within a tile, the inner dimension is processed in
+ * blocks of TILE_INNER, so that the block of the second matrix being
+ * read (TILE_INNER x TILE_COLUMNS doubles, or 256K) stays in the L2
+ * cache while every row of the tile is run past it. The innermost
+ * loop computes a 4 x 4 block of the product in local variables
+ * (which the JIT keeps in registers), so each element loaded from
+ * either matrix is used four times.
+ *
+ * Unlike DoubleMatrix.transposingMultiply, the second matrix is never
+ * transposed: its rows are read contiguously, four columns at a time.
+ * For the product m1 * diag(w) * m2, each tile scales the block of
+ * the second matrix it is about to read by the weights into a
+ * block-sized buffer, so the weighted matrix is never formed.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+class BlockedMultiply {
+
+    static final int TILE_ROWS = 64;
+
+    static final int TILE_COLUMNS = 128;
+
+    static final int TILE_INNER = 256;
+
+    /**
+     * The pool in which tiles are computed, created on first use.
+     */
+    private static ForkJoinPool pool;
+
+    static synchronized ForkJoinPool pool() {
+	if (pool == null) {
+	    pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	return pool;
+    }
+
+    /**
+     * Stores the product of m1 and m2, which must have compatible
+     * dimensions, in p, which must not share storage with either of
+     * them.
+     */
+    static void multiply(DoubleMatrix m1, DoubleMatrix m2, DoubleMatrix p) {
+	multiply(m1, null, m2, p, false);
+    }
+
+    /**
+     * Stores m1 * diag(w) * m2 in p, which must not share storage with
+     * any of them; w may be null, for m1 * m2. If symmetric is true,
+     * the product is known to be symmetric (e.g., m1 is the transpose
+     * of m2), so the tiles wholly below the diagonal are skipped, and
+     * the lower triangle is copied from the upper.
+     */
+    static void multiply(DoubleMatrix m1, DoubleVector w, DoubleMatrix m2, DoubleMatrix p, boolean symmetric) {
+	/*
+	 * The kernel reads the rows of m2 and writes the rows of p
+	 * four elements at a time, so they need to be contiguous; m1
+	 * may have any strides.
+	 */
+	if (m2.columnStride != 1) {
+	    m2 = m2.clone();
+	}
+
+	if (p.columnStride != 1) {
+	    DoubleMatrix q = new DoubleMatrix(p.rows, p.columns);
+
+	    multiply(m1, w, m2, q, symmetric);
+
+	    for (int i = 0; i < p.rows; i += 1) {
+		for (int j = 0; j < p.columns; j += 1) {
+		    p.set(i, j, q.data[i * q.columns + j]);
+		}
+	    }
+
+	    return;
+	}
+
+	// The tiles accumulate into p.
+	for (int i = 0; i < p.rows; i += 1) {
+	    p.fillRow(i, 0);
+	}
+
+	int rowTiles = (p.rows + TILE_ROWS - 1) / TILE_ROWS;
+	int columnTiles = (p.columns + TILE_COLUMNS - 1) / TILE_COLUMNS;
+
+	pool().invoke(new Tiles(m1, w, m2, p, symmetric, columnTiles, 0, rowTiles * columnTiles));
+
+	if (symmetric) {
+	    for (int i = 0; i < p.rows; i += 1) {
+		for (int j = 0; j < i; j += 1) {
+		    p.data[p.index(i, j)] = p.data[p.index(j, i)];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Computes a range of tiles of the product, numbered in row-major
+     * order, splitting the range in half until a single tile remains.
+     */
+    private static class Tiles extends RecursiveAction {
+
+	private final DoubleMatrix m1;
+	private final DoubleVector w;
+	private final DoubleMatrix m2;
+	private final DoubleMatrix p;
+	private final boolean symmetric;
+	private final int columnTiles;
+	private final int lo;
+	private final int hi;
+
+	Tiles(DoubleMatrix m1, DoubleVector w, DoubleMatrix m2, DoubleMatrix p, boolean symmetric, int columnTiles, int lo, int hi) {
+	    this.m1 = m1;
+	    this.w = w;
+	    this.m2 = m2;
+	    this.p = p;
+	    this.symmetric = symmetric;
+	    this.columnTiles = columnTiles;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected void compute() {
+	    if (hi - lo == 1) {
+		int i0 = (lo / columnTiles) * TILE_ROWS;
+		int j0 = (lo % columnTiles) * TILE_COLUMNS;
+		int j1 = Math.min(j0 + TILE_COLUMNS, p.columns);
+
+		if (!symmetric || (j1 > i0)) {
+		    tile(m1, w, m2, p, i0, Math.min(i0 + TILE_ROWS, p.rows), j0, j1);
+		}
+	    } else {
+		int mid = (lo + hi) >>> 1;
+
+		invokeAll(new Tiles(m1, w, m2, p, symmetric, columnTiles, lo, mid),
+			  new Tiles(m1, w, m2, p, symmetric, columnTiles, mid, hi));
+	    }
+	}
+
+    }
+
+    /**
+     * Computes rows i0 (inclusive) to i1 (exclusive) and columns j0
+     * to j1 of the product p = m1 * m2, adding them to the elements
+     * of p. The rows of m2 and p must be contiguous.
+     */
+    static void tile(DoubleMatrix m1, DoubleMatrix m2, DoubleMatrix p, int i0, int i1, int j0, int j1) {
+	tile(m1, null, m2, p, i0, i1, j0, j1);
+    }
+
+    /**
+     * Computes rows i0 to i1 and columns j0 to j1 of the product p =
+     * m1 * diag(w) * m2, adding them to the elements of p; w may be
+     * null, for m1 * m2.
+     */
+    static void tile(DoubleMatrix m1, DoubleVector w, DoubleMatrix m2, DoubleMatrix p, int i0, int i1, int j0, int j1) {
+	double[] scaled = (w == null) ? null : new double[Math.min(TILE_INNER, m1.columns) * (j1 - j0)];
+
+	for (int k0 = 0; k0 < m1.columns; k0 += TILE_INNER) {
+	    int k1 = Math.min(k0 + TILE_INNER, m1.columns);
+	    DoubleMatrix b = (w == null) ? m2 : scale(m2, w, k0, k1, j0, j1, scaled);
+	    int i = i0;
+
+	    for (; i + 4 <= i1; i += 4) {
+		int j = j0;
+
+		for (; j + 4 <= j1; j += 4) {
+		    block4x4(m1, b, p, i, j, k0, k1);
+		}
+
+		for (; j < j1; j += 1) {
+		    for (int ii = i; ii < i + 4; ii += 1) {
+			p.data[p.index(ii, j)] += dot(m1, b, ii, j, k0, k1);
+		    }
+		}
+	    }
+
+	    for (; i < i1; i += 1) {
+		for (int j = j0; j < j1; j += 1) {
+		    p.data[p.index(i, j)] += dot(m1, b, i, j, k0, k1);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Copies rows k0 to k1 and columns j0 to j1 of m2 into buffer,
+     * scaling row k by w[k], and returns a view of the copy indexed
+     * like m2 (so only those rows and columns may be read from it).
+     */
+    private static DoubleMatrix scale(DoubleMatrix m2, DoubleVector w, int k0, int k1, int j0, int j1, double[] buffer) {
+	int width = j1 - j0;
+
+	for (int k = k0; k < k1; k += 1) {
+	    double wk = w.data[w.offset + k];
+	    int from = m2.index(k, j0);
+	    int to = (k - k0) * width;
+
+	    for (int j = 0; j < width; j += 1) {
+		buffer[to + j] = wk * m2.data[from + j];
+	    }
+	}
+
+	return new DoubleMatrix(buffer, -(k0 * width + j0), m2.rows, m2.columns, width, 1);
+    }
+
+    /**
+     * Accumulates the 4 x 4 block of the product at rows i to i + 3
+     * and columns j to j + 3, over the inner indices k0 to k1.
+     */
+    private static void block4x4(DoubleMatrix m1, DoubleMatrix m2, DoubleMatrix p, int i, int j, int k0, int k1) {
+	double[] a = m1.data;
+	double[] b = m2.data;
+	double[] c = p.data;
+
+	int as = m1.columnStride;
+	int a0 = m1.index(i, k0);
+	int a1 = a0 + m1.rowStride;
+	int a2 = a1 + m1.rowStride;
+	int a3 = a2 + m1.rowStride;
+	int bk = m2.index(k0, j);
+
+	double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+	double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+	double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+	double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+	for (int k = k0; k < k1; k += 1) {
+	    double b0 = b[bk];
+	    double b1 = b[bk + 1];
+	    double b2 = b[bk + 2];
+	    double b3 = b[bk + 3];
+
+	    double x = a[a0];
+	    c00 += x * b0; c01 += x * b1; c02 += x * b2; c03 += x * b3;
+	    x = a[a1];
+	    c10 += x * b0; c11 += x * b1; c12 += x * b2; c13 += x * b3;
+	    x = a[a2];
+	    c20 += x * b0; c21 += x * b1; c22 += x * b2; c23 += x * b3;
+	    x = a[a3];
+	    c30 += x * b0; c31 += x * b1; c32 += x * b2; c33 += x * b3;
+
+	    a0 += as;
+	    a1 += as;
+	    a2 += as;
+	    a3 += as;
+	    bk += m2.rowStride;
+	}
+
+	int c0 = p.index(i, j);
+	int c1 = c0 + p.rowStride;
+	int c2 = c1 + p.rowStride;
+	int c3 = c2 + p.rowStride;
+
+	c[c0] += c00; c[c0 + 1] += c01; c[c0 + 2] += c02; c[c0 + 3] += c03;
+	c[c1] += c10; c[c1 + 1] += c11; c[c1 + 2] += c12; c[c1 + 3] += c13;
+	c[c2] += c20; c[c2 + 1] += c21; c[c2 + 2] += c22; c[c2 + 3] += c23;
+	c[c3] += c30; c[c3 + 1] += c31; c[c3 + 2] += c32; c[c3 + 3] += c33;
+    }
+
+    /**
+     * Returns the dot product of the elements k0 to k1 of row i of m1
+     * with the same elements of column j of m2.
+     */
+    private static double dot(DoubleMatrix m1, DoubleMatrix m2, int i, int j, int k0, int k1) {
+	int a = m1.index(i, k0);
+	int b = m2.index(k0, j);
+	double s = 0;
+
+	for (int k = k0; k < k1; k += 1) {
+	    s += m1.data[a] * m2.data[b];
+	    a += m1.columnStride;
+	    b += m2.rowStride;
+	}
+
+	return s;
+    }
+
+}
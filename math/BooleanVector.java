@@ -4,51 +4,112 @@ import java.io.Serializable;
 import java.util.Arrays;
 
 /**
- * A vector of booleans.
+ * A vector of booleans, packed 64 to a long: element i is bit (i %
+ * 64) of word (i / 64). The bits of the last word beyond the end of
+ * the vector are always zero, so the logical operations, counting and
+ * comparison work a word at a time without masking, and the true
+ * elements can be enumerated quickly with nextSetBit.
  *
  * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
- * @version 20050718
+ * @version 20261017
  */
 public class BooleanVector implements Cloneable, Serializable {
 
-    protected boolean[] data;
+    protected long[] words;
     protected int length;
 
     public BooleanVector(boolean[] data) {
-	this.data = data;
-	this.length = data.length;
+	this(data.length);
+	for (int i = 0; i < length; ++i) {
+	    if (data[i]) {
+		words[i >>> 6] |= 1L << i;
+	    }
+	}
     }
 
     public BooleanVector(int length, boolean fill) {
-	this.data = new boolean[length];
+	this.words = new long[words(length)];
 	this.length = length;
-	Arrays.fill(this.data, fill);
+	fill(fill);
     }
 
     public BooleanVector(int length) {
 	this(length, false);
     }
 
+    /**
+     * Returns the number of words needed for the given number of
+     * elements.
+     */
+    private static int words(int length) {
+	return (length + 63) >>> 6;
+    }
+
     public boolean get(int i) {
-	return data[i];
+	checkIndex(i);
+	return (words[i >>> 6] & (1L << i)) != 0;
     }
 
     public void set(int i, boolean b) {
-	data[i] = b;
+	checkIndex(i);
+	if (b) {
+	    words[i >>> 6] |= 1L << i;
+	} else {
+	    words[i >>> 6] &= ~(1L << i);
+	}
     }
 
     public void fill(boolean b) {
-	Arrays.fill(this.data, b);
+	Arrays.fill(words, b ? -1L : 0L);
+	clearTail();
     }
 
     public int length() {
 	return length;
     }
 
+    /**
+     * Returns the index of the first true element at or after from, or
+     * -1 if there is none. The true elements are enumerated by
+     *
+     * for (int i = bv.nextSetBit(0); i >= 0; i = bv.nextSetBit(i + 1))
+     */
+    public int nextSetBit(int from) {
+	if (from < 0) {
+	    throw new IndexOutOfBoundsException("from < 0: " + from);
+	}
+	if (from >= length) {
+	    return -1;
+	}
+
+	int w = from >>> 6;
+	long word = words[w] & (-1L << from);
+
+	while (word == 0) {
+	    if (++w == words.length) {
+		return -1;
+	    }
+	    word = words[w];
+	}
+	return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns the indices of the true elements, in increasing order.
+     */
+    public int[] indices() {
+	int[] indices = new int[countTrue()];
+	int n = 0;
+	for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+	    indices[n++] = i;
+	}
+	return indices;
+    }
+
     public BooleanVector copy() {
-	boolean[] b = new boolean[this.length];
-	System.arraycopy(this.data, 0, b, 0, this.length);
-	return new BooleanVector(b);
+	BooleanVector copy = new BooleanVector(this.length);
+	System.arraycopy(this.words, 0, copy.words, 0, this.words.length);
+	return copy;
     }
 
     public Object clone() {
@@ -59,11 +120,11 @@ public class BooleanVector implements Cloneable, Serializable {
 	StringBuffer sb = new StringBuffer();
 
 	sb.append('[');
-	if (data.length > 0) {
-	    sb.append(data[0]);
-	    for (int i = 1; i < data.length; ++i) {
+	if (length > 0) {
+	    sb.append(get(0));
+	    for (int i = 1; i < length; ++i) {
 		sb.append(' ');
-		sb.append(data[i]);
+		sb.append(get(i));
 	    }
 	}
 	sb.append(']');
@@ -75,8 +136,8 @@ public class BooleanVector implements Cloneable, Serializable {
 	checkLengths(this, bv);
 
 	BooleanVector and = new BooleanVector(this.length);
-	for (int i = 0; i < and.length; ++i) {
-	    and.data[i] = this.data[i] & bv.data[i];
+	for (int i = 0; i < and.words.length; ++i) {
+	    and.words[i] = this.words[i] & bv.words[i];
 	}
 	return and;
     }
@@ -85,17 +146,18 @@ public class BooleanVector implements Cloneable, Serializable {
 	checkLengths(this, bv);
 
 	BooleanVector or = new BooleanVector(this.length);
-	for (int i = 0; i < or.length; ++i) {
-	    or.data[i] = this.data[i] | bv.data[i];
+	for (int i = 0; i < or.words.length; ++i) {
+	    or.words[i] = this.words[i] | bv.words[i];
 	}
 	return or;
     }
 
     public BooleanVector not() {
 	BooleanVector not = new BooleanVector(this.length);
-	for (int i = 0; i < not.length; ++i) {
-	    not.data[i] = !this.data[i];
+	for (int i = 0; i < not.words.length; ++i) {
+	    not.words[i] = ~this.words[i];
 	}
+	not.clearTail();
 	return not;
     }
 
@@ -103,25 +165,23 @@ public class BooleanVector implements Cloneable, Serializable {
 	checkLengths(this, bv);
 
 	BooleanVector diff = new BooleanVector(this.length);
-	for (int i = 0; i < diff.length; ++i) {
-	    diff.data[i] = this.data[i] & (!bv.data[i]);
+	for (int i = 0; i < diff.words.length; ++i) {
+	    diff.words[i] = this.words[i] & ~bv.words[i];
 	}
 	return diff;
     }
 
     public int countTrue() {
 	int n = 0;
-	for (int i = 0; i < length; ++i) {
-	    if (data[i]) {
-		++n;
-	    }
+	for (int i = 0; i < words.length; ++i) {
+	    n += Long.bitCount(words[i]);
 	}
 	return n;
     }
 
     public boolean some() {
-	for (int i = 0; i < length; ++i) {
-	    if (data[i]) {
+	for (int i = 0; i < words.length; ++i) {
+	    if (words[i] != 0) {
 		return true;
 	    }
 	}
@@ -129,12 +189,7 @@ public class BooleanVector implements Cloneable, Serializable {
     }
 
     public boolean every() {
-	for (int i = 0; i < length; ++i) {
-	    if (!data[i]) {
-		return false;
-	    }
-	}
-	return true;
+	return countTrue() == length;
     }
 
     public boolean equals(Object o) {
@@ -170,12 +225,22 @@ public class BooleanVector implements Cloneable, Serializable {
     }
 
     protected static boolean elementsEqual(BooleanVector bv1, BooleanVector bv2) {
-	for (int i = 0; i < bv1.length; ++i) {
-	    if (bv1.data[i] != bv2.data[i]) {
-		return false;
-	    }
+	return Arrays.equals(bv1.words, bv2.words);
+    }
+
+    /**
+     * Zeroes the bits of the last word beyond the end of the vector.
+     */
+    private void clearTail() {
+	if ((length & 63) != 0) {
+	    words[words.length - 1] &= (1L << length) - 1;
+	}
+    }
+
+    private void checkIndex(int i) {
+	if ((i < 0) || (i >= length)) {
+	    throw new IndexOutOfBoundsException("Index " + i + " out of range: length " + length + ".");
 	}
-	return true;
     }
 
     private static void checkLengths(BooleanVector bv1, BooleanVector bv2) {
@@ -0,0 +1,364 @@
+package math;
+
+/**
+ * The Cholesky decomposition of a symmetric positive-definite matrix:
+ * A = L * L', where L is lower triangular with positive diagonal
+ * elements.
+ *
+ * Only the lower triangle (including the diagonal) of the matrix is
+ * read; it is assumed, but not checked, that the matrix is
+ * symmetric. If the matrix turns out not to be positive definite
+ * (some diagonal element of L would be the square root of a number
+ * which is not positive), the factorization stops, and solve,
+ * inverse and the determinant methods throw SingularMatrixException.
+ *
+ * The factorization takes about half the time of an LU
+ * decomposition, and systems involving the factored matrix are
+ * solved by two triangular solves, each O(n^2).
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class CholeskyDecomposition {
+
+    /**
+     * The factor L, stored in the lower triangle of an n x n matrix;
+     * the strict upper triangle is zero.
+     */
+    private final DoubleMatrix l;
+
+    /**
+     * The index of the row at which the factorization failed, or -1
+     * if the matrix is positive definite.
+     */
+    private int failedRow;
+
+    private final int n;
+
+    /**
+     * Factors the given matrix, which must be square. The matrix
+     * itself is not modified.
+     */
+    public CholeskyDecomposition(DoubleMatrix a) {
+	if (!a.isSquare()) {
+	    throw new IllegalArgumentException("Matrix is not square: " + a.rows + " x " + a.columns + ".");
+	}
+
+	this.n = a.rows;
+	this.l = new DoubleMatrix(n, n);
+	this.failedRow = -1;
+
+	factor(a);
+    }
+
+    /**
+     * Computes L row by row (the Cholesky-Banachiewicz order), so
+     * that each element is obtained from the dot product of two
+     * contiguous row prefixes of L.
+     */
+    private void factor(DoubleMatrix a) {
+	double[] d = l.data;
+
+	for (int i = 0; i < n; i += 1) {
+	    int ri = i * n;
+
+	    for (int j = 0; j <= i; j += 1) {
+		int rj = j * n;
+		double s = a.get(i, j);
+
+		for (int k = 0; k < j; k += 1) {
+		    s -= d[ri + k] * d[rj + k];
+		}
+
+		if (i == j) {
+		    if (!(s > 0)) {
+			failedRow = i;
+			return;
+		    }
+
+		    d[ri + i] = Math.sqrt(s);
+		} else {
+		    d[ri + j] = s / d[rj + j];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Returns the size of the factored matrix.
+     */
+    public int size() {
+	return n;
+    }
+
+    /**
+     * Returns true if the factored matrix is positive definite (and
+     * therefore the factorization succeeded).
+     */
+    public boolean isPositiveDefinite() {
+	return failedRow < 0;
+    }
+
+    /**
+     * Returns the lower triangular factor L.
+     */
+    public DoubleMatrix getL() {
+	return l.clone();
+    }
+
+    /**
+     * Returns the determinant of the factored matrix, the square of
+     * the product of the diagonal elements of L.
+     */
+    public double determinant() throws SingularMatrixException {
+	checkPositiveDefinite();
+
+	double p = 1;
+
+	for (int i = 0; i < n; i += 1) {
+	    p *= l.data[i * n + i];
+	}
+
+	return p * p;
+    }
+
+    /**
+     * Returns the natural logarithm of the determinant of the
+     * factored matrix. Unlike determinant(), this does not overflow
+     * or underflow for large matrices.
+     */
+    public double logDeterminant() throws SingularMatrixException {
+	checkPositiveDefinite();
+
+	double s = 0;
+
+	for (int i = 0; i < n; i += 1) {
+	    s += Math.log(l.data[i * n + i]);
+	}
+
+	return 2 * s;
+    }
+
+    /**
+     * Returns the vector y such that L * y = b, by forward
+     * substitution.
+     */
+    public DoubleVector solveLower(DoubleVector b) throws SingularMatrixException {
+	checkLength(b);
+	checkPositiveDefinite();
+
+	DoubleVector y = b.clone();
+	forward(y.data);
+
+	return y;
+    }
+
+    /**
+     * Returns the vector x such that L' * x = y, by back
+     * substitution.
+     */
+    public DoubleVector solveUpper(DoubleVector y) throws SingularMatrixException {
+	checkLength(y);
+	checkPositiveDefinite();
+
+	DoubleVector x = y.clone();
+	backward(x.data);
+
+	return x;
+    }
+
+    /**
+     * Returns the vector x such that A * x = b, where A is the
+     * factored matrix.
+     */
+    public DoubleVector solve(DoubleVector b) throws SingularMatrixException {
+	checkLength(b);
+	checkPositiveDefinite();
+
+	DoubleVector x = b.clone();
+	forward(x.data);
+	backward(x.data);
+
+	return x;
+    }
+
+    /**
+     * Returns the matrix X such that A * X = B, where A is the
+     * factored matrix.
+     */
+    public DoubleMatrix solve(DoubleMatrix b) throws SingularMatrixException {
+	if (b.rows != n) {
+	    throw new IllegalArgumentException("Size of matrix doesn't match rows of right-hand side: " + n + ", " + b.rows + ".");
+	}
+
+	checkPositiveDefinite();
+
+	int m = b.columns;
+	double[] d = l.data;
+	DoubleMatrix x = b.clone();
+	double[] y = x.data;
+
+	// Solve L * Y = B, a row of Y at a time.
+	for (int i = 0; i < n; i += 1) {
+	    int ri = i * m;
+
+	    for (int k = 0; k < i; k += 1) {
+		double lik = d[i * n + k];
+
+		if (lik != 0) {
+		    int rk = k * m;
+
+		    for (int j = 0; j < m; j += 1) {
+			y[ri + j] -= lik * y[rk + j];
+		    }
+		}
+	    }
+
+	    double lii = d[i * n + i];
+
+	    for (int j = 0; j < m; j += 1) {
+		y[ri + j] /= lii;
+	    }
+	}
+
+	// Solve L' * X = Y.
+	for (int i = n - 1; i >= 0; i -= 1) {
+	    int ri = i * m;
+	    double lii = d[i * n + i];
+
+	    for (int j = 0; j < m; j += 1) {
+		y[ri + j] /= lii;
+	    }
+
+	    for (int k = 0; k < i; k += 1) {
+		double lik = d[i * n + k];
+
+		if (lik != 0) {
+		    int rk = k * m;
+
+		    for (int j = 0; j < m; j += 1) {
+			y[rk + j] -= lik * y[ri + j];
+		    }
+		}
+	    }
+	}
+
+	return x;
+    }
+
+    /**
+     * Returns the inverse of the factored matrix.
+     */
+    public DoubleMatrix inverse() throws SingularMatrixException {
+	return solve(Matrices.identity(n));
+    }
+
+    /**
+     * Returns L * z. If z is a vector of independent standard normal
+     * variates, L * z is multivariate normal with mean zero and
+     * covariance A.
+     */
+    public DoubleVector multiplyL(DoubleVector z) throws SingularMatrixException {
+	checkLength(z);
+	checkPositiveDefinite();
+
+	DoubleVector x = z.clone();
+	multiplyL(x.data, 0);
+
+	return x;
+    }
+
+    /**
+     * Returns the matrix whose ith row is L times the ith row of z;
+     * in other words, returns z * L'. If the elements of z are
+     * independent standard normal variates, the rows of the result
+     * are independent multivariate normal vectors with mean zero and
+     * covariance A.
+     */
+    public DoubleMatrix multiplyLRows(DoubleMatrix z) throws SingularMatrixException {
+	if (z.columns != n) {
+	    throw new IllegalArgumentException("Size of matrix doesn't match columns of argument: " + n + ", " + z.columns + ".");
+	}
+
+	checkPositiveDefinite();
+
+	DoubleMatrix x = z.clone();
+
+	for (int i = 0; i < x.rows; i += 1) {
+	    multiplyL(x.data, i * n);
+	}
+
+	return x;
+    }
+
+    /**
+     * Replaces the n elements of x starting at start with their
+     * product with L. Working from the last element to the first
+     * allows this to be done in place, since element i of the product
+     * depends only on elements 0 to i.
+     */
+    void multiplyL(double[] x, int start) {
+	double[] d = l.data;
+
+	for (int i = n - 1; i >= 0; i -= 1) {
+	    int ri = i * n;
+	    double s = 0;
+
+	    for (int k = 0; k <= i; k += 1) {
+		s += d[ri + k] * x[start + k];
+	    }
+
+	    x[start + i] = s;
+	}
+    }
+
+    /**
+     * Solves L * y = b in place.
+     */
+    private void forward(double[] y) {
+	double[] d = l.data;
+
+	for (int i = 0; i < n; i += 1) {
+	    int ri = i * n;
+	    double s = y[i];
+
+	    for (int k = 0; k < i; k += 1) {
+		s -= d[ri + k] * y[k];
+	    }
+
+	    y[i] = s / d[ri + i];
+	}
+    }
+
+    /**
+     * Solves L' * x = y in place. L' is traversed by columns of L', so
+     * that L is still read by rows.
+     */
+    private void backward(double[] x) {
+	double[] d = l.data;
+
+	for (int i = n - 1; i >= 0; i -= 1) {
+	    int ri = i * n;
+	    double xi = x[i] / d[ri + i];
+
+	    x[i] = xi;
+
+	    for (int k = 0; k < i; k += 1) {
+		x[k] -= d[ri + k] * xi;
+	    }
+	}
+    }
+
+    private void checkLength(DoubleVector b) {
+	if (b.length != n) {
+	    throw new IllegalArgumentException("Size of matrix doesn't match length of vector: " + n + ", " + b.length + ".");
+	}
+    }
+
+    private void checkPositiveDefinite() throws SingularMatrixException {
+	if (!isPositiveDefinite()) {
+	    throw new SingularMatrixException("Matrix is not positive definite (row " + failedRow + ").");
+	}
+    }
+
+}
@@ -0,0 +1,370 @@
+package math;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes covariance and correlation matrices of the columns of a
+ * matrix, either all at once or from rows supplied a block at a time.
+ *
+ * The static methods center the matrix once (subtracting the mean of
+ * each column), and then compute the cross product C' * C of the
+ * centered matrix C with a symmetric rank-k update: only the tiles on
+ * or above the diagonal are computed, in parallel in the
+ * BlockedMultiply pool and with its tile kernel, and the rest are
+ * copied from them. (For narrow matrices, whose cross product is a
+ * single tile, the rows are split between threads instead; see
+ * TransposeMultiply.) Centering first is both faster than computing
+ * each covariance separately and more accurate than the
+ * sum-of-products formula, which suffers from cancellation when the
+ * means are large compared to the standard deviations.
+ *
+ * An instance accumulates the means and the centered cross products
+ * of the rows added to it, so the rows never need to be held in
+ * memory at once. Each block of rows is centered on its own mean and
+ * combined with the running totals by the pairwise update of Chan,
+ * Golub and LeVeque, which is Welford's update when a block has a
+ * single row; two accumulators for disjoint sets of rows (e.g., from
+ * different threads) can be combined with merge. The centered block,
+ * its cross product, the partial cross products of the other threads
+ * and the other temporaries are kept between calls to add, so adding
+ * many blocks of the same size allocates no arrays.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class Covariance {
+
+    /**
+     * The size of the square tiles of the cross product computed by a
+     * single task.
+     */
+    static final int TILE = BlockedMultiply.TILE_COLUMNS;
+
+    private final int columns;
+
+    /**
+     * The number of rows added so far.
+     */
+    private long n;
+
+    private final DoubleVector mean;
+
+    /**
+     * The sums of the products of the deviations from the means, c x
+     * c.
+     */
+    private final DoubleMatrix m2;
+
+    /**
+     * Scratch space reused by add and merge: the means of a block, and
+     * their deviations from the running means.
+     */
+    private final DoubleVector blockMean;
+    private final DoubleVector delta;
+
+    /**
+     * Scratch space reused by add, allocated on first use: storage for
+     * the largest centered block so far, its c x c cross product, and
+     * the partial cross products of the threads other than the first
+     * (see TransposeMultiply).
+     */
+    private double[] centered = new double[0];
+    private DoubleMatrix product;
+    private double[][] partials;
+
+    /**
+     * Creates an accumulator for rows of the given length, with (as
+     * yet) no rows.
+     */
+    public Covariance(int columns) {
+	this.columns = columns;
+	this.n = 0;
+	this.mean = new DoubleVector(columns);
+	this.m2 = new DoubleMatrix(columns, columns);
+	this.blockMean = new DoubleVector(columns);
+	this.delta = new DoubleVector(columns);
+    }
+
+    public int columns() {
+	return columns;
+    }
+
+    /**
+     * Returns the number of rows added so far.
+     */
+    public long rows() {
+	return n;
+    }
+
+    /**
+     * Adds a single row.
+     */
+    public Covariance add(DoubleVector row) {
+	if (row.length != columns) {
+	    throw new IllegalArgumentException("Length of row doesn't match number of columns: " + row.length + ", " + columns + ".");
+	}
+
+	row.subtract(mean, delta);
+	n += 1;
+	mean.axpy(1.0 / n, delta);
+	m2.ger((n - 1.0) / n, delta, delta);
+
+	return this;
+    }
+
+    /**
+     * Adds the rows of the given matrix, which is not modified.
+     */
+    public Covariance add(DoubleMatrix block) {
+	if (block.columns != columns) {
+	    throw new IllegalArgumentException("Columns of block don't match: " + block.columns + ", " + columns + ".");
+	}
+
+	if (block.rows > 0) {
+	    long size = (long) block.rows * columns;
+
+	    if (size > centered.length) {
+		centered = new double[(int) size];
+	    }
+
+	    if (product == null) {
+		product = new DoubleMatrix(columns, columns);
+		partials = new double[BlockedMultiply.pool().getParallelism() - 1][];
+	    }
+
+	    DoubleMatrix c = new DoubleMatrix(centered, 0, block.rows, columns, columns, 1);
+
+	    columnMeans(block, blockMean);
+	    centered(block, blockMean, c);
+	    crossProduct(c, product, partials);
+	    combine(block.rows, blockMean, product);
+	}
+
+	return this;
+    }
+
+    /**
+     * Adds the rows summarized by another accumulator, which is not
+     * modified.
+     */
+    public Covariance merge(Covariance other) {
+	if (other.columns != columns) {
+	    throw new IllegalArgumentException("Numbers of columns don't match: " + other.columns + ", " + columns + ".");
+	}
+
+	if (other.n > 0) {
+	    combine(other.n, other.mean, other.m2);
+	}
+
+	return this;
+    }
+
+    /**
+     * Combines the totals for nb more rows, with means mb and centered
+     * cross products m2b, with the totals so far.
+     */
+    private void combine(long nb, DoubleVector mb, DoubleMatrix m2b) {
+	double total = (double) n + nb;
+
+	mb.subtract(mean, delta);
+	m2.addInPlace(m2b);
+	m2.ger(n * (nb / total), delta, delta);
+	mean.axpy(nb / total, delta);
+	n += nb;
+    }
+
+    /**
+     * Returns (a copy of) the means of the columns of the rows added
+     * so far.
+     */
+    public DoubleVector mean() {
+	return mean.clone();
+    }
+
+    /**
+     * Returns the (sample) variance-covariance matrix of the rows
+     * added so far.
+     */
+    public DoubleMatrix covariance() {
+	return m2.divide(n - 1.0);
+    }
+
+    /**
+     * Returns the correlation matrix of the rows added so far.
+     */
+    public DoubleMatrix correlation() {
+	return scaleToCorrelation(covariance());
+    }
+
+    /**
+     * Returns the variance-covariance matrix of the columns of x.
+     */
+    public static DoubleMatrix covariance(DoubleMatrix x) {
+	DoubleVector m = columnMeans(x, new DoubleVector(x.columns));
+	DoubleMatrix c = new DoubleMatrix(x.rows, x.columns);
+	DoubleMatrix s = new DoubleMatrix(x.columns, x.columns);
+
+	centered(x, m, c);
+	crossProduct(c, s, null);
+
+	return s.divideInPlace(x.rows - 1.0);
+    }
+
+    /**
+     * Returns the correlation matrix of the columns of x.
+     */
+    public static DoubleMatrix correlation(DoubleMatrix x) {
+	return scaleToCorrelation(covariance(x));
+    }
+
+    /**
+     * Divides the (i, j)th element of the given covariance matrix by
+     * the standard deviations of i and j, in place. The correlation of
+     * a column with zero variance is NaN.
+     */
+    private static DoubleMatrix scaleToCorrelation(DoubleMatrix cov) {
+	int c = cov.rows;
+	double[] s = new double[c];
+
+	for (int i = 0; i < c; i += 1) {
+	    s[i] = 1 / Math.sqrt(cov.get(i, i));
+	}
+
+	for (int i = 0; i < c; i += 1) {
+	    for (int j = 0; j < c; j += 1) {
+		cov.set(i, j, (i == j) && (cov.get(i, i) > 0) ? 1 : cov.get(i, j) * s[i] * s[j]);
+	    }
+	}
+
+	return cov;
+    }
+
+    /**
+     * Stores the means of the columns of x in m, and returns m.
+     */
+    private static DoubleVector columnMeans(DoubleMatrix x, DoubleVector m) {
+	m.fill(0);
+
+	for (int i = 0; i < x.rows; i += 1) {
+	    int r = x.index(i, 0);
+
+	    for (int j = 0; j < x.columns; j += 1) {
+		m.data[m.offset + j] += x.data[r + j * x.columnStride];
+	    }
+	}
+
+	return m.divideInPlace(x.rows);
+    }
+
+    /**
+     * Stores x with the given vector subtracted from each row in c,
+     * which must have the same dimensions as x and not share storage
+     * with it.
+     */
+    static void centered(DoubleMatrix x, DoubleVector m, DoubleMatrix c) {
+	for (int i = 0; i < x.rows; i += 1) {
+	    int rx = x.index(i, 0);
+	    int rc = c.index(i, 0);
+
+	    for (int j = 0; j < x.columns; j += 1) {
+		c.data[rc + j * c.columnStride] = x.data[rx + j * x.columnStride] - m.data[m.offset + j];
+	    }
+	}
+    }
+
+    /**
+     * Stores the symmetric matrix a' * a in s, which must be a
+     * contiguous a.columns x a.columns matrix. If the result is small
+     * enough, it is computed by TransposeMultiply, in parallel over
+     * ranges of rows, which suits tall, narrow matrices, with the
+     * given partial results (which may be null) reused. Otherwise,
+     * the tiles on or above the diagonal are computed in parallel for
+     * large products, and serially for small ones.
+     */
+    static void crossProduct(DoubleMatrix a, DoubleMatrix s, double[][] partials) {
+	int c = a.columns;
+
+	if ((long) c * c <= TransposeMultiply.STREAMING_LIMIT) {
+	    TransposeMultiply.multiply(a, null, a, s, partials);
+
+	    return;
+	}
+
+	if (a.columnStride != 1) {
+	    a = a.clone();
+	}
+
+	// The tiles accumulate into s.
+	for (int i = 0; i < c; i += 1) {
+	    s.fillRow(i, 0);
+	}
+
+	int tiles = (c + TILE - 1) / TILE;
+	Tiles task = new Tiles(a, s, tiles, 0, tiles * (tiles + 1) / 2);
+
+	if ((long) a.rows * c * c < DoubleMatrix.BLOCKED_THRESHOLD) {
+	    task.computeSerially();
+	} else {
+	    BlockedMultiply.pool().invoke(task);
+	}
+
+	for (int i = 0; i < c; i += 1) {
+	    for (int j = 0; j < i; j += 1) {
+		s.data[i * c + j] = s.data[j * c + i];
+	    }
+	}
+    }
+
+    /**
+     * Computes a range of the tiles on or above the diagonal of a' *
+     * a, numbered by rows of tiles, splitting the range in half until
+     * a single tile remains.
+     */
+    private static class Tiles extends RecursiveAction {
+
+	private final DoubleMatrix a;
+	private final DoubleMatrix s;
+	private final int tiles;
+	private final int lo;
+	private final int hi;
+
+	Tiles(DoubleMatrix a, DoubleMatrix s, int tiles, int lo, int hi) {
+	    this.a = a;
+	    this.s = s;
+	    this.tiles = tiles;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected void compute() {
+	    if (hi - lo <= 1) {
+		computeSerially();
+	    } else {
+		int mid = (lo + hi) >>> 1;
+
+		invokeAll(new Tiles(a, s, tiles, lo, mid),
+			  new Tiles(a, s, tiles, mid, hi));
+	    }
+	}
+
+	void computeSerially() {
+	    DoubleMatrix at = a.transpose();
+	    int c = s.columns;
+	    int t = 0;
+
+	    // Row I of tiles holds tiles - I tiles, (I, I) to (I, tiles - 1).
+	    for (int ti = 0; ti < tiles && t < hi; ti += 1) {
+		for (int tj = ti; tj < tiles; tj += 1, t += 1) {
+		    if ((t >= lo) && (t < hi)) {
+			int i0 = ti * TILE;
+			int j0 = tj * TILE;
+
+			BlockedMultiply.tile(at, a, s, i0, Math.min(i0 + TILE, c), j0, Math.min(j0 + TILE, c));
+		    }
+		}
+	    }
+	}
+
+    }
+
+}
@@ -0,0 +1,741 @@
+package math;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+import util.fn.DoubleDoubleToDouble;
+import util.fn.DoubleToBoolean;
+import util.fn.DoubleToDouble;
+
+/**
+ * A lazy elementwise expression over a DoubleVector, built with
+ * DoubleVector.expr(), e.g.,
+ *
+ *     x.expr().subtract(x.mean()).square().sum()
+ *
+ * for the sum of squared errors of x. The stages (map, zip, filter and
+ * the built-in arithmetic) do nothing until a terminal operation
+ * (sum, reduce, summarize, toVector, ...) evaluates the whole chain,
+ * in a single pass over the vector with no intermediate vectors.
+ *
+ * The elements are evaluated a block of BLOCK elements at a time: the
+ * block is copied into a small buffer, which stays in cache while
+ * each stage in turn is applied to it in a tight loop, and then
+ * passed to the terminal operation. A filter compacts the block,
+ * remembering the index of each survivor for later zips.
+ *
+ * Expressions are immutable: each stage returns a new expression, so
+ * a partial expression can be shared. parallel() returns an
+ * expression which is evaluated over chunks of the vector in the
+ * BlockedMultiply pool, if it is long enough. The functions given to
+ * its stages must then be safe to call from several threads, and
+ * reductions are combined in a different order: sums may differ in
+ * the last few bits, and the function given to reduce must be
+ * associative.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class DoubleExpression {
+
+    /**
+     * The number of elements evaluated at a time.
+     */
+    static final int BLOCK = 1 << 10;
+
+    /**
+     * The smallest number of elements in a chunk evaluated by a task
+     * of a parallel expression.
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private final DoubleVector source;
+
+    private final Stage[] stages;
+
+    private final boolean parallel;
+
+    DoubleExpression(DoubleVector source) {
+	this(source, new Stage[0], false);
+    }
+
+    private DoubleExpression(DoubleVector source, Stage[] stages, boolean parallel) {
+	this.source = source;
+	this.stages = stages;
+	this.parallel = parallel;
+    }
+
+    private DoubleExpression then(Stage stage) {
+	Stage[] s = Arrays.copyOf(stages, stages.length + 1);
+
+	s[stages.length] = stage;
+
+	return new DoubleExpression(source, s, parallel);
+    }
+
+    /**
+     * Returns this expression, evaluated in parallel.
+     */
+    public DoubleExpression parallel() {
+	return new DoubleExpression(source, stages, true);
+    }
+
+    /**
+     * Returns this expression, evaluated serially.
+     */
+    public DoubleExpression sequential() {
+	return new DoubleExpression(source, stages, false);
+    }
+
+    public DoubleExpression map(DoubleToDouble f) {
+	return then(new Map(f));
+    }
+
+    /**
+     * Combines each element with the corresponding element of y (which
+     * must have the length of the underlying vector): x becomes f(x,
+     * y).
+     */
+    public DoubleExpression zip(DoubleVector y, DoubleDoubleToDouble f) {
+	return then(new Zip(check(y), f));
+    }
+
+    /**
+     * Keeps only the elements for which p is true.
+     */
+    public DoubleExpression filter(DoubleToBoolean p) {
+	return then(new Filter(p));
+    }
+
+    public DoubleExpression add(double c) {
+	return then(new Scalar(ADD, c));
+    }
+
+    public DoubleExpression subtract(double c) {
+	return then(new Scalar(SUBTRACT, c));
+    }
+
+    public DoubleExpression multiply(double c) {
+	return then(new Scalar(MULTIPLY, c));
+    }
+
+    public DoubleExpression divide(double c) {
+	return then(new Scalar(DIVIDE, c));
+    }
+
+    public DoubleExpression add(DoubleVector y) {
+	return then(new Elementwise(ADD, check(y)));
+    }
+
+    public DoubleExpression subtract(DoubleVector y) {
+	return then(new Elementwise(SUBTRACT, check(y)));
+    }
+
+    public DoubleExpression multiply(DoubleVector y) {
+	return then(new Elementwise(MULTIPLY, check(y)));
+    }
+
+    public DoubleExpression divide(DoubleVector y) {
+	return then(new Elementwise(DIVIDE, check(y)));
+    }
+
+    public DoubleExpression abs() {
+	return then(new Unary(ABS));
+    }
+
+    public DoubleExpression square() {
+	return then(new Unary(SQUARE));
+    }
+
+    public DoubleExpression sqrt() {
+	return then(new Unary(SQRT));
+    }
+
+    public DoubleExpression log() {
+	return then(new Unary(LOG));
+    }
+
+    public DoubleExpression exp() {
+	return then(new Unary(EXP));
+    }
+
+    private DoubleVector check(DoubleVector y) {
+	if (y.length != source.length) {
+	    throw new IllegalArgumentException("Vector lengths not equal: " + source.length + ", " + y.length + ".");
+	}
+
+	return y;
+    }
+
+    public double sum() {
+	return ((Sum) evaluate(new Sum())).sum;
+    }
+
+    /**
+     * Returns the number of elements which pass the filters.
+     */
+    public long count() {
+	return ((Sum) evaluate(new Sum())).n;
+    }
+
+    public double mean() {
+	Sum s = (Sum) evaluate(new Sum());
+
+	return s.sum / s.n;
+    }
+
+    /**
+     * Returns identity combined with each element in turn by f; see
+     * DoubleDoubleToDouble.reduce.
+     */
+    public double reduce(double identity, DoubleDoubleToDouble f) {
+	return ((Reduce) evaluate(new Reduce(identity, f))).result;
+    }
+
+    public double min() {
+	return reduce(Double.POSITIVE_INFINITY, MIN);
+    }
+
+    public double max() {
+	return reduce(Double.NEGATIVE_INFINITY, MAX);
+    }
+
+    /**
+     * Returns the count, mean, moments, minimum and maximum of the
+     * elements.
+     */
+    public StreamingSummary summarize() {
+	return ((Summary) evaluate(new Summary())).summary;
+    }
+
+    /**
+     * Returns a new vector holding the elements.
+     */
+    public DoubleVector toVector() {
+	for (Stage s : stages) {
+	    if (s instanceof Filter) {
+		return ((Collect) evaluate(new Collect())).toVector();
+	    }
+	}
+
+	// Without filters, each block has a place in the result.
+	DoubleVector v = new DoubleVector(source.length);
+
+	evaluate(new Store(v.data));
+
+	return v;
+    }
+
+    private static final DoubleDoubleToDouble MIN = new DoubleDoubleToDouble() {
+	public double apply(double x, double y) {
+	    return Math.min(x, y);
+	}
+    };
+
+    private static final DoubleDoubleToDouble MAX = new DoubleDoubleToDouble() {
+	public double apply(double x, double y) {
+	    return Math.max(x, y);
+	}
+    };
+
+    private Sink evaluate(Sink sink) {
+	if (parallel && (source.length >= 2 * CHUNK_SIZE)) {
+	    return BlockedMultiply.pool().invoke(new Range(this, sink, 0, source.length));
+	}
+
+	evaluate(sink, 0, source.length);
+
+	return sink;
+    }
+
+    /**
+     * Passes the elements from lo to hi - 1, a block at a time, through
+     * the stages into the given sink.
+     */
+    private void evaluate(Sink sink, int lo, int hi) {
+	Block b = new Block();
+
+	for (int start = lo; start < hi; start += BLOCK) {
+	    int n = Math.min(BLOCK, hi - start);
+
+	    System.arraycopy(source.data, source.offset + start, b.values, 0, n);
+	    b.start = start;
+	    b.count = n;
+	    b.filtered = false;
+
+	    for (int s = 0; (s < stages.length) && (b.count > 0); s += 1) {
+		stages[s].apply(b);
+	    }
+
+	    sink.accept(b);
+	}
+    }
+
+    /**
+     * The elements of a block, as they pass through the stages.
+     */
+    private static class Block {
+
+	final double[] values = new double[BLOCK];
+
+	/**
+	 * The number of elements left, and the index in the vector of
+	 * the first.
+	 */
+	int count;
+	int start;
+
+	/**
+	 * Whether a filter has removed elements, in which case the
+	 * index of values[j] is indices[j], rather than start + j.
+	 */
+	boolean filtered;
+	final int[] indices = new int[BLOCK];
+
+	/**
+	 * Returns the index in the underlying vector of values[j].
+	 */
+	int index(int j) {
+	    return filtered ? indices[j] : start + j;
+	}
+
+    }
+
+    private static final int ADD = 0;
+    private static final int SUBTRACT = 1;
+    private static final int MULTIPLY = 2;
+    private static final int DIVIDE = 3;
+
+    private static final int ABS = 0;
+    private static final int SQUARE = 1;
+    private static final int SQRT = 2;
+    private static final int LOG = 3;
+    private static final int EXP = 4;
+
+    private abstract static class Stage {
+
+	abstract void apply(Block b);
+
+    }
+
+    private static class Map extends Stage {
+
+	private final DoubleToDouble f;
+
+	Map(DoubleToDouble f) {
+	    this.f = f;
+	}
+
+	void apply(Block b) {
+	    double[] v = b.values;
+
+	    for (int j = 0; j < b.count; j += 1) {
+		v[j] = f.apply(v[j]);
+	    }
+	}
+
+    }
+
+    private static class Zip extends Stage {
+
+	private final DoubleVector y;
+	private final DoubleDoubleToDouble f;
+
+	Zip(DoubleVector y, DoubleDoubleToDouble f) {
+	    this.y = y;
+	    this.f = f;
+	}
+
+	void apply(Block b) {
+	    double[] v = b.values;
+
+	    for (int j = 0; j < b.count; j += 1) {
+		v[j] = f.apply(v[j], y.data[y.offset + b.index(j)]);
+	    }
+	}
+
+    }
+
+    private static class Filter extends Stage {
+
+	private final DoubleToBoolean p;
+
+	Filter(DoubleToBoolean p) {
+	    this.p = p;
+	}
+
+	void apply(Block b) {
+	    double[] v = b.values;
+	    int k = 0;
+
+	    for (int j = 0; j < b.count; j += 1) {
+		if (p.apply(v[j])) {
+		    b.indices[k] = b.index(j);
+		    v[k] = v[j];
+		    k += 1;
+		}
+	    }
+
+	    b.count = k;
+	    b.filtered = true;
+	}
+
+    }
+
+    /**
+     * Arithmetic with a constant.
+     */
+    private static class Scalar extends Stage {
+
+	private final int op;
+	private final double c;
+
+	Scalar(int op, double c) {
+	    this.op = op;
+	    this.c = c;
+	}
+
+	void apply(Block b) {
+	    double[] v = b.values;
+	    int n = b.count;
+
+	    switch (op) {
+	    case ADD:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] += c;
+		}
+		break;
+	    case SUBTRACT:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] -= c;
+		}
+		break;
+	    case MULTIPLY:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] *= c;
+		}
+		break;
+	    default:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] /= c;
+		}
+		break;
+	    }
+	}
+
+    }
+
+    /**
+     * Arithmetic with the corresponding elements of another vector.
+     */
+    private static class Elementwise extends Stage {
+
+	private final int op;
+	private final DoubleVector y;
+
+	Elementwise(int op, DoubleVector y) {
+	    this.op = op;
+	    this.y = y;
+	}
+
+	void apply(Block b) {
+	    if (b.filtered) {
+		applyFiltered(b);
+
+		return;
+	    }
+
+	    double[] v = b.values;
+	    double[] w = y.data;
+	    int o = y.offset + b.start;
+	    int n = b.count;
+
+	    switch (op) {
+	    case ADD:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] += w[o + j];
+		}
+		break;
+	    case SUBTRACT:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] -= w[o + j];
+		}
+		break;
+	    case MULTIPLY:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] *= w[o + j];
+		}
+		break;
+	    default:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] /= w[o + j];
+		}
+		break;
+	    }
+	}
+
+	private void applyFiltered(Block b) {
+	    double[] v = b.values;
+
+	    for (int j = 0; j < b.count; j += 1) {
+		double x = y.data[y.offset + b.indices[j]];
+
+		switch (op) {
+		case ADD:
+		    v[j] += x;
+		    break;
+		case SUBTRACT:
+		    v[j] -= x;
+		    break;
+		case MULTIPLY:
+		    v[j] *= x;
+		    break;
+		default:
+		    v[j] /= x;
+		    break;
+		}
+	    }
+	}
+
+    }
+
+    private static class Unary extends Stage {
+
+	private final int op;
+
+	Unary(int op) {
+	    this.op = op;
+	}
+
+	void apply(Block b) {
+	    double[] v = b.values;
+	    int n = b.count;
+
+	    switch (op) {
+	    case ABS:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] = Math.abs(v[j]);
+		}
+		break;
+	    case SQUARE:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] *= v[j];
+		}
+		break;
+	    case SQRT:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] = Math.sqrt(v[j]);
+		}
+		break;
+	    case LOG:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] = Math.log(v[j]);
+		}
+		break;
+	    default:
+		for (int j = 0; j < n; j += 1) {
+		    v[j] = Math.exp(v[j]);
+		}
+		break;
+	    }
+	}
+
+    }
+
+    /**
+     * Receives the blocks of an evaluation. For parallel evaluation,
+     * a sink can create an empty sink for a chunk, and combine the
+     * results of the chunk after it into its own.
+     */
+    private abstract static class Sink {
+
+	abstract void accept(Block b);
+
+	abstract Sink create();
+
+	abstract void combine(Sink next);
+
+    }
+
+    private static class Sum extends Sink {
+
+	double sum = 0.0;
+	long n = 0;
+
+	void accept(Block b) {
+	    double s = sum;
+
+	    for (int j = 0; j < b.count; j += 1) {
+		s += b.values[j];
+	    }
+
+	    sum = s;
+	    n += b.count;
+	}
+
+	Sink create() {
+	    return new Sum();
+	}
+
+	void combine(Sink next) {
+	    sum += ((Sum) next).sum;
+	    n += ((Sum) next).n;
+	}
+
+    }
+
+    private static class Reduce extends Sink {
+
+	private final double identity;
+	private final DoubleDoubleToDouble f;
+	double result;
+
+	Reduce(double identity, DoubleDoubleToDouble f) {
+	    this.identity = identity;
+	    this.f = f;
+	    this.result = identity;
+	}
+
+	void accept(Block b) {
+	    double r = result;
+
+	    for (int j = 0; j < b.count; j += 1) {
+		r = f.apply(r, b.values[j]);
+	    }
+
+	    result = r;
+	}
+
+	Sink create() {
+	    return new Reduce(identity, f);
+	}
+
+	void combine(Sink next) {
+	    result = f.apply(result, ((Reduce) next).result);
+	}
+
+    }
+
+    private static class Summary extends Sink {
+
+	final StreamingSummary summary = new StreamingSummary();
+
+	void accept(Block b) {
+	    summary.add(b.values, 0, b.count);
+	}
+
+	Sink create() {
+	    return new Summary();
+	}
+
+	void combine(Sink next) {
+	    summary.merge(((Summary) next).summary);
+	}
+
+    }
+
+    /**
+     * Stores each block at its place in an array, when there are no
+     * filters.
+     */
+    private static class Store extends Sink {
+
+	private final double[] data;
+
+	Store(double[] data) {
+	    this.data = data;
+	}
+
+	void accept(Block b) {
+	    System.arraycopy(b.values, 0, data, b.start, b.count);
+	}
+
+	Sink create() {
+	    return this;
+	}
+
+	void combine(Sink next) {
+	}
+
+    }
+
+    /**
+     * Appends the elements to a growing array.
+     */
+    private static class Collect extends Sink {
+
+	double[] data = new double[BLOCK];
+	int length = 0;
+
+	void accept(Block b) {
+	    if (length + b.count > data.length) {
+		data = Arrays.copyOf(data, Math.max(2 * data.length, length + b.count));
+	    }
+
+	    System.arraycopy(b.values, 0, data, length, b.count);
+	    length += b.count;
+	}
+
+	Sink create() {
+	    return new Collect();
+	}
+
+	void combine(Sink next) {
+	    Collect c = (Collect) next;
+
+	    if (length + c.length > data.length) {
+		data = Arrays.copyOf(data, length + c.length);
+	    }
+
+	    System.arraycopy(c.data, 0, data, length, c.length);
+	    length += c.length;
+	}
+
+	DoubleVector toVector() {
+	    return new DoubleVector((length == data.length) ? data : Arrays.copyOf(data, length), 0, length);
+	}
+
+    }
+
+    /**
+     * Evaluates a range of the vector, splitting it in half until it is
+     * shorter than 2 * CHUNK_SIZE, and combining the results of the
+     * halves in order.
+     */
+    private static class Range extends RecursiveTask<Sink> {
+
+	private final DoubleExpression e;
+	private final Sink sink;
+	private final int lo;
+	private final int hi;
+
+	Range(DoubleExpression e, Sink sink, int lo, int hi) {
+	    this.e = e;
+	    this.sink = sink;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected Sink compute() {
+	    if (hi - lo < 2 * CHUNK_SIZE) {
+		e.evaluate(sink, lo, hi);
+
+		return sink;
+	    }
+
+	    int mid = (lo + hi) >>> 1;
+	    Range left = new Range(e, sink, lo, mid);
+	    Range right = new Range(e, sink.create(), mid, hi);
+
+	    right.fork();
+
+	    Sink s = left.compute();
+
+	    s.combine(right.join());
+
+	    return s;
+	}
+
+    }
+
+}
@@ -0,0 +1,392 @@
+package math;
+
+import java.math.BigInteger;
+
+/**
+ * Formats doubles as ASCII bytes without creating strings, using the
+ * shortest decimal which reads back as the same double.
+ *
+ * The digits are found by Ryu (U. Adams, "Ryu: fast float-to-string
+ * conversion", PLDI 2018), which computes the decimal bounds of the
+ * interval of reals that round to the double with 128-bit
+ * approximations of powers of five, and removes digits while the
+ * bounds still differ. The layout is that of Double.toString: plain
+ * decimals, with at least one digit after the point, for magnitudes
+ * from 10^-3 up to 10^7, and otherwise computerized scientific
+ * notation (e.g., 1.25E-5). Before Java 19, Double.toString
+ * sometimes gives more digits than needed; later versions also give
+ * the shortest, but where there is a choice of shortest decimals (or
+ * a single digit would do) may pick a different one.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+final class DoubleFormatter {
+
+    /**
+     * The longest formatted double, e.g. -2.2250738585072014E-308.
+     */
+    static final int MAX_LENGTH = 24;
+
+    private static final int POW5_INV_BITCOUNT = 125;
+
+    private static final int POW5_BITCOUNT = 125;
+
+    /**
+     * The high and low 64 bits of 2^k / 5^i, rounded up, and of 5^i,
+     * scaled to 125 bits; see powers.
+     */
+    private static final long[] POW5_INV_SPLIT = powers(342, true);
+
+    private static final long[] POW5_SPLIT = powers(326, false);
+
+    private static final byte[] NAN = {'N', 'a', 'N'};
+
+    private static final byte[] INFINITY = {'I', 'n', 'f', 'i', 'n', 'i', 't', 'y'};
+
+    private DoubleFormatter() {
+    }
+
+    /**
+     * Writes d to buf, starting at pos, which must leave room for
+     * MAX_LENGTH bytes; returns the position after the last byte.
+     */
+    static int format(double d, byte[] buf, int pos) {
+	long bits = Double.doubleToRawLongBits(d);
+	int ieeeExponent = (int) ((bits >>> 52) & 0x7FF);
+	long ieeeMantissa = bits & ((1L << 52) - 1);
+
+	if (ieeeExponent == 0x7FF) {
+	    if (ieeeMantissa != 0) {
+		return copy(NAN, buf, pos);
+	    }
+
+	    if (bits < 0) {
+		buf[pos++] = '-';
+	    }
+
+	    return copy(INFINITY, buf, pos);
+	}
+
+	if (bits < 0) {
+	    buf[pos++] = '-';
+	}
+
+	if ((ieeeExponent == 0) && (ieeeMantissa == 0)) {
+	    buf[pos++] = '0';
+	    buf[pos++] = '.';
+	    buf[pos++] = '0';
+
+	    return pos;
+	}
+
+	int e2;
+	long m2;
+
+	if (ieeeExponent == 0) {
+	    e2 = 1 - 1023 - 52 - 2;
+	    m2 = ieeeMantissa;
+	} else {
+	    e2 = ieeeExponent - 1023 - 52 - 2;
+	    m2 = (1L << 52) | ieeeMantissa;
+	}
+
+	boolean acceptBounds = ((m2 & 1) == 0);
+	long mv = 4 * m2;
+	int mmShift = ((ieeeMantissa != 0) || (ieeeExponent <= 1)) ? 1 : 0;
+	long vr;
+	long vp;
+	long vm;
+	int e10;
+	boolean vmIsTrailingZeros = false;
+	boolean vrIsTrailingZeros = false;
+
+	// The bounds of the rounding interval are (mv - 1 - mmShift) and
+	// (mv + 2), times 2^e2; convert all three to decimal.
+	if (e2 >= 0) {
+	    int q = log10Pow2(e2) - ((e2 > 3) ? 1 : 0);
+	    int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+	    int i = -e2 + q + k;
+
+	    e10 = q;
+	    vr = mulShift(4 * m2, POW5_INV_SPLIT, q, i);
+	    vp = mulShift(4 * m2 + 2, POW5_INV_SPLIT, q, i);
+	    vm = mulShift(4 * m2 - 1 - mmShift, POW5_INV_SPLIT, q, i);
+
+	    if (q <= 21) {
+		if (mv % 5 == 0) {
+		    vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+		} else if (acceptBounds) {
+		    vmIsTrailingZeros = multipleOfPowerOf5(mv - 1 - mmShift, q);
+		} else if (multipleOfPowerOf5(mv + 2, q)) {
+		    vp -= 1;
+		}
+	    }
+	} else {
+	    int q = log10Pow5(-e2) - ((-e2 > 1) ? 1 : 0);
+	    int i = -e2 - q;
+	    int k = pow5bits(i) - POW5_BITCOUNT;
+	    int j = q - k;
+
+	    e10 = q + e2;
+	    vr = mulShift(4 * m2, POW5_SPLIT, i, j);
+	    vp = mulShift(4 * m2 + 2, POW5_SPLIT, i, j);
+	    vm = mulShift(4 * m2 - 1 - mmShift, POW5_SPLIT, i, j);
+
+	    if (q <= 1) {
+		vrIsTrailingZeros = true;
+
+		if (acceptBounds) {
+		    vmIsTrailingZeros = (mmShift == 1);
+		} else {
+		    vp -= 1;
+		}
+	    } else if (q < 63) {
+		vrIsTrailingZeros = ((mv & ((1L << q) - 1)) == 0);
+	    }
+	}
+
+	// Remove digits while the bounds differ.
+	int removed = 0;
+	int lastRemovedDigit = 0;
+	long output;
+
+	if (vmIsTrailingZeros || vrIsTrailingZeros) {
+	    // The rare general case.
+	    while (vp / 10 > vm / 10) {
+		vmIsTrailingZeros &= (vm % 10 == 0);
+		vrIsTrailingZeros &= (lastRemovedDigit == 0);
+		lastRemovedDigit = (int) (vr % 10);
+		vr /= 10;
+		vp /= 10;
+		vm /= 10;
+		removed += 1;
+	    }
+
+	    if (vmIsTrailingZeros) {
+		while (vm % 10 == 0) {
+		    vrIsTrailingZeros &= (lastRemovedDigit == 0);
+		    lastRemovedDigit = (int) (vr % 10);
+		    vr /= 10;
+		    vp /= 10;
+		    vm /= 10;
+		    removed += 1;
+		}
+	    }
+
+	    if (vrIsTrailingZeros && (lastRemovedDigit == 5) && (vr % 2 == 0)) {
+		// The exact value ends in 5: round to even.
+		lastRemovedDigit = 4;
+	    }
+
+	    boolean roundUp = ((vr == vm) && (!acceptBounds || !vmIsTrailingZeros)) || (lastRemovedDigit >= 5);
+
+	    output = vr + (roundUp ? 1 : 0);
+	} else {
+	    boolean roundUp = false;
+
+	    if (vp / 100 > vm / 100) {
+		roundUp = (vr % 100 >= 50);
+		vr /= 100;
+		vp /= 100;
+		vm /= 100;
+		removed += 2;
+	    }
+
+	    while (vp / 10 > vm / 10) {
+		roundUp = (vr % 10 >= 5);
+		vr /= 10;
+		vp /= 10;
+		vm /= 10;
+		removed += 1;
+	    }
+
+	    output = vr + (((vr == vm) || roundUp) ? 1 : 0);
+	}
+
+	return layout(output, e10 + removed, buf, pos);
+    }
+
+    /**
+     * Writes output * 10^exponent in the layout of Double.toString.
+     */
+    private static int layout(long output, int exponent, byte[] buf, int pos) {
+	int length = decimalLength(output);
+	// The exponent in scientific notation.
+	int e = exponent + length - 1;
+
+	if ((e >= -3) && (e < 7)) {
+	    if (e < 0) {
+		buf[pos++] = '0';
+		buf[pos++] = '.';
+
+		for (int i = -1; i > e; i -= 1) {
+		    buf[pos++] = '0';
+		}
+
+		writeDigits(output, length, buf, pos);
+
+		return pos + length;
+	    } else if (length <= e + 1) {
+		writeDigits(output, length, buf, pos);
+		pos += length;
+
+		for (int i = length; i <= e; i += 1) {
+		    buf[pos++] = '0';
+		}
+
+		buf[pos++] = '.';
+		buf[pos++] = '0';
+
+		return pos;
+	    } else {
+		// Write the digits one place to the right, then move the
+		// integer part left over the decimal point.
+		writeDigits(output, length, buf, pos + 1);
+
+		for (int i = 0; i <= e; i += 1) {
+		    buf[pos + i] = buf[pos + i + 1];
+		}
+
+		buf[pos + e + 1] = '.';
+
+		return pos + length + 1;
+	    }
+	}
+
+	writeDigits(output, length, buf, pos + 1);
+	buf[pos] = buf[pos + 1];
+	buf[pos + 1] = '.';
+	pos += length + 1;
+
+	if (length == 1) {
+	    buf[pos++] = '0';
+	}
+
+	buf[pos++] = 'E';
+
+	if (e < 0) {
+	    buf[pos++] = '-';
+	    e = -e;
+	}
+
+	if (e >= 100) {
+	    buf[pos++] = (byte) ('0' + e / 100);
+	    e %= 100;
+	    buf[pos++] = (byte) ('0' + e / 10);
+	} else if (e >= 10) {
+	    buf[pos++] = (byte) ('0' + e / 10);
+	}
+
+	buf[pos++] = (byte) ('0' + e % 10);
+
+	return pos;
+    }
+
+    /**
+     * Writes the length decimal digits of v to buf, starting at pos.
+     */
+    private static void writeDigits(long v, int length, byte[] buf, int pos) {
+	for (int i = pos + length - 1; i >= pos; i -= 1) {
+	    buf[i] = (byte) ('0' + (int) (v % 10));
+	    v /= 10;
+	}
+    }
+
+    private static int decimalLength(long v) {
+	int length = 1;
+
+	for (long p = 10; (length < 19) && (v >= p); p *= 10) {
+	    length += 1;
+	}
+
+	return length;
+    }
+
+    private static int copy(byte[] src, byte[] buf, int pos) {
+	System.arraycopy(src, 0, buf, pos, src.length);
+
+	return pos + src.length;
+    }
+
+    /**
+     * Returns ceil(log2(5^e)) for e > 0 (and 1 for e = 0).
+     */
+    private static int pow5bits(int e) {
+	return (int) (((e * 1217359L) >>> 19) + 1);
+    }
+
+    /**
+     * Returns floor(log10(2^e)).
+     */
+    private static int log10Pow2(int e) {
+	return (int) ((e * 78913L) >>> 18);
+    }
+
+    /**
+     * Returns floor(log10(5^e)).
+     */
+    private static int log10Pow5(int e) {
+	return (int) ((e * 732923L) >>> 20);
+    }
+
+    private static boolean multipleOfPowerOf5(long v, int p) {
+	int count = 0;
+
+	while ((v > 0) && (v % 5 == 0)) {
+	    v /= 5;
+	    count += 1;
+	}
+
+	return count >= p;
+    }
+
+    /**
+     * Returns (m * table[i]) >> j, for the 125-bit table entry i, where
+     * m < 2^55 and j >= 64.
+     */
+    private static long mulShift(long m, long[] table, int i, int j) {
+	long hi = table[2 * i];
+	long lo = table[2 * i + 1];
+	// m * lo and m * hi, as 128-bit numbers; only the high half of
+	// the former matters.
+	long b0hi = UnsignedMath.multiplyHigh(m, lo);
+	long b2lo = m * hi;
+	long b2hi = UnsignedMath.multiplyHigh(m, hi);
+	long sumLo = b2lo + b0hi;
+	long sumHi = b2hi + ((Long.compareUnsigned(sumLo, b2lo) < 0) ? 1 : 0);
+	int s = j - 64;
+
+	return (s == 0) ? sumLo : (sumLo >>> s) | (sumHi << (64 - s));
+    }
+
+    /**
+     * Returns the table of 5^i scaled to POW5_BITCOUNT bits
+     * (truncated), or, if inverse, of 2^(pow5bits(i) - 1 +
+     * POW5_INV_BITCOUNT) / 5^i rounded up, for i from 0 to size - 1.
+     */
+    private static long[] powers(int size, boolean inverse) {
+	long[] table = new long[2 * size];
+	BigInteger five = BigInteger.valueOf(5);
+
+	for (int i = 0; i < size; i += 1) {
+	    BigInteger p = five.pow(i);
+	    int bits = p.bitLength();
+	    BigInteger v;
+
+	    if (inverse) {
+		v = BigInteger.ONE.shiftLeft(bits - 1 + POW5_INV_BITCOUNT).divide(p).add(BigInteger.ONE);
+	    } else if (bits > POW5_BITCOUNT) {
+		v = p.shiftRight(bits - POW5_BITCOUNT);
+	    } else {
+		v = p.shiftLeft(POW5_BITCOUNT - bits);
+	    }
+
+	    table[2 * i] = v.shiftRight(64).longValue();
+	    table[2 * i + 1] = v.longValue();
+	}
+
+	return table;
+    }
+
+}
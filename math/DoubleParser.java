@@ -0,0 +1,279 @@
+package math;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses decimal numbers from ASCII bytes without creating strings,
+ * giving the same (correctly rounded) result as Double.parseDouble.
+ *
+ * The digits are accumulated into a 64-bit integer w and a power of
+ * ten q. If w < 2^53 and |q| <= 22, w and 10^q are both exact
+ * doubles, so one multiplication or division gives the correctly
+ * rounded result (Clinger's fast path). Otherwise, up to 19
+ * significant digits are converted by the algorithm of Eisel and
+ * Lemire (D. Lemire, "Number parsing at a gigabyte per second",
+ * Software: Practice and Experience 51, 2021), which multiplies w by
+ * a 128-bit approximation of 5^q, as in the fast_float library.
+ * Anything else (more than 19 significant digits, NaN, Infinity,
+ * hexadecimal, type suffixes, or malformed input) is passed to
+ * Double.parseDouble, so the same inputs are accepted and rejected.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+final class DoubleParser {
+
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+
+    private static final int LARGEST_POWER_OF_TEN = 308;
+
+    private static final double[] POWERS_OF_TEN = {
+	1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+	1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The high and low 64 bits of the 128-bit approximations of 5^q,
+     * for q from SMALLEST_POWER_OF_TEN to LARGEST_POWER_OF_TEN,
+     * normalized so the top bit is set.
+     */
+    private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+    private DoubleParser() {
+    }
+
+    /**
+     * Returns the number in bytes from to to - 1 of the given buffer
+     * (which are read with absolute gets, so its position doesn't
+     * matter). Throws NumberFormatException if they don't hold a
+     * number acceptable to Double.parseDouble.
+     */
+    static double parse(ByteBuffer b, int from, int to) {
+	int i = from;
+	boolean negative = false;
+
+	if ((i < to) && ((b.get(i) == '-') || (b.get(i) == '+'))) {
+	    negative = (b.get(i) == '-');
+	    i += 1;
+	}
+
+	long w = 0;
+	int digits = 0;
+	int q = 0;
+	boolean any = false;
+	boolean truncated = false;
+
+	for (; i < to; i += 1) {
+	    int d = b.get(i) - '0';
+
+	    if ((d < 0) || (d > 9)) {
+		break;
+	    }
+
+	    any = true;
+
+	    if (digits < 19) {
+		if ((w != 0) || (d != 0)) {
+		    w = 10 * w + d;
+		    digits += 1;
+		}
+	    } else {
+		q += 1;
+		truncated |= (d != 0);
+	    }
+	}
+
+	if ((i < to) && (b.get(i) == '.')) {
+	    for (i += 1; i < to; i += 1) {
+		int d = b.get(i) - '0';
+
+		if ((d < 0) || (d > 9)) {
+		    break;
+		}
+
+		any = true;
+
+		if (digits < 19) {
+		    if ((w != 0) || (d != 0)) {
+			w = 10 * w + d;
+			digits += 1;
+		    }
+		    q -= 1;
+		} else {
+		    truncated |= (d != 0);
+		}
+	    }
+	}
+
+	if (any && (i < to) && ((b.get(i) == 'e') || (b.get(i) == 'E'))) {
+	    i += 1;
+
+	    boolean negativeExponent = false;
+
+	    if ((i < to) && ((b.get(i) == '-') || (b.get(i) == '+'))) {
+		negativeExponent = (b.get(i) == '-');
+		i += 1;
+	    }
+
+	    int e = 0;
+	    int start = i;
+
+	    for (; i < to; i += 1) {
+		int d = b.get(i) - '0';
+
+		if ((d < 0) || (d > 9)) {
+		    break;
+		}
+
+		// Beyond this, the result is zero or infinite anyway.
+		if (e < 100000) {
+		    e = 10 * e + d;
+		}
+	    }
+
+	    if (i == start) {
+		return fallback(b, from, to);
+	    }
+
+	    q += negativeExponent ? -e : e;
+	}
+
+	if (!any || truncated || (i < to)) {
+	    return fallback(b, from, to);
+	}
+
+	return toDouble(w, q, negative);
+    }
+
+    /**
+     * Returns the nearest double to (-1)^negative * w * 10^q, where w
+     * is unsigned.
+     */
+    static double toDouble(long w, int q, boolean negative) {
+	if (w == 0) {
+	    return negative ? -0.0 : 0.0;
+	}
+
+	if (((w >>> 53) == 0) && (q >= -22) && (q <= 22)) {
+	    double d = (q < 0) ? w / POWERS_OF_TEN[-q] : w * POWERS_OF_TEN[q];
+
+	    return negative ? -d : d;
+	}
+
+	long sign = negative ? Long.MIN_VALUE : 0;
+
+	if (q < SMALLEST_POWER_OF_TEN) {
+	    return Double.longBitsToDouble(sign);
+	}
+
+	if (q > LARGEST_POWER_OF_TEN) {
+	    return Double.longBitsToDouble(sign | 0x7FF0000000000000L);
+	}
+
+	int lz = Long.numberOfLeadingZeros(w);
+	w <<= lz;
+
+	int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+	long hi = UnsignedMath.multiplyHigh(w, POWERS_OF_FIVE[index]);
+	long lo = w * POWERS_OF_FIVE[index];
+
+	// If the bits below the 55 we need are all ones, the truncated
+	// low half of 5^q could carry into them.
+	if ((hi & 0x1FF) == 0x1FF) {
+	    long hi2 = UnsignedMath.multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+
+	    lo += hi2;
+
+	    if (Long.compareUnsigned(hi2, lo) > 0) {
+		hi += 1;
+	    }
+	}
+
+	int upper = (int) (hi >>> 63);
+	int shift = upper + 9;
+	long mantissa = hi >>> shift;
+	// floor(log2(10^q)) + 63, plus the exponent bias.
+	int power2 = (((152170 + 65536) * q) >> 16) + 63 + upper - lz + 1023;
+
+	if (power2 <= 0) {
+	    // A subnormal number.
+	    if (-power2 + 1 >= 64) {
+		return Double.longBitsToDouble(sign);
+	    }
+
+	    mantissa >>>= -power2 + 1;
+	    mantissa += (mantissa & 1);
+	    mantissa >>>= 1;
+	    power2 = (mantissa < (1L << 52)) ? 0 : 1;
+
+	    return Double.longBitsToDouble(sign | mantissa | ((long) power2 << 52));
+	}
+
+	// Exactly halfway between two doubles: round to even.
+	if ((Long.compareUnsigned(lo, 1) <= 0) && (q >= -4) && (q <= 23) && ((mantissa & 3) == 1)) {
+	    if ((mantissa << shift) == hi) {
+		mantissa &= ~1L;
+	    }
+	}
+
+	mantissa += (mantissa & 1);
+	mantissa >>>= 1;
+
+	if (mantissa >= (2L << 52)) {
+	    mantissa = 1L << 52;
+	    power2 += 1;
+	}
+
+	mantissa &= ~(1L << 52);
+
+	if (power2 >= 0x7FF) {
+	    return Double.longBitsToDouble(sign | 0x7FF0000000000000L);
+	}
+
+	return Double.longBitsToDouble(sign | mantissa | ((long) power2 << 52));
+    }
+
+    private static double fallback(ByteBuffer b, int from, int to) {
+	char[] c = new char[to - from];
+
+	for (int i = from; i < to; i += 1) {
+	    c[i - from] = (char) (b.get(i) & 0xFF);
+	}
+
+	return Double.parseDouble(new String(c));
+    }
+
+    private static long[] powersOfFive() {
+	long[] powers = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+	BigInteger five = BigInteger.valueOf(5);
+
+	for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q += 1) {
+	    BigInteger c;
+
+	    if (q < 0) {
+		// Round the reciprocal up, with enough bits that the
+		// truncation below is exact to 128 bits.
+		BigInteger p = five.pow(-q);
+		int z = p.bitLength();
+		int bits = (q >= -27) ? z + 127 : 2 * z + 128;
+
+		c = BigInteger.ONE.shiftLeft(bits).divide(p).add(BigInteger.ONE);
+	    } else {
+		c = five.pow(q);
+	    }
+
+	    int excess = c.bitLength() - 128;
+
+	    c = (excess > 0) ? c.shiftRight(excess) : c.shiftLeft(-excess);
+
+	    int k = 2 * (q - SMALLEST_POWER_OF_TEN);
+
+	    powers[k] = c.shiftRight(64).longValue();
+	    powers[k + 1] = c.longValue();
+	}
+
+	return powers;
+    }
+
+}
@@ -5,28 +5,55 @@ import static math.Lib.average;
 import static math.Lib.isEven;
 import static math.Lib.log2;
 
+import util.Sort;
 import util.fn.DoubleToBoolean;
 import util.fn.GreaterThanDouble;
 import util.fn.LessThanDouble;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A vector of doubles.
  *
+ * A vector's elements are stored contiguously in an array, starting
+ * at a given offset. Several vectors may share the same array: the
+ * rows of a DoubleMatrix, for example, are returned as views into the
+ * matrix's storage, as are subsequences of a vector.
+ *
+ * A vector is serialized as its length followed by its elements as
+ * raw bytes, so a view doesn't carry the rest of its array with it.
+ * writeTo and readFrom use the binary file format of
+ * MappedDoubleMatrix, with the vector as a single column.
+ *
  * @author <a href="mailto:jdale@berkeley.edu">Joseph Dale</a>
- * @version 20070918
+ * @version 20261017
  */
 public class DoubleVector implements Cloneable, Serializable {
 
-    int length;
+    transient int length;
+
+    transient double[] data;
+
+    /**
+     * The index in data of the first element of this vector.
+     */
+    transient int offset;
 
-    double[] data;
+    /**
+     * The loops used by the elementwise operations and reductions;
+     * see VectorKernels.
+     */
+    private static final VectorKernels KERNELS = VectorKernels.INSTANCE;
 
 
     public DoubleVector(int length) {
@@ -55,6 +82,18 @@ public class DoubleVector implements Cloneable, Serializable {
 
     }
 
+    /**
+     * Creates a vector which is a view of length elements of the
+     * given array, starting at offset. The array is not copied.
+     */
+    DoubleVector(double[] data, int offset, int length) {
+
+	this.data = data;
+	this.offset = offset;
+	this.length = length;
+
+    }
+
     public DoubleVector(Collection<Double> c) {
 
 	this.length = c.size();
@@ -85,27 +124,96 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	}
 
-	clone.data = this.data.clone();
+	clone.data = new double[length];
+	clone.offset = 0;
+	System.arraycopy(this.data, this.offset, clone.data, 0, length);
 
 	return clone;
 
     }
 
 
+    /**
+     * Writes this vector to the given channel, as a length x 1 matrix
+     * in the binary format of MappedDoubleMatrix. The channel is not
+     * closed.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+
+	BinaryIO.writeFully(channel, MappedDoubleMatrix.header(length, 1));
+	BinaryIO.write(channel, data, offset, length);
+
+    }
+
+
+    /**
+     * Reads a vector written by writeTo from the given channel, which
+     * is not closed. A matrix with a single row or column (e.g.,
+     * written by DoubleMatrix.writeTo) is also accepted.
+     */
+    public static DoubleVector readFrom(ReadableByteChannel channel) throws IOException {
+
+	int[] dims = BinaryIO.readHeader(channel, MappedDoubleMatrix.MAGIC);
+
+	if ((dims[0] != 1) && (dims[1] != 1)) {
+
+	    throw new IOException("Not a vector: " + dims[0] + "x" + dims[1] + " matrix.");
+
+	}
+
+	DoubleVector v = new DoubleVector(BinaryIO.heapSize(dims));
+
+	BinaryIO.read(channel, v.data, 0, v.length);
+
+	return v;
+
+    }
+
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+	out.defaultWriteObject();
+	out.writeInt(length);
+	BinaryIO.write(out, data, offset, length);
+
+    }
+
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+	in.defaultReadObject();
+
+	int length = in.readInt();
+
+	if (length < 0) {
+
+	    throw new InvalidObjectException("Invalid vector length: " + length + ".");
+
+	}
+
+	this.data = new double[length];
+	this.offset = 0;
+	this.length = length;
+
+	BinaryIO.read(in, data, 0, length);
+
+    }
+
+
     public String toString() {
 
 	StringBuffer sb = new StringBuffer();
 
 	sb.append('[');
 
-	if (data.length > 0) {
+	if (length > 0) {
 
-	    sb.append(data[0]);
+	    sb.append(data[offset]);
 
-	    for (int i = 1; i < data.length; i += 1) {
+	    for (int i = 1; i < length; i += 1) {
 
 		sb.append(' ');
-		sb.append(data[i]);
+		sb.append(data[offset + i]);
 
 	    }
 
@@ -131,9 +239,23 @@ public class DoubleVector implements Cloneable, Serializable {
     }
 
 
+    /**
+     * Returns the elements of this vector as an array. If this vector
+     * is a view of part of a larger array, its elements are copied
+     * into a new array; otherwise the array backing this vector is
+     * returned.
+     */
     public double[] data() {
 
-	return data;
+	if ((offset == 0) && (length == data.length)) {
+
+	    return data;
+
+	} else {
+
+	    return clone().data;
+
+	}
 
     }
 
@@ -150,7 +272,7 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double get(int i) {
 
-	return data[i];
+	return data[offset + i];
 
     }
 
@@ -160,7 +282,7 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public void set(int i, double x) {
 
-	data[i] = x;
+	data[offset + i] = x;
 
     }
 
@@ -170,7 +292,7 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public void fill(double x) {
 
-	Arrays.fill(data, x);
+	Arrays.fill(data, offset, offset + length, x);
 
     }
 
@@ -183,9 +305,9 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	DoubleVector dv = new DoubleVector(this.length + 1);
 
-	System.arraycopy(this.data, 0, dv.data, 0, i);
+	System.arraycopy(this.data, offset, dv.data, 0, i);
 	dv.data[i] = d;
-	System.arraycopy(this.data, i, dv.data, i + 1, length - i);
+	System.arraycopy(this.data, offset + i, dv.data, i + 1, length - i);
 
 	return dv;
 
@@ -205,14 +327,10 @@ public class DoubleVector implements Cloneable, Serializable {
 	double[] sel = new double[n];
 	int i = 0;
 
-	for (int j = 0; j < bv.length(); j += 1) {
-
-	    if (bv.data[j]) {
+	for (int j = bv.nextSetBit(0); j >= 0; j = bv.nextSetBit(j + 1)) {
 
-		sel[i] = this.data[j];
-		i += 1;
-
-	    }
+	    sel[i] = this.data[offset + j];
+	    i += 1;
 
 	}
 
@@ -231,7 +349,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < idx.length; i += 1) {
 
-	    sel.data[i] = this.data[idx.data[i]];
+	    sel.data[i] = this.data[offset + idx.data[i]];
 
 	}
 
@@ -242,14 +360,19 @@ public class DoubleVector implements Cloneable, Serializable {
 
     /**
      * Returns a subsequence of this vector from start, inclusive, to
-     * end, exclusive.
+     * end, exclusive. The subsequence is a view of this vector: no
+     * elements are copied, and changes to either vector are visible
+     * in the other.
      */
     public DoubleVector subsequence(int start, int end) {
 
-	double[] dataNew = new double[end - start];
-	System.arraycopy(this.data, start, dataNew, 0, dataNew.length);
+	if ((start < 0) || (end > length) || (start > end)) {
 
-	return new DoubleVector(dataNew);
+	    throw new IndexOutOfBoundsException("Invalid subsequence: " + start + ", " + end + " (length " + length + ").");
+
+	}
+
+	return new DoubleVector(data, offset + start, end - start);
 
     }
 
@@ -260,19 +383,20 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector subsequence(int start) {
 
-	return subsequence(start, data.length);
+	return subsequence(start, length);
 
     }
 
 
     /**
      * Returns a new vector containing the elements of this vector
-     * sorted into increasing order.
+     * sorted into increasing order (by radix sort for long vectors; see
+     * util.Sort.sort).
      */
     public DoubleVector sort() {
 
 	DoubleVector sorted = clone();
-	Arrays.sort(sorted.data);
+	Sort.sort(sorted.data, 0, length, BlockedMultiply.pool());
 
 	return sorted;
 
@@ -288,64 +412,14 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public IntVector order() {
 
-	Index[] indices = new Index[this.length];
-
-	for (int i = 0; i < this.length; i += 1) {
-
-	    indices[i] = new Index(this.data[i], i);
-
-	}
-
-	Arrays.sort(indices, eltComp);
-
-	IntVector order = new IntVector(this.length);
-
-	for (int i = 0; i < order.length; i += 1) {
-
-	    order.data[i] = indices[i].idx;
-
-	}
-
-	return order;
-
-    }
-
-    private static class Index {
-
-	double elt;
-	int idx;
-
-	Index(double elt, int idx) {
-
-	    this.elt = elt;
-	    this.idx = idx;
-
-	}
+	/*
+	 * Equal elements stay in their original order; NaNs come last.
+	 * See util.Sort.order.
+	 */
+	return IntVector.wrap(Sort.order(data, offset, length, BlockedMultiply.pool()));
 
     }
 
-    private static final Comparator<Index> eltComp = new Comparator<Index>() {
-
-	public int compare(Index i1, Index i2) {
-
-	    if (i1.elt < i2.elt) {
-
-		return -1;
-
-	    } else if (i1.elt > i2.elt) {
-
-		return 1;
-
-	    } else {
-
-		return 0;
-
-	    }
-
-	}
-
-    };
-
 
     /**
      * Returns a new vector containing the elements of this vector in
@@ -357,7 +431,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    reversed.data[i] = this.data[(length - 1) - i];
+	    reversed.data[i] = this.data[offset + (length - 1) - i];
 
 	}
 
@@ -373,9 +447,9 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	if (i != j) {
 
-	    double temp = data[i];
-	    data[i] = data[j];
-	    data[j] = temp;
+	    double temp = data[offset + i];
+	    data[offset + i] = data[offset + j];
+	    data[offset + j] = temp;
 
 	}
 
@@ -390,8 +464,8 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	DoubleVector app = new DoubleVector(this.length + dv.length);
 
-	System.arraycopy(this.data, 0, app.data, 0, this.length);
-	System.arraycopy(dv.data, 0, app.data, this.length, dv.length);
+	System.arraycopy(this.data, this.offset, app.data, 0, this.length);
+	System.arraycopy(dv.data, dv.offset, app.data, this.length, dv.length);
 
 	return app;
 
@@ -418,7 +492,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (DoubleVector dv : c) {
 
-	    System.arraycopy(dv.data, 0, appended.data, i, dv.length);
+	    System.arraycopy(dv.data, dv.offset, appended.data, i, dv.length);
 	    i += dv.length;
 
 	}
@@ -430,8 +504,8 @@ public class DoubleVector implements Cloneable, Serializable {
 
     public void split(DoubleVector dv1, DoubleVector dv2) {
 
-	System.arraycopy(this.data, 0, dv1.data, 0, dv1.length);
-	System.arraycopy(this.data, dv1.length, dv2.data, 0, dv2.length);
+	System.arraycopy(this.data, offset, dv1.data, dv1.offset, dv1.length);
+	System.arraycopy(this.data, offset + dv1.length, dv2.data, dv2.offset, dv2.length);
 
     }
 
@@ -445,7 +519,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = start; i < length; i++) {
 
-	    if (data[i] == d) {
+	    if (data[offset + i] == d) {
 
 		return i;
 
@@ -485,15 +559,7 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double sum() {
 
-	double sum = 0;
-
-	for (int i = 0; i < length; i += 1) {
-
-	    sum += data[i];
-
-	}
-
-	return sum;
+	return KERNELS.sum(data, offset, length);
 
     }
 
@@ -507,7 +573,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    product *= data[i];
+	    product *= data[offset + i];
 
 	}
 
@@ -522,15 +588,38 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector add(double d) {
 
-	DoubleVector dv = new DoubleVector(length);
+	return add(d, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Adds the given number to each element of this vector, storing
+     * the result in dest, which must have the same length as this
+     * vector (and may be this vector itself); returns dest.
+     */
+    public DoubleVector add(double d, DoubleVector dest) {
+
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = this.data[i] + d;
+	    dest.data[dest.offset + i] = this.data[offset + i] + d;
 
 	}
 
-	return dv;
+	return dest;
+
+    }
+
+
+    /**
+     * Adds the given number to each element of this vector in place,
+     * returning this vector.
+     */
+    public DoubleVector addInPlace(double d) {
+
+	return add(d, this);
 
     }
 
@@ -541,15 +630,38 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector subtract(double d) {
 
-	DoubleVector dv = new DoubleVector(length);
+	return subtract(d, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Subtracts the given number from each element of this vector,
+     * storing the result in dest, which must have the same length as
+     * this vector (and may be this vector itself); returns dest.
+     */
+    public DoubleVector subtract(double d, DoubleVector dest) {
+
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = this.data[i] - d;
+	    dest.data[dest.offset + i] = this.data[offset + i] - d;
 
 	}
 
-	return dv;
+	return dest;
+
+    }
+
+
+    /**
+     * Subtracts the given number from each element of this vector in
+     * place, returning this vector.
+     */
+    public DoubleVector subtractInPlace(double d) {
+
+	return subtract(d, this);
 
     }
 
@@ -560,15 +672,38 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector multiply(double d) {
 
-	DoubleVector dv = new DoubleVector(length);
+	return multiply(d, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Multiplies each element of this vector by the given number,
+     * storing the result in dest, which must have the same length as
+     * this vector (and may be this vector itself); returns dest.
+     */
+    public DoubleVector multiply(double d, DoubleVector dest) {
+
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = this.data[i] * d;
+	    dest.data[dest.offset + i] = this.data[offset + i] * d;
 
 	}
 
-	return dv;
+	return dest;
+
+    }
+
+
+    /**
+     * Multiplies each element of this vector by the given number in
+     * place, returning this vector.
+     */
+    public DoubleVector multiplyInPlace(double d) {
+
+	return multiply(d, this);
 
     }
 
@@ -579,15 +714,38 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector divide(double d) {
 
-	DoubleVector dv = new DoubleVector(length);
+	return divide(d, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Divides each element of this vector by the given number, storing
+     * the result in dest, which must have the same length as this
+     * vector (and may be this vector itself); returns dest.
+     */
+    public DoubleVector divide(double d, DoubleVector dest) {
+
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = this.data[i] / d;
+	    dest.data[dest.offset + i] = this.data[offset + i] / d;
 
 	}
 
-	return dv;
+	return dest;
+
+    }
+
+
+    /**
+     * Divides each element of this vector by the given number in
+     * place, returning this vector.
+     */
+    public DoubleVector divideInPlace(double d) {
+
+	return divide(d, this);
 
     }
 
@@ -609,15 +767,38 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector negate() {
 
-	DoubleVector dv = new DoubleVector(length);
+	return negate(new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Stores the additive inverses of the elements in this vector in
+     * dest, which must have the same length as this vector (and may be
+     * this vector itself); returns dest.
+     */
+    public DoubleVector negate(DoubleVector dest) {
+
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = -this.data[i];
+	    dest.data[dest.offset + i] = -this.data[offset + i];
 
 	}
 
-	return dv;
+	return dest;
+
+    }
+
+
+    /**
+     * Negates each element of this vector in place, returning this
+     * vector.
+     */
+    public DoubleVector negateInPlace() {
+
+	return negate(this);
 
     }
 
@@ -632,7 +813,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = Math.log(this.data[i]);
+	    dv.data[i] = Math.log(this.data[offset + i]);
 
 	}
 
@@ -651,7 +832,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dv.data[i] = Math.abs(this.data[i]);
+	    dv.data[i] = Math.abs(this.data[offset + i]);
 
 	}
 
@@ -669,7 +850,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    rounded.data[i] = (int) Math.round(this.data[i]);
+	    rounded.data[i] = (int) Math.round(this.data[offset + i]);
 
 	}
 
@@ -684,17 +865,35 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector add(DoubleVector dv) {
 
+	return add(dv, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Adds this vector and the given vector elementwise, storing the
+     * result in dest, which must have the same length (and may be
+     * either of them); returns dest.
+     */
+    public DoubleVector add(DoubleVector dv, DoubleVector dest) {
+
 	assert (lengthsEqual(this, dv)): "Vector lengths not equal";
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
-	DoubleVector sum = new DoubleVector(length);
+	KERNELS.add(this.data, this.offset, dv.data, dv.offset, dest.data, dest.offset, length);
 
-	for (int i = 0; i < length; i += 1) {
+	return dest;
 
-	    sum.data[i] = this.data[i] + dv.data[i];
+    }
 
-	}
 
-	return sum;
+    /**
+     * Adds the given vector to this vector elementwise, in place;
+     * returns this vector.
+     */
+    public DoubleVector addInPlace(DoubleVector dv) {
+
+	return add(dv, this);
 
     }
 
@@ -705,17 +904,35 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector subtract(DoubleVector dv) {
 
+	return subtract(dv, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Subtracts the given vector from this vector elementwise, storing
+     * the result in dest, which must have the same length (and may be
+     * either of them); returns dest.
+     */
+    public DoubleVector subtract(DoubleVector dv, DoubleVector dest) {
+
 	assert (lengthsEqual(this, dv)): "Vector lengths not equal";
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
-	DoubleVector diff = new DoubleVector(length);
+	KERNELS.subtract(this.data, this.offset, dv.data, dv.offset, dest.data, dest.offset, length);
 
-	for (int i = 0; i < length; i += 1) {
+	return dest;
+
+    }
 
-	    diff.data[i] = this.data[i] - dv.data[i];
 
-	}
+    /**
+     * Subtracts the given vector from this vector elementwise, in
+     * place; returns this vector.
+     */
+    public DoubleVector subtractInPlace(DoubleVector dv) {
 
-	return diff;
+	return subtract(dv, this);
 
     }
 
@@ -726,17 +943,35 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector multiply(DoubleVector dv) {
 
+	return multiply(dv, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Multiplies this vector by the given vector elementwise, storing
+     * the result in dest, which must have the same length (and may be
+     * either of them); returns dest.
+     */
+    public DoubleVector multiply(DoubleVector dv, DoubleVector dest) {
+
 	assert (lengthsEqual(this, dv)): "Vector lengths not equal";
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
-	DoubleVector prod = new DoubleVector(length);
+	KERNELS.multiply(this.data, this.offset, dv.data, dv.offset, dest.data, dest.offset, length);
 
-	for (int i = 0; i < length; i += 1) {
+	return dest;
 
-	    prod.data[i] = this.data[i] * dv.data[i];
+    }
 
-	}
 
-	return prod;
+    /**
+     * Multiplies this vector by the given vector elementwise, in
+     * place; returns this vector.
+     */
+    public DoubleVector multiplyInPlace(DoubleVector dv) {
+
+	return multiply(dv, this);
 
     }
 
@@ -747,37 +982,75 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleVector divide(DoubleVector dv) {
 
+	return divide(dv, new DoubleVector(length));
+
+    }
+
+
+    /**
+     * Divides this vector by the given vector elementwise, storing the
+     * result in dest, which must have the same length (and may be
+     * either of them); returns dest.
+     */
+    public DoubleVector divide(DoubleVector dv, DoubleVector dest) {
+
 	assert (lengthsEqual(this, dv)): "Vector lengths not equal";
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
-	DoubleVector quo = new DoubleVector(length);
+	KERNELS.divide(this.data, this.offset, dv.data, dv.offset, dest.data, dest.offset, length);
 
-	for (int i = 0; i < length; i += 1) {
+	return dest;
 
-	    quo.data[i] = this.data[i] / dv.data[i];
+    }
 
-	}
 
-	return quo;
+    /**
+     * Divides this vector by the given vector elementwise, in place;
+     * returns this vector.
+     */
+    public DoubleVector divideInPlace(DoubleVector dv) {
+
+	return divide(dv, this);
 
     }
 
 
     /**
-     * Computes the dot product of this vector with the given vector.
+     * Adds a times x to this vector in place (the BLAS operation
+     * axpy, with this vector as y); returns this vector.
      */
-    public double dotProduct(DoubleVector dv) {
+    public DoubleVector axpy(double a, DoubleVector x) {
 
-	assert (lengthsEqual(this, dv)): "Vector lengths not equal";
+	return axpy(a, x, this);
 
-	double dotProduct = 0;
+    }
 
-	for (int i = 0; i < length; i += 1) {
 
-	    dotProduct += data[i] * dv.data[i];
+    /**
+     * Stores this vector plus a times x in dest, which must have the
+     * same length (and may be either this vector or x); returns dest.
+     * Unlike add(x.multiply(a)), no temporary vector is allocated.
+     */
+    public DoubleVector axpy(double a, DoubleVector x, DoubleVector dest) {
 
-	}
+	assert (lengthsEqual(this, x)): "Vector lengths not equal";
+	assert (lengthsEqual(this, dest)): "Vector lengths not equal";
 
-	return dotProduct;
+	KERNELS.axpy(this.data, this.offset, a, x.data, x.offset, dest.data, dest.offset, length);
+
+	return dest;
+
+    }
+
+
+    /**
+     * Computes the dot product of this vector with the given vector.
+     */
+    public double dotProduct(DoubleVector dv) {
+
+	assert (lengthsEqual(this, dv)): "Vector lengths not equal";
+
+	return KERNELS.dot(this.data, this.offset, dv.data, dv.offset, length);
 
     }
 
@@ -793,7 +1066,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    dotProduct += data[i] * iv.data[i];
+	    dotProduct += data[offset + i] * iv.data[i];
 
 	}
 
@@ -849,30 +1122,70 @@ public class DoubleVector implements Cloneable, Serializable {
     }
 
 
+    /**
+     * Returns true if the elementwise operations and reductions (sum,
+     * dotProduct, norm, distance and so on) on vectors and matrices
+     * are using SIMD instructions via the jdk.incubator.vector API,
+     * false if they are using plain loops.
+     */
+    public static boolean isSimdEnabled() {
+
+	return KERNELS.isSimd();
+
+    }
+
+
     /**
      * Multiples this vector on the left by the given matrix on the
      * right, treating this vector as a row vector.
      */
     public DoubleVector multiply(DoubleMatrix d) {
 
+	return multiply(d, new DoubleVector(d.columns));
+
+    }
+
+
+    /**
+     * Multiplies this vector (as a row vector) by the given matrix,
+     * storing the result in dest, whose length must be the number of
+     * columns of the matrix, and which must not share storage with
+     * this vector; returns dest.
+     */
+    public DoubleVector multiply(DoubleMatrix d, DoubleVector dest) {
+
 	assert (this.length == d.rows):
 	    "Length of vector must be equal to number of rows in matrix: " + this.length + ", " + d.rows + ".";
+	assert (dest.length == d.columns):
+	    "Length of destination must be equal to number of columns in matrix: " + dest.length + ", " + d.columns + ".";
 
-	DoubleVector result = new DoubleVector(d.columns);
+	dest.fill(0);
 
-	for (int j = 0; j < result.length; j += 1) {
+	for (int i = 0; i < this.length; i += 1) {
 
-	    result.data[j] = 0;
+	    double x = this.data[this.offset + i];
+	    int r = d.index(i, 0);
 
-	    for (int i = 0; i < this.length; i += 1) {
+	    for (int j = 0; j < dest.length; j += 1) {
 
-		result.data[j] += this.data[i] * d.data[i][j];
+		dest.data[dest.offset + j] += x * d.data[r + j * d.columnStride];
 
 	    }
 
 	}
 
-	return result;
+	return dest;
+
+    }
+
+
+    /**
+     * Multiplies this vector, treating it as a row vector, by the
+     * given sparse matrix on the right.
+     */
+    public DoubleVector multiply(SparseDoubleMatrix d) {
+
+	return d.transposeMultiply(this);
 
     }
 
@@ -883,19 +1196,39 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public DoubleMatrix outerProduct(DoubleVector d) {
 
-	DoubleMatrix result = new DoubleMatrix(this.length, d.length);
+	return outerProduct(d, new DoubleMatrix(this.length, d.length));
+
+    }
+
+
+    /**
+     * Stores the outer product of this vector and the given vector in
+     * dest, which must have as many rows as this vector has elements
+     * and as many columns as the given vector; returns dest. To add
+     * the outer product to a matrix instead, use DoubleMatrix.ger.
+     */
+    public DoubleMatrix outerProduct(DoubleVector d, DoubleMatrix dest) {
+
+	if ((dest.rows != this.length) || (dest.columns != d.length)) {
+
+	    throw new IllegalArgumentException("Dimensions of destination don't match: " + dest.rows + "x" + dest.columns + ", " + this.length + "x" + d.length + ".");
+
+	}
 
 	for (int i = 0; i < this.length; i += 1) {
 
+	    double x = this.data[this.offset + i];
+	    int r = dest.index(i, 0);
+
 	    for (int j = 0; j < d.length; j += 1) {
 
-		result.data[i][j] = this.data[i] * d.data[j];
+		dest.data[r + j * dest.columnStride] = x * d.data[d.offset + j];
 
 	    }
 
 	}
 
-	return result;
+	return dest;
 
     }
 
@@ -925,14 +1258,15 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double trimmedMean(double trim) {
 
-	int skip = (int) Math.floor(trim * data.length);
-	double from = orderStatistic(skip);
-	double to = orderStatistic(data.length - skip);
+	int skip = (int) Math.floor(trim * length);
+	double[] bounds = orderStatistics(skip, length - skip);
+	double from = bounds[0];
+	double to = bounds[1];
 
 	double sum = 0;
 	int count = 0;
 
-	for (int i = 0; i < data.length; i += 1) {
+	for (int i = offset; i < offset + length; i += 1) {
 
 	    if ((from <= data[i]) && (data[i] <= to)) {
 
@@ -959,24 +1293,49 @@ public class DoubleVector implements Cloneable, Serializable {
     }
 
 
+    /**
+     * Returns a lazy expression over the elements of this vector, whose
+     * stages are fused into a single loop when it is evaluated; see
+     * DoubleExpression.
+     */
+    public DoubleExpression expr() {
+
+	return new DoubleExpression(this);
+
+    }
+
+
+    /**
+     * Computes the count, mean, moments, minimum and maximum of the
+     * elements of this vector in a single pass (in parallel for long
+     * vectors). The result can be merged with the summaries of other
+     * vectors.
+     */
+    public StreamingSummary summarize() {
+
+	return StreamingSummary.summarize(data, offset, length);
+
+    }
+
+
     /**
      * Computes the variance of the elements of this vector about m
      * (which need not be the mean).
      */
     public double variance(double m) {
 
-	assert (data.length > 1): "Variance is undefined for a vector of length one.";
+	assert (length > 1): "Variance is undefined for a vector of length one.";
 
 	double sigma = 0.0;
 
-	for (int i = 0; i < data.length; i += 1) {
+	for (int i = offset; i < offset + length; i += 1) {
 
 	    double d = data[i] - m;
 	    sigma += (d * d);
 
 	}
 
-	return sigma / (data.length - 1);
+	return sigma / (length - 1);
 
     }
 
@@ -1072,37 +1431,48 @@ public class DoubleVector implements Cloneable, Serializable {
 
     public DoubleVector squaredError() {
 
-	DoubleVector error = error();
-
-	return error.multiply(error);
+	return expr().subtract(mean()).square().toVector();
 
     }
 
 
     public double sumOfSquaredError() {
 
-	return squaredError().sum();
+	return expr().subtract(mean()).square().sum();
 
     }
 
 
     public DoubleVector absoluteError() {
 
-	return error().abs();
+	return expr().subtract(mean()).abs().toVector();
 
     }
 
 
     public double meanAbsoluteDeviation() {
 
-	return absoluteError().mean();
+	return expr().subtract(mean()).abs().mean();
 
     }
 
 
+    /**
+     * Computes the median of the absolute errors (see error), in a
+     * single new array.
+     */
     public double medianAbsoluteDeviation() {
 
-	return absoluteError().median();
+	double m = mean();
+	double[] a = new double[length];
+
+	for (int i = 0; i < length; i += 1) {
+
+	    a[i] = Math.abs(data[offset + i] - m);
+
+	}
+
+	return median(a);
 
     }
 
@@ -1112,11 +1482,11 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double max() {
 
-	double max = data[0];
+	double max = data[offset];
 
 	for (int i = 1; i < length; i += 1) {
 
-	    max = Math.max(max, data[i]);
+	    max = Math.max(max, data[offset + i]);
 
 	}
 
@@ -1130,11 +1500,11 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double min() {
 
-	double min = data[0];
+	double min = data[offset];
 
 	for (int i = 1; i < length; i += 1) {
 
-	    min = Math.min(min, data[i]);
+	    min = Math.min(min, data[offset + i]);
 
 	}
 
@@ -1148,14 +1518,14 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public int argmax() {
 
-	double max = data[0];
+	double max = data[offset];
 	int argmax = 0;
 
 	for (int i = 1; i < length; i += 1) {
 
-	    if (data[i] > max) {
+	    if (data[offset + i] > max) {
 
-		max = data[i];
+		max = data[offset + i];
 		argmax = i;
 
 	    }
@@ -1172,14 +1542,14 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public int argmin() {
 
-	double min = data[0];
+	double min = data[offset];
 	int argmin = 0;
 
 	for (int i = 1; i < length; i += 1) {
 
-	    if (data[i] < min) {
+	    if (data[offset + i] < min) {
 
-		min = data[i];
+		min = data[offset + i];
 		argmin = i;
 
 	    }
@@ -1196,7 +1566,9 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double range() {
 
-	return max() - min();
+	double[] minMax = minMax();
+
+	return minMax[1] - minMax[0];
 
     }
 
@@ -1206,7 +1578,31 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double midrange() {
 
-	return average(min(), max());
+	double[] minMax = minMax();
+
+	return average(minMax[0], minMax[1]);
+
+    }
+
+
+    /**
+     * Finds the minimum and maximum elements in a single pass.
+     */
+    private double[] minMax() {
+
+	double min = data[offset];
+	double max = min;
+
+	for (int i = 1; i < length; i += 1) {
+
+	    double x = data[offset + i];
+
+	    min = Math.min(min, x);
+	    max = Math.max(max, x);
+
+	}
+
+	return new double[]{min, max};
 
     }
 
@@ -1227,7 +1623,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    accum += Math.log(data[i]);
+	    accum += Math.log(data[offset + i]);
 
 	}
 
@@ -1245,7 +1641,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < length; i += 1) {
 
-	    accum += 1 / data[i];
+	    accum += 1 / data[offset + i];
 
 	}
 
@@ -1270,34 +1666,14 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double medianByPartition() {
 
-	int n = length;
-
-	if (isEven(n)) {
-
-	    return average(orderStatistic(n / 2), orderStatistic((n / 2) - 1));
-
-	} else {
-
-	    return orderStatistic(n / 2);
-
-	}
+	return median(clone().data);
 
     }
 
 
     public double quantile(double p) {
 
-	int i = (int) (p * length);
-
-	if (i == p * length) {
-
-	    return orderStatistic(i);
-
-	} else {
-
-	    return average(orderStatistic(i), orderStatistic(i + 1));
-
-	}
+	return quantiles(p)[0];
 
     }
 
@@ -1315,7 +1691,9 @@ public class DoubleVector implements Cloneable, Serializable {
 
     public double interQuartileRange() {
 
-	return upperQuartile() - lowerQuartile();
+	double[] q = quantiles(0.25, 0.75);
+
+	return q[1] - q[0];
 
     }
 
@@ -1340,93 +1718,209 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double orderStatistic(int i) {
 
-	/*
-	 * Calls orderStatistic on a copy to avoid changing the order
-	 * of the elements in this vector.
-	 */
-	return clone().orderStatistic(i, 0, length - 1);
+	return orderStatistics(i)[0];
 
     }
 
+
     /**
-     * From CLR, Chapter 10. This method reorders the elements of this
-     * vector.
+     * Returns the given order statistics (indexed from 0) of this
+     * vector, in the order given. They are all selected from a single
+     * copy of this vector, which is partitioned only as far as is
+     * needed to separate the requested ranks; see select. Ranks
+     * beyond either end give the minimum or maximum.
      */
-    private double orderStatistic(int i, int start, int end) {
+    public double[] orderStatistics(int... ranks) {
 
-	if (start == end) {
+	double[] a = clone().data;
+	double[] result = new double[ranks.length];
 
-	    return data[start];
+	select(a, ranks);
 
-	} else {
+	for (int k = 0; k < ranks.length; k += 1) {
 
-	    int split = randomizedPartition(start, end);
-	    int diff = (split - start) + 1;
+	    result[k] = a[clampRank(ranks[k], length)];
 
-	    if (i < diff) {
+	}
 
-		return orderStatistic(i, start, split);
+	return result;
 
-	    } else {
+    }
 
-		return orderStatistic(i - diff, split + 1, end);
 
-	    }
+    /**
+     * Returns quantile(p) for each of the given p, all selected from
+     * a single copy of this vector.
+     */
+    public double[] quantiles(double... ps) {
+
+	int[] ranks = new int[2 * ps.length];
+
+	for (int k = 0; k < ps.length; k += 1) {
+
+	    int i = (int) (ps[k] * length);
+
+	    ranks[2 * k] = i;
+	    ranks[2 * k + 1] = (i == ps[k] * length) ? i : i + 1;
 
 	}
 
+	double[] os = orderStatistics(ranks);
+	double[] q = new double[ps.length];
+
+	for (int k = 0; k < ps.length; k += 1) {
+
+	    q[k] = (ranks[2 * k] == ranks[2 * k + 1]) ? os[2 * k] : average(os[2 * k], os[2 * k + 1]);
+
+	}
+
+	return q;
+
     }
 
+
     /**
-     * Partitions the elements of this vector around an element chosen
-     * at random.
+     * Returns the median of the elements of a, which are reordered.
      */
-    private int randomizedPartition(int start, int end) {
+    private static double median(double[] a) {
+
+	int n = a.length;
+
+	if (isEven(n)) {
+
+	    select(a, n / 2 - 1, n / 2);
+
+	    return average(a[n / 2], a[(n / 2) - 1]);
+
+	} else {
+
+	    select(a, n / 2);
+
+	    return a[n / 2];
+
+	}
+
+    }
 
-	swap(start, random(start, end + 1));
 
-	return partition(start, end);
+    private static int clampRank(int i, int n) {
+
+	return Math.max(0, Math.min(i, n - 1));
 
     }
 
+
     /**
-     * Returns a random integer between start, inclusive, and end,
-     * exclusive.
+     * The length of a range below which select sorts it, rather than
+     * partitioning it further.
      */
-    private static int random(int start, int end) {
+    private static final int SELECT_CUTOFF = 16;
+
+
+    /**
+     * Reorders the elements of a so that a[i] is the ith smallest
+     * element for each of the given ranks (which are clamped to the
+     * array), with the smaller elements before it and the larger
+     * after.
+     */
+    private static void select(double[] a, int... ranks) {
+
+	if (a.length == 0) {
 
-	return start + ((int) Math.floor(Math.random() * (end - start)));
+	    return;
+
+	}
+
+	int[] r = new int[ranks.length];
+
+	for (int k = 0; k < ranks.length; k += 1) {
+
+	    r[k] = clampRank(ranks[k], a.length);
+
+	}
+
+	Arrays.sort(r);
+
+	// As in introsort, give up partitioning and sort a range that
+	// hasn't shrunk after about 2 log2(n) partitions.
+	int depth = 2 * (32 - Integer.numberOfLeadingZeros(a.length));
+
+	select(a, 0, a.length - 1, r, 0, r.length, depth);
 
     }
 
+
     /**
-     * Partitions the portion of this vector between indices start and
-     * end, inclusive, into subsets of elements which are,
-     * respectively, less than or equal to and greater than or equal
-     * to the element at index start. Returns an index i such that for
-     * start <= j < i, data[j] <= data[i]; and for end >= j > i,
-     * data[j] >= data[i].
-     *
-     * From CLR, Chapter 8.
+     * Selects the ranks r[rlo] to r[rhi - 1] (sorted) within a[lo] to
+     * a[hi], inclusive: partitions the range around the median of its
+     * first, middle and last elements (with Hoare's scheme, from CLR,
+     * Chapter 8), and recurses only into the parts which hold
+     * requested ranks.
      */
-    private int partition(int start, int end) {
+    private static void select(double[] a, int lo, int hi, int[] r, int rlo, int rhi, int depth) {
+
+	while (rlo < rhi) {
 
-	double x = data[start];
-	int i = start - 1;
-	int j = end + 1;
+	    if ((hi - lo < SELECT_CUTOFF) || (depth == 0)) {
 
-	while (true) {
+		Arrays.sort(a, lo, hi + 1);
+
+		return;
+
+	    }
 
-	    do { j -= 1; } while (data[j] > x);
-	    do { i += 1; } while (data[i] < x);
+	    depth -= 1;
 
-	    if (i < j) {
+	    int m = medianOfThree(a, lo, (lo + hi) >>> 1, hi);
+	    double x = a[m];
 
-		swap(i, j);
+	    a[m] = a[lo];
+	    a[lo] = x;
+
+	    int i = lo - 1;
+	    int j = hi + 1;
+
+	    while (true) {
+
+		do { j -= 1; } while (a[j] > x);
+		do { i += 1; } while (a[i] < x);
+
+		if (i < j) {
+
+		    double y = a[i];
+		    a[i] = a[j];
+		    a[j] = y;
+
+		} else {
+
+		    break;
+
+		}
+
+	    }
+
+	    // Elements lo to j are <= x, and j + 1 to hi >= x; so are
+	    // ranks rlo to split - 1 and split to rhi - 1.
+	    int split = rlo;
+
+	    while ((split < rhi) && (r[split] <= j)) {
+
+		split += 1;
+
+	    }
+
+	    // Recurse into the smaller side, and loop on the other.
+	    if (j - lo < hi - j) {
+
+		select(a, lo, j, r, rlo, split, depth);
+		lo = j + 1;
+		rlo = split;
 
 	    } else {
 
-		return j;
+		select(a, j + 1, hi, r, split, rhi, depth);
+		hi = j;
+		rhi = split;
 
 	    }
 
@@ -1435,6 +1929,29 @@ public class DoubleVector implements Cloneable, Serializable {
     }
 
 
+    /**
+     * Returns whichever of i, j and k indexes the median of their
+     * elements of a.
+     */
+    private static int medianOfThree(double[] a, int i, int j, int k) {
+
+	double x = a[i];
+	double y = a[j];
+	double z = a[k];
+
+	if (x < y) {
+
+	    return (y < z) ? j : ((x < z) ? k : i);
+
+	} else {
+
+	    return (x < z) ? i : ((y < z) ? k : j);
+
+	}
+
+    }
+
+
     /**
      * Returns true if the given vectors are of equal length.
      */
@@ -1463,7 +1980,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < dv1.length; i += 1) {
 
-	    if (dv1.data[i] != dv2.data[i]) {
+	    if (dv1.data[dv1.offset + i] != dv2.data[dv2.offset + i]) {
 
 		return false;
 
@@ -1484,7 +2001,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	DoubleToBoolean lt = new LessThanDouble.Double(x);
 
-	return new DoubleVector(lt.filter(this.data));
+	return new DoubleVector(lt.filter(data()));
 
     }
 
@@ -1497,7 +2014,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	DoubleToBoolean gt = new GreaterThanDouble.Double(x);
 
-	return new DoubleVector(gt.filter(this.data));
+	return new DoubleVector(gt.filter(data()));
 
     }
 
@@ -1508,13 +2025,15 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	for (int i = 0; i < this.length; i += 1) {
 
-	    if (this.data[i] == 0) {
+	    double d = this.data[offset + i];
+
+	    if (d == 0) {
 
 		h.data[i] = 0;
 
 	    } else {
 
-		h.data[i] = -this.data[i] * log2(this.data[i]);
+		h.data[i] = -d * log2(d);
 
 	    }
 
@@ -1530,15 +2049,7 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     public double norm() {
 
-	double s = 0;
-
-	for (int i = 0; i < data.length; i += 1) {
-
-	    s += data[i] * data[i];
-
-	}
-
-	return Math.sqrt(s);
+	return Math.sqrt(KERNELS.sumOfSquares(data, offset, length));
 
     }
 
@@ -1558,7 +2069,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	    double s = 0;
 
-	    for (int i = 0; i < data.length; i += 1) {
+	    for (int i = offset; i < offset + length; i += 1) {
 
 		s += Math.pow(Math.abs(data[i]), p);
 
@@ -1579,9 +2090,9 @@ public class DoubleVector implements Cloneable, Serializable {
      */
     protected double infinityNorm() {
 
-	double max = data[0];
+	double max = data[offset];
 
-	for (int i = 0; i < data.length; i += 1) {
+	for (int i = offset; i < offset + length; i += 1) {
 
 	    if (Math.abs(data[i]) > max) {
 
@@ -1600,16 +2111,7 @@ public class DoubleVector implements Cloneable, Serializable {
 
 	assert (lengthsEqual(this, dv)): "Lengths not equal.";
 
-	double s = 0;
-
-	for (int i = 0; i < data.length; i += 1) {
-
-	    double d = this.data[i] - dv.data[i];
-	    s += d * d;
-
-	}
-
-	return Math.sqrt(s);
+	return Math.sqrt(KERNELS.squaredDistance(this.data, this.offset, dv.data, dv.offset, length));
 
     }
 
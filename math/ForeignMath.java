@@ -0,0 +1,123 @@
+package math;
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * The NativeMath backend which calls libforeignmath (foreignmath.c)
+ * through the foreign function and memory API.
+ *
+ * The native functions take pointers to off-heap memory. Code which
+ * already keeps its data off heap can call the MemorySegment methods
+ * directly, with no copying at all; the array methods copy each
+ * matrix into (and the result out of) a temporary segment with a
+ * single bulk copy, rather than a JNI call per row.
+ *
+ * This class only uses the parts of java.lang.foreign which are the
+ * same in JDK 21 (where the API is a preview, so the class must be
+ * compiled and run with --enable-preview) and in JDK 22 and later. It
+ * is loaded reflectively by NativeMath, which falls back to other
+ * code if it is missing or its constructor throws.
+ *
+ * The library is looked for at the path given by the system property
+ * math.foreignmath.library, then in each directory of
+ * java.library.path, and finally by the system's dynamic linker.
+ * Loading a library is a restricted operation; run java with
+ * --enable-native-access=ALL-UNNAMED to avoid a warning.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+final class ForeignMath extends NativeMath {
+
+    private static final String LIBRARY = "foreignmath";
+
+    private final MethodHandle multiply;
+
+    private final MethodHandle lgamma;
+
+    ForeignMath() {
+	Linker linker = Linker.nativeLinker();
+	SymbolLookup lookup = findLibrary();
+
+	this.multiply = linker.downcallHandle(lookup.find("fm_multiply").orElseThrow(),
+					      FunctionDescriptor.ofVoid(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS,
+									ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+	this.lgamma = linker.downcallHandle(lookup.find("fm_lgamma").orElseThrow(),
+					    FunctionDescriptor.of(ValueLayout.JAVA_DOUBLE, ValueLayout.JAVA_DOUBLE));
+    }
+
+    /**
+     * Opens the library, which stays loaded for the life of the JVM.
+     */
+    private static SymbolLookup findLibrary() {
+	String path = System.getProperty("math.foreignmath.library");
+
+	if (path != null) {
+	    return SymbolLookup.libraryLookup(new File(path).toPath(), Arena.global());
+	}
+
+	String name = System.mapLibraryName(LIBRARY);
+	String dirs = System.getProperty("java.library.path", "");
+
+	for (String dir : dirs.split(File.pathSeparator)) {
+	    File f = new File(dir, name);
+
+	    if (!dir.isEmpty() && f.isFile()) {
+		return SymbolLookup.libraryLookup(f.toPath(), Arena.global());
+	    }
+	}
+
+	return SymbolLookup.libraryLookup(name, Arena.global());
+    }
+
+    String name() {
+	return "foreign";
+    }
+
+    void multiply(double[] a, double[] b, double[] p, int r1, int c1, int c2) {
+	try (Arena arena = Arena.ofConfined()) {
+	    MemorySegment sa = copyIn(arena, a, r1 * c1);
+	    MemorySegment sb = copyIn(arena, b, c1 * c2);
+	    MemorySegment sp = arena.allocate(8L * r1 * c2, 8);
+
+	    multiply(sa, sb, sp, r1, c1, c2);
+	    MemorySegment.copy(sp, ValueLayout.JAVA_DOUBLE, 0, p, 0, r1 * c2);
+	}
+    }
+
+    /**
+     * Computes p = a * b, where a is r1 x c1, b is c1 x c2, and all
+     * three are native segments of doubles stored by rows.
+     */
+    void multiply(MemorySegment a, MemorySegment b, MemorySegment p, int r1, int c1, int c2) {
+	try {
+	    multiply.invokeExact(a, b, p, r1, c1, c2);
+	} catch (Throwable t) {
+	    throw new IllegalStateException("Native multiply failed.", t);
+	}
+    }
+
+    double lgamma(double x) {
+	try {
+	    return (double) lgamma.invokeExact(x);
+	} catch (Throwable t) {
+	    throw new IllegalStateException("Native lgamma failed.", t);
+	}
+    }
+
+    private static MemorySegment copyIn(Arena arena, double[] a, int n) {
+	MemorySegment s = arena.allocate(8L * n, 8);
+
+	MemorySegment.copy(a, 0, s, ValueLayout.JAVA_DOUBLE, 0, n);
+
+	return s;
+    }
+
+}
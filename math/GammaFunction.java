@@ -53,6 +53,17 @@ public class GammaFunction {
 	return (z + 0.5) * Math.log(z + LGAMMA_A) - (z + LGAMMA_A) + Lib.LN_SQRT_2PI + Math.log(lgammaSeries(LGAMMA_COEFF, z)) - Math.log(z);
     }
 
+    /**
+     * Computes the natural logarithm of the gamma function using the
+     * C library's lgamma, through NativeMath, if a native library is
+     * available; otherwise, this is the same as lgamma(z).
+     */
+    public static double nativeLgamma(double z) {
+	NativeMath nm = NativeMath.get();
+
+	return (nm != null) ? nm.lgamma(z) : lgamma(z);
+    }
+
     /**
      * Computes the series portion of the Lanczos approximation. This
      * corresponds to the right hand side of Equation 8 in the Spouge
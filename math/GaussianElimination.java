@@ -15,8 +15,13 @@ package math;
  * while counting row swaps allows the determinant to be computed from
  * the diagonal elements.
  *
+ * In each column, the row whose element is largest in absolute value
+ * is swapped into the pivot position (partial pivoting). To solve
+ * several systems involving the same matrix, use LUDecomposition,
+ * which keeps the factorization for reuse.
+ *
  * @author <a href="mailto:jdale@berkeley.edu">Joseph Dale</a>
- * @version 20050323
+ * @version 20261017
  */
 public class GaussianElimination {
 
@@ -79,11 +84,11 @@ public class GaussianElimination {
 
 	for (int i = 0; i < m.rows; i += 1) {
 
-	    double c = m.data[i][i];
+	    double c = m.get(i, i);
 
 	    for (int j = 0; j < m.columns; j += 1) {
 
-		m.data[i][j] /= c;
+		m.set(i, j, m.get(i, j) / c);
 
 	    }
 
@@ -93,14 +98,17 @@ public class GaussianElimination {
 
 
     /**
-     * Ensures that the pivot element m.data[i][i] is non-zero, by
-     * swapping rows if necessary.
+     * Ensures that the pivot element m.get(i, i) is as large as
+     * possible in absolute value (partial pivoting), by swapping rows
+     * if necessary.
      */
     private void ensurePivot(int i) throws SingularMatrixException {
 
-	if (m.data[i][i] == 0) {
+	int j = findPivotRow(i);
+
+	if (j != i) {
 
-	    m.swapRows(i, findPivotRow(i));
+	    m.swapRows(i, j);
 	    rowSwaps += 1;
 
 	}
@@ -109,39 +117,46 @@ public class GaussianElimination {
 
 
     /**
-     * Finds the smallest j > i such that m.data[j][i] != 0. If there
-     * is no such j, throws SingularMatrixException.
+     * Finds the j >= i such that the absolute value of m.get(j, i) is
+     * largest. If every such element is zero, throws
+     * SingularMatrixException.
      */
     private int findPivotRow(int i) throws SingularMatrixException {
 
+	int p = i;
+	double max = Math.abs(m.get(i, i));
+
 	for (int j = i + 1; j < m.rows; j += 1) {
 
-	    if (m.data[j][i] != 0) {
+	    double d = Math.abs(m.get(j, i));
 
-		return j;
+	    if (d > max) {
+
+		max = d;
+		p = j;
 
 	    }
 
 	}
 
-	throw new SingularMatrixException("No pivot at " + i + ".");
+	if (max == 0) {
+
+	    throw new SingularMatrixException("No pivot at " + i + ".");
+
+	}
+
+	return p;
 
     }
 
 
     /**
-     * Subtracts a multiple of row i from row j so that m.data[j][i]
+     * Subtracts a multiple of row i from row j so that m.get(j, i)
      * becomes zero.
      */
     private void eliminate(int i, int j) {
 
-	double c = m.data[j][i] / m.data[i][i];
-
-	for (int k = 0; k < m.columns; k += 1) {
-
-	    m.data[j][k] -= c * m.data[i][k];
-
-	}
+	m.multiplyRowAndAdd(i, -m.get(j, i) / m.get(i, i), j);
 
     }
 
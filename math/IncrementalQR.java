@@ -0,0 +1,180 @@
+package math;
+
+/**
+ * Computes the triangular factor R of the QR decomposition of a
+ * matrix with a fixed number of columns, whose rows are supplied a
+ * block at a time; the matrix itself is never stored. After any
+ * number of rows have been added, R' * R is equal to A' * A, where A
+ * is the matrix of all rows added so far.
+ *
+ * Each block is absorbed by Householder reflections applied to the
+ * current R stacked on top of the block. Since R is already upper
+ * triangular, the kth reflection only involves row k of R and column
+ * k of the block, so adding b rows takes O(b * n^2) time and the
+ * memory needed is independent of the number of rows. Two factors
+ * computed from disjoint sets of rows (e.g., by different threads)
+ * can be combined with merge.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class IncrementalQR {
+
+    /**
+     * The upper triangular factor, n x n.
+     */
+    private final DoubleMatrix r;
+
+    private final int n;
+
+    /**
+     * The number of rows added so far.
+     */
+    private long rows;
+
+    /**
+     * Creates a factor for a matrix with the given number of columns
+     * and (as yet) no rows.
+     */
+    public IncrementalQR(int columns) {
+	this.n = columns;
+	this.r = new DoubleMatrix(n, n);
+	this.rows = 0;
+    }
+
+    public int columns() {
+	return n;
+    }
+
+    /**
+     * Returns the number of rows added so far.
+     */
+    public long rows() {
+	return rows;
+    }
+
+    /**
+     * Returns (a copy of) the current upper triangular factor R.
+     */
+    public DoubleMatrix getR() {
+	return r.clone();
+    }
+
+    /**
+     * Adds a single row.
+     */
+    public void add(DoubleVector row) {
+	if (row.length != n) {
+	    throw new IllegalArgumentException("Length of row doesn't match number of columns: " + row.length + ", " + n + ".");
+	}
+
+	DoubleMatrix block = new DoubleMatrix(1, n);
+	System.arraycopy(row.data, row.offset, block.data, 0, n);
+	absorb(block);
+	rows += 1;
+    }
+
+    /**
+     * Adds the rows of the given matrix, which is not modified.
+     */
+    public void add(DoubleMatrix block) {
+	if (block.columns != n) {
+	    throw new IllegalArgumentException("Columns of block don't match: " + block.columns + ", " + n + ".");
+	}
+
+	absorb(block.clone());
+	rows += block.rows;
+    }
+
+    /**
+     * Adds the rows summarized by another factor. The result is the
+     * same (up to rounding, and the signs of the rows of R) as if the
+     * rows added to the other factor had been added to this one.
+     */
+    public void merge(IncrementalQR other) {
+	if (other.n != n) {
+	    throw new IllegalArgumentException("Numbers of columns don't match: " + other.n + ", " + n + ".");
+	}
+
+	absorb(other.r.clone());
+	rows += other.rows;
+    }
+
+    /**
+     * Triangularizes R stacked on top of b (a contiguous matrix,
+     * which is overwritten), leaving the result in R.
+     */
+    private void absorb(DoubleMatrix b) {
+	double[] rd = r.data;
+	double[] bd = b.data;
+	int m = b.rows;
+	double[] u = new double[m];
+	double[] w = new double[n];
+
+	for (int k = 0; k < n; k += 1) {
+	    int rk = k * n;
+	    double x0 = rd[rk + k];
+	    double ss = 0;
+
+	    for (int i = 0; i < m; i += 1) {
+		u[i] = bd[i * n + k];
+		ss += u[i] * u[i];
+	    }
+
+	    if (ss == 0) {
+		continue;
+	    }
+
+	    // The reflection maps (x0, u) to (alpha, 0, ..., 0); its
+	    // Householder vector is (x0 - alpha, u).
+	    double alpha = Math.sqrt(x0 * x0 + ss);
+
+	    if (x0 > 0) {
+		alpha = -alpha;
+	    }
+
+	    double u0 = x0 - alpha;
+	    double scale = 2 / (u0 * u0 + ss);
+
+	    // w = (Householder vector)' * (stacked columns k + 1 to n - 1),
+	    // accumulated a row of b at a time.
+	    for (int j = k + 1; j < n; j += 1) {
+		w[j] = u0 * rd[rk + j];
+	    }
+
+	    for (int i = 0; i < m; i += 1) {
+		double ui = u[i];
+
+		if (ui != 0) {
+		    int ri = i * n;
+
+		    for (int j = k + 1; j < n; j += 1) {
+			w[j] += ui * bd[ri + j];
+		    }
+		}
+	    }
+
+	    for (int j = k + 1; j < n; j += 1) {
+		w[j] *= scale;
+		rd[rk + j] -= w[j] * u0;
+	    }
+
+	    for (int i = 0; i < m; i += 1) {
+		double ui = u[i];
+
+		if (ui != 0) {
+		    int ri = i * n;
+
+		    for (int j = k + 1; j < n; j += 1) {
+			bd[ri + j] -= w[j] * ui;
+		    }
+
+		    bd[ri + k] = 0;
+		}
+	    }
+
+	    rd[rk + k] = alpha;
+	}
+    }
+
+}
@@ -195,14 +195,9 @@ public class IntMatrix implements Cloneable, Serializable {
 	int[][] sel = new int[bv.countTrue()][columns];
 	int i = 0;
 
-	for (int k = 0; k < bv.length; ++k) {
-	    if (bv.data[k]) {
-		// replace this loop with an arraycopy?
-		for (int j = 0; j < columns; ++j) {
-		    sel[i][j] = this.data[k][j];
-		}
-		++i;
-	    }
+	for (int k = bv.nextSetBit(0); k >= 0; k = bv.nextSetBit(k + 1)) {
+	    System.arraycopy(this.data[k], 0, sel[i], 0, columns);
+	    ++i;
 	}
 
 	return new IntMatrix(sel);
@@ -255,20 +250,16 @@ public class IntMatrix implements Cloneable, Serializable {
 	int[][] sel = new int[rows][bv.countTrue()];
 	int j = 0;
 
-	for (int k = 0; k < bv.length; k += 1) {
-
-	    if (bv.data[k]) {
-
-		for (int i = 0; i < rows; i += 1) {
+	for (int k = bv.nextSetBit(0); k >= 0; k = bv.nextSetBit(k + 1)) {
 
-		    sel[i][j] = this.data[i][k];
-
-		}
+	    for (int i = 0; i < rows; i += 1) {
 
-		j += 1;
+		sel[i][j] = this.data[i][k];
 
 	    }
 
+	    j += 1;
+
 	}
 
 	return new IntMatrix(sel);
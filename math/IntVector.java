@@ -3,10 +3,17 @@ package math;
 import static math.Lib.average;
 import static math.Lib.isEven;
 
+import util.Sort;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -14,13 +21,17 @@ import java.util.Random;
 /**
  * A vector of ints.
  *
+ * A vector is serialized as its length followed by its elements as
+ * raw bytes. writeTo and readFrom use the binary format of
+ * MappedDoubleMatrix, with the vector as a single column of ints.
+ *
  * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
- * @version 20070819
+ * @version 20261017
  */
 public class IntVector implements Cloneable, Serializable {
 
-    int[] data;
-    int length;
+    transient int[] data;
+    transient int length;
 
     public IntVector(int length) {
 	this.length = length;
@@ -32,6 +43,18 @@ public class IntVector implements Cloneable, Serializable {
 	this.data = data.clone();
     }
 
+    /**
+     * Returns a vector backed by the given array, which is not copied.
+     */
+    static IntVector wrap(int[] data) {
+	IntVector v = new IntVector(0);
+
+	v.data = data;
+	v.length = data.length;
+
+	return v;
+    }
+
     public IntVector(Collection<Integer> c) {
 	this.length = c.size();
 	this.data = new int[length];
@@ -53,6 +76,50 @@ public class IntVector implements Cloneable, Serializable {
 	return clone;
     }
 
+    /**
+     * Writes this vector to the given channel, as a length x 1 matrix
+     * of ints (see BinaryIO). The channel is not closed.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+	BinaryIO.writeFully(channel, BinaryIO.header(BinaryIO.INT_MAGIC, length, 1));
+	BinaryIO.write(channel, data, 0, length);
+    }
+
+    /**
+     * Reads a vector written by writeTo from the given channel, which
+     * is not closed.
+     */
+    public static IntVector readFrom(ReadableByteChannel channel) throws IOException {
+	int[] dims = BinaryIO.readHeader(channel, BinaryIO.INT_MAGIC);
+
+	if ((dims[0] != 1) && (dims[1] != 1)) {
+	    throw new IOException("Not a vector: " + dims[0] + "x" + dims[1] + " matrix.");
+	}
+
+	IntVector v = new IntVector(BinaryIO.heapSize(dims));
+	BinaryIO.read(channel, v.data, 0, v.length);
+	return v;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+	out.defaultWriteObject();
+	out.writeInt(length);
+	BinaryIO.write(out, data, 0, length);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+	in.defaultReadObject();
+
+	int length = in.readInt();
+	if (length < 0) {
+	    throw new InvalidObjectException("Invalid vector length: " + length + ".");
+	}
+
+	this.data = new int[length];
+	this.length = length;
+	BinaryIO.read(in, data, 0, length);
+    }
+
     public String toString() {
 	StringBuffer sb = new StringBuffer();
 
@@ -135,11 +202,9 @@ public class IntVector implements Cloneable, Serializable {
 	int[] sel = new int[n];
 	int i = 0;
 
-	for (int j = 0; j < bv.length(); j += 1) {
-	    if (bv.data[j]) {
-		sel[i] = this.data[j];
-		i += 1;
-	    }
+	for (int j = bv.nextSetBit(0); j >= 0; j = bv.nextSetBit(j + 1)) {
+	    sel[i] = this.data[j];
+	    i += 1;
 	}
 
 	return new IntVector(sel);
@@ -185,11 +250,12 @@ public class IntVector implements Cloneable, Serializable {
 
     /**
      * Returns a new vector containing the elements of this vector
-     * sorted into increasing order.
+     * sorted into increasing order (by radix sort for long vectors; see
+     * util.Sort.sort).
      */
     public IntVector sort() {
 	IntVector sorted = clone();
-	Arrays.sort(sorted.data);
+	Sort.sort(sorted.data, 0, length, BlockedMultiply.pool());
 	return sorted;
     }
 
@@ -201,45 +267,10 @@ public class IntVector implements Cloneable, Serializable {
      * vector being sorted into ascending order.
      */
     public IntVector order() {
-	Index[] indices = new Index[this.length];
-
-	for (int i = 0; i < this.length; ++i) {
-	    indices[i] = new Index(this.data[i], i);
-	}
-
-	Arrays.sort(indices, eltComp);
-
-	IntVector order = new IntVector(this.length);
-
-	for (int i = 0; i < order.length; ++i) {
-	    order.data[i] = indices[i].idx;
-	}
-
-	return order;
+	// Equal elements stay in their original order; see util.Sort.order.
+	return wrap(Sort.order(data, 0, length, BlockedMultiply.pool()));
     }
 
-    private static class Index {
-	int elt;
-	int idx;
-
-	Index(int elt, int idx) {
-	    this.elt = elt;
-	    this.idx = idx;
-	}
-    }
-
-    private static final Comparator<Index> eltComp = new Comparator<Index>() {
-	public int compare(Index i1, Index i2) {
-	    if (i1.elt < i2.elt) {
-		return -1;
-	    } else if (i1.elt > i2.elt) {
-		return 1;
-	    } else {
-		return 0;
-	    }
-	}
-    };
-
     /**
      * Returns a new vector containing the elements of this vector in
      * reverse order.
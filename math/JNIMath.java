@@ -2,10 +2,13 @@
 package math;
 
 /**
- * Native interfaces for various mathematical functions.
+ * Native interfaces for various mathematical functions, implemented
+ * with JNI. These are normally reached through NativeMath, which
+ * prefers the foreign function backend in ForeignMath, and falls back
+ * to this class only if that is unavailable.
  *
  * @author <a href="mailto:jdale@berkeley.edu">Joseph Dale</a>
- * @version 20060108
+ * @version 20261017
  */
 abstract class JNIMath {
 
@@ -28,9 +31,31 @@ abstract class JNIMath {
     static native int zero();
 
 
-    static {
+    /**
+     * True if the native library was loaded. The library is loaded
+     * when this class is first used; if it can't be loaded, the
+     * native methods must not be called (they would throw
+     * UnsatisfiedLinkError), but the class itself still loads.
+     */
+    static final boolean LOADED = load();
+
+
+    private static boolean load() {
+
+	try {
+
+	    System.loadLibrary("jnimath");
+	    return true;
 
-	System.loadLibrary("jnimath");
+	} catch (UnsatisfiedLinkError ule) {
+
+	    return false;
+
+	} catch (SecurityException se) {
+
+	    return false;
+
+	}
 
     }
 
@@ -0,0 +1,356 @@
+package math;
+
+/**
+ * The LU decomposition of a square matrix, computed by Gaussian
+ * elimination with partial pivoting: P * A = L * U, where P is a
+ * permutation matrix, L is unit lower triangular and U is upper
+ * triangular.
+ *
+ * Once a matrix has been factored, any number of linear systems
+ * involving it can be solved in O(n^2) time each, and its inverse
+ * and determinant can be computed without factoring it again.
+ *
+ * At each step, the row with the largest element (in absolute value)
+ * in the pivot column is swapped into the pivot position. If every
+ * candidate pivot is exactly zero, the matrix is singular; the
+ * factorization still completes, but solve and inverse throw
+ * SingularMatrixException.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class LUDecomposition {
+
+    /**
+     * L and U, stored together in a single n x n matrix: the strict
+     * lower triangle holds L (whose diagonal elements are all 1), and
+     * the upper triangle holds U.
+     */
+    private final DoubleMatrix lu;
+
+    /**
+     * The row permutation: row i of L * U is row pivot[i] of the
+     * original matrix.
+     */
+    private final int[] pivot;
+
+    /**
+     * 1 if an even number of rows were swapped, -1 otherwise.
+     */
+    private int pivotSign;
+
+    /**
+     * The index of the first column in which no non-zero pivot could
+     * be found, or -1 if the matrix is non-singular.
+     */
+    private int singularColumn;
+
+    private final int n;
+
+    /**
+     * Factors the given matrix, which must be square. The matrix
+     * itself is not modified.
+     */
+    public LUDecomposition(DoubleMatrix a) {
+	if (!a.isSquare()) {
+	    throw new IllegalArgumentException("Matrix is not square: " + a.rows + " x " + a.columns + ".");
+	}
+
+	this.n = a.rows;
+	this.lu = a.clone();
+	this.pivot = new int[n];
+	this.pivotSign = 1;
+	this.singularColumn = -1;
+
+	for (int i = 0; i < n; i += 1) {
+	    pivot[i] = i;
+	}
+
+	factor();
+    }
+
+    /**
+     * Performs the elimination in place on lu. Since lu is stored
+     * contiguously by rows, each elimination step is a sequence of
+     * operations on contiguous row segments.
+     */
+    private void factor() {
+	double[] a = lu.data;
+
+	for (int k = 0; k < n; k += 1) {
+	    int p = k;
+	    double max = Math.abs(a[k * n + k]);
+
+	    for (int i = k + 1; i < n; i += 1) {
+		double d = Math.abs(a[i * n + k]);
+
+		if (d > max) {
+		    max = d;
+		    p = i;
+		}
+	    }
+
+	    if (p != k) {
+		lu.swapRows(p, k);
+
+		int t = pivot[p];
+		pivot[p] = pivot[k];
+		pivot[k] = t;
+		pivotSign = -pivotSign;
+	    }
+
+	    double ukk = a[k * n + k];
+
+	    if (ukk == 0) {
+		if (singularColumn < 0) {
+		    singularColumn = k;
+		}
+
+		continue;
+	    }
+
+	    for (int i = k + 1; i < n; i += 1) {
+		int ri = i * n;
+		int rk = k * n;
+		double l = a[ri + k] / ukk;
+
+		a[ri + k] = l;
+
+		if (l != 0) {
+		    for (int j = k + 1; j < n; j += 1) {
+			a[ri + j] -= l * a[rk + j];
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Returns the size of the factored matrix.
+     */
+    public int size() {
+	return n;
+    }
+
+    /**
+     * Returns true if the factored matrix is singular, i.e., if
+     * some diagonal element of U is zero.
+     */
+    public boolean isSingular() {
+	return singularColumn >= 0;
+    }
+
+    /**
+     * Returns the unit lower triangular factor L.
+     */
+    public DoubleMatrix getL() {
+	DoubleMatrix l = new DoubleMatrix(n, n);
+
+	for (int i = 0; i < n; i += 1) {
+	    for (int j = 0; j < i; j += 1) {
+		l.data[i * n + j] = lu.data[i * n + j];
+	    }
+
+	    l.data[i * n + i] = 1;
+	}
+
+	return l;
+    }
+
+    /**
+     * Returns the upper triangular factor U.
+     */
+    public DoubleMatrix getU() {
+	DoubleMatrix u = new DoubleMatrix(n, n);
+
+	for (int i = 0; i < n; i += 1) {
+	    for (int j = i; j < n; j += 1) {
+		u.data[i * n + j] = lu.data[i * n + j];
+	    }
+	}
+
+	return u;
+    }
+
+    /**
+     * Returns the row permutation as a vector p, such that row i of
+     * L * U is row p[i] of the factored matrix.
+     */
+    public IntVector getPivot() {
+	return new IntVector(pivot);
+    }
+
+    /**
+     * Returns the determinant of the factored matrix.
+     */
+    public double determinant() {
+	double d = pivotSign;
+
+	for (int i = 0; i < n; i += 1) {
+	    d *= lu.data[i * n + i];
+	}
+
+	return d;
+    }
+
+    /**
+     * Returns the natural logarithm of the absolute value of the
+     * determinant of the factored matrix (negative infinity if it is
+     * singular). Unlike determinant(), this does not overflow or
+     * underflow for large matrices; the sign of the determinant is
+     * given by determinantSign().
+     */
+    public double logDeterminant() {
+	double s = 0;
+
+	for (int i = 0; i < n; i += 1) {
+	    s += Math.log(Math.abs(lu.data[i * n + i]));
+	}
+
+	return s;
+    }
+
+    /**
+     * Returns the sign of the determinant of the factored matrix: 1,
+     * -1, or 0 if it is singular.
+     */
+    public int determinantSign() {
+	int sign = pivotSign;
+
+	for (int i = 0; i < n; i += 1) {
+	    double d = lu.data[i * n + i];
+
+	    if (d == 0) {
+		return 0;
+	    } else if (d < 0) {
+		sign = -sign;
+	    }
+	}
+
+	return sign;
+    }
+
+    /**
+     * Returns the vector x such that A * x = b, where A is the
+     * factored matrix.
+     */
+    public DoubleVector solve(DoubleVector b) throws SingularMatrixException {
+	if (b.length != n) {
+	    throw new IllegalArgumentException("Size of matrix doesn't match length of vector: " + n + ", " + b.length + ".");
+	}
+
+	checkSingular();
+
+	double[] a = lu.data;
+	DoubleVector x = new DoubleVector(n);
+	double[] y = x.data;
+
+	for (int i = 0; i < n; i += 1) {
+	    y[i] = b.data[b.offset + pivot[i]];
+	}
+
+	// Solve L * y = P * b.
+	for (int i = 1; i < n; i += 1) {
+	    int ri = i * n;
+	    double s = y[i];
+
+	    for (int k = 0; k < i; k += 1) {
+		s -= a[ri + k] * y[k];
+	    }
+
+	    y[i] = s;
+	}
+
+	// Solve U * x = y.
+	for (int i = n - 1; i >= 0; i -= 1) {
+	    int ri = i * n;
+	    double s = y[i];
+
+	    for (int k = i + 1; k < n; k += 1) {
+		s -= a[ri + k] * y[k];
+	    }
+
+	    y[i] = s / a[ri + i];
+	}
+
+	return x;
+    }
+
+    /**
+     * Returns the matrix X such that A * X = B, where A is the
+     * factored matrix; in other words, solves a linear system for
+     * each column of B. The columns are solved together, by
+     * operations on whole rows of X.
+     */
+    public DoubleMatrix solve(DoubleMatrix b) throws SingularMatrixException {
+	if (b.rows != n) {
+	    throw new IllegalArgumentException("Size of matrix doesn't match rows of right-hand side: " + n + ", " + b.rows + ".");
+	}
+
+	checkSingular();
+
+	int m = b.columns;
+	double[] a = lu.data;
+	DoubleMatrix x = new DoubleMatrix(n, m);
+	double[] y = x.data;
+
+	for (int i = 0; i < n; i += 1) {
+	    b.copyRow(pivot[i], y, i * m);
+	}
+
+	// Solve L * Y = P * B.
+	for (int k = 0; k < n; k += 1) {
+	    int rk = k * m;
+
+	    for (int i = k + 1; i < n; i += 1) {
+		double l = a[i * n + k];
+
+		if (l != 0) {
+		    int ri = i * m;
+
+		    for (int j = 0; j < m; j += 1) {
+			y[ri + j] -= l * y[rk + j];
+		    }
+		}
+	    }
+	}
+
+	// Solve U * X = Y.
+	for (int k = n - 1; k >= 0; k -= 1) {
+	    int rk = k * m;
+	    double ukk = a[k * n + k];
+
+	    for (int j = 0; j < m; j += 1) {
+		y[rk + j] /= ukk;
+	    }
+
+	    for (int i = 0; i < k; i += 1) {
+		double u = a[i * n + k];
+
+		if (u != 0) {
+		    int ri = i * m;
+
+		    for (int j = 0; j < m; j += 1) {
+			y[ri + j] -= u * y[rk + j];
+		    }
+		}
+	    }
+	}
+
+	return x;
+    }
+
+    /**
+     * Returns the inverse of the factored matrix.
+     */
+    public DoubleMatrix inverse() throws SingularMatrixException {
+	return solve(Matrices.identity(n));
+    }
+
+    private void checkSingular() throws SingularMatrixException {
+	if (isSingular()) {
+	    throw new SingularMatrixException("No pivot at " + singularColumn + ".");
+	}
+    }
+
+}
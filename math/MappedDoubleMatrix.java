@@ -0,0 +1,365 @@
+package math;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A matrix of doubles stored in a binary file, which is memory-mapped
+ * rather than read into the heap, so its size is limited by the
+ * address space and the disk, not the heap. The operating system's
+ * page cache does the I/O: methods which visit the whole matrix
+ * (sumColumns, mean, covariance, correlation) read it a row at a time
+ * from start to end, which lets the kernel read ahead.
+ *
+ * The file format (also written by Matrices.writeBinary) is a 16-byte
+ * header followed by the elements, all little-endian:
+ *
+ *   bytes 0-3     the magic number MAGIC ("DMAT" as ASCII)
+ *   bytes 4-7     the format version, VERSION
+ *   bytes 8-11    the number of rows
+ *   bytes 12-15   the number of columns
+ *   bytes 16-     the elements, as IEEE 754 doubles, by rows
+ *
+ * A single mapping can't exceed 2 GB, so the file is mapped in chunks
+ * of whole rows, each up to CHUNK_SIZE bytes.
+ *
+ * A matrix opened read-only, or created by create, supports the
+ * element access methods of DoubleMatrix; to use the operations of
+ * DoubleMatrix on part of it, copy that part to the heap with
+ * selectRows. Mappings are released by the garbage collector, not
+ * explicitly.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class MappedDoubleMatrix {
+
+    static final int MAGIC = 0x54414D44;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final long CHUNK_SIZE = 1L << 30;
+
+    /**
+     * The number of rows copied to the heap at a time by accumulate.
+     */
+    private static final int BLOCK_ROWS = 256;
+
+    private final int rows;
+
+    private final int columns;
+
+    private final int rowsPerChunk;
+
+    private final MappedByteBuffer[] maps;
+
+    /**
+     * The doubles of each chunk; chunk k holds rows k * rowsPerChunk
+     * onward.
+     */
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Opens the given file read-only.
+     */
+    public MappedDoubleMatrix(File file) throws IOException {
+	this(file, false);
+    }
+
+    /**
+     * Opens the given file, which must be in the format described
+     * above; if writable is true, changes made by set and setRow are
+     * written back to the file.
+     */
+    public MappedDoubleMatrix(File file, boolean writable) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+
+	try {
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+	    while (header.hasRemaining()) {
+		if (channel.read(header, header.position()) < 0) {
+		    throw new IOException("File too short for header: " + file + ".");
+		}
+	    }
+
+	    header.flip();
+
+	    int[] dims = readHeader(header);
+	    this.rows = dims[0];
+	    this.columns = dims[1];
+
+	    long expected = HEADER_SIZE + 8L * rows * columns;
+
+	    if (channel.size() < expected) {
+		throw new IOException("File too short for " + rows + "x" + columns + " matrix: " + channel.size() + " bytes.");
+	    }
+
+	    this.rowsPerChunk = (int) Math.min(Integer.MAX_VALUE, Math.max(1, CHUNK_SIZE / (8L * Math.max(columns, 1))));
+
+	    int n = (rows + rowsPerChunk - 1) / rowsPerChunk;
+	    FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+
+	    this.maps = new MappedByteBuffer[n];
+	    this.chunks = new DoubleBuffer[n];
+
+	    for (int k = 0; k < n; k += 1) {
+		long start = HEADER_SIZE + 8L * k * rowsPerChunk * columns;
+		long size = 8L * Math.min(rowsPerChunk, rows - k * rowsPerChunk) * columns;
+
+		maps[k] = channel.map(mode, start, size);
+		maps[k].order(ByteOrder.LITTLE_ENDIAN);
+		chunks[k] = maps[k].asDoubleBuffer();
+	    }
+	} finally {
+	    // The mappings remain valid after the channel is closed.
+	    raf.close();
+	}
+    }
+
+    /**
+     * Creates a file holding a rows x columns matrix of zeroes, and
+     * returns it opened for writing. The file is sparse on file
+     * systems which support it, so creating it is fast; fill it in
+     * with set or setRow, preferably in order of rows.
+     */
+    public static MappedDoubleMatrix create(File file, int rows, int columns) throws IOException {
+	if ((rows < 0) || (columns < 0)) {
+	    throw new IllegalArgumentException("Invalid matrix dimensions: " + rows + "x" + columns + ".");
+	}
+
+	RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+	try {
+	    raf.setLength(0);
+	    raf.getChannel().write(header(rows, columns));
+	    raf.setLength(HEADER_SIZE + 8L * rows * columns);
+	} finally {
+	    raf.close();
+	}
+
+	return new MappedDoubleMatrix(file, true);
+    }
+
+    /**
+     * Returns the header for a rows x columns matrix, ready to be
+     * written.
+     */
+    static ByteBuffer header(int rows, int columns) {
+	return BinaryIO.header(MAGIC, rows, columns);
+    }
+
+    /**
+     * Reads a header from the given buffer, returning the numbers of
+     * rows and columns; throws IOException if it isn't a valid
+     * header.
+     */
+    static int[] readHeader(ByteBuffer header) throws IOException {
+	return BinaryIO.readHeader(header, MAGIC);
+    }
+
+    public int rows() {
+	return rows;
+    }
+
+    public int columns() {
+	return columns;
+    }
+
+    private void checkRow(int i) {
+	if ((i < 0) || (i >= rows)) {
+	    throw new IndexOutOfBoundsException("Row " + i + " out of range: " + rows + " rows.");
+	}
+    }
+
+    /**
+     * Returns the (i, j)th element of this matrix.
+     */
+    public double get(int i, int j) {
+	checkRow(i);
+
+	if ((j < 0) || (j >= columns)) {
+	    throw new IndexOutOfBoundsException("Column " + j + " out of range: " + columns + " columns.");
+	}
+
+	return chunks[i / rowsPerChunk].get((i % rowsPerChunk) * columns + j);
+    }
+
+    /**
+     * Sets the (i, j)th element of this matrix, which must have been
+     * opened for writing.
+     */
+    public void set(int i, int j, double x) {
+	checkRow(i);
+
+	if ((j < 0) || (j >= columns)) {
+	    throw new IndexOutOfBoundsException("Column " + j + " out of range: " + columns + " columns.");
+	}
+
+	chunks[i / rowsPerChunk].put((i % rowsPerChunk) * columns + j, x);
+    }
+
+    /**
+     * Copies the ith row into the given array, starting at start.
+     */
+    private void copyRow(int i, double[] dest, int start) {
+	DoubleBuffer b = chunks[i / rowsPerChunk].duplicate();
+
+	b.position((i % rowsPerChunk) * columns);
+	b.get(dest, start, columns);
+    }
+
+    /**
+     * Returns a copy of the ith row of this matrix.
+     */
+    public DoubleVector getRow(int i) {
+	checkRow(i);
+
+	DoubleVector row = new DoubleVector(columns);
+	copyRow(i, row.data, 0);
+
+	return row;
+    }
+
+    /**
+     * Sets the ith row of this matrix, which must have been opened
+     * for writing.
+     */
+    public void setRow(int i, DoubleVector dv) {
+	checkRow(i);
+
+	if (dv.length != columns) {
+	    throw new IllegalArgumentException("Length of vector doesn't match number of columns: " + dv.length + ", " + columns + ".");
+	}
+
+	DoubleBuffer b = chunks[i / rowsPerChunk].duplicate();
+
+	b.position((i % rowsPerChunk) * columns);
+	b.put(dv.data, dv.offset, columns);
+    }
+
+    /**
+     * Returns a copy of the jth column of this matrix. This reads one
+     * element from every row, and so touches every page of the file.
+     */
+    public DoubleVector getColumn(int j) {
+	if ((j < 0) || (j >= columns)) {
+	    throw new IndexOutOfBoundsException("Column " + j + " out of range: " + columns + " columns.");
+	}
+
+	DoubleVector column = new DoubleVector(rows);
+
+	for (int i = 0; i < rows; i += 1) {
+	    column.data[i] = chunks[i / rowsPerChunk].get((i % rowsPerChunk) * columns + j);
+	}
+
+	return column;
+    }
+
+    /**
+     * Returns a new (heap) matrix holding a copy of rows start
+     * (inclusive) to end (exclusive) of this matrix.
+     */
+    public DoubleMatrix selectRows(int start, int end) {
+	if ((start < 0) || (end > rows) || (start > end)) {
+	    throw new IndexOutOfBoundsException("Invalid row range: " + start + ", " + end + ".");
+	}
+
+	DoubleMatrix dm = new DoubleMatrix(end - start, columns);
+
+	for (int i = start; i < end; i += 1) {
+	    copyRow(i, dm.data, (i - start) * columns);
+	}
+
+	return dm;
+    }
+
+    /**
+     * Returns a copy of this whole matrix in the heap.
+     */
+    public DoubleMatrix toDoubleMatrix() {
+	return selectRows(0, rows);
+    }
+
+    /**
+     * Returns a vector whose jth entry is the sum of the jth column of
+     * this matrix.
+     */
+    public DoubleVector sumColumns() {
+	DoubleVector sums = new DoubleVector(columns);
+	DoubleVector row = new DoubleVector(columns);
+
+	for (int i = 0; i < rows; i += 1) {
+	    copyRow(i, row.data, 0);
+	    sums.addInPlace(row);
+	}
+
+	return sums;
+    }
+
+    /**
+     * Returns a vector whose jth entry is the mean of the jth column
+     * of this matrix.
+     */
+    public DoubleVector mean() {
+	return sumColumns().divideInPlace(rows);
+    }
+
+    /**
+     * Adds the rows of this matrix to a new Covariance accumulator,
+     * BLOCK_ROWS rows at a time, in a single sequential pass over the
+     * file. Each block is copied into the same heap buffer, and the
+     * accumulator reuses its own buffers from block to block.
+     */
+    private Covariance accumulate() {
+	Covariance acc = new Covariance(columns);
+	double[] buffer = new double[Math.min(BLOCK_ROWS, rows) * columns];
+
+	for (int start = 0; start < rows; start += BLOCK_ROWS) {
+	    int end = Math.min(start + BLOCK_ROWS, rows);
+
+	    for (int i = start; i < end; i += 1) {
+		copyRow(i, buffer, (i - start) * columns);
+	    }
+
+	    acc.add(new DoubleMatrix(buffer, 0, end - start, columns, columns, 1));
+	}
+
+	return acc;
+    }
+
+    /**
+     * Returns the variance-covariance matrix of the columns of this
+     * matrix.
+     */
+    public DoubleMatrix covariance() {
+	return accumulate().covariance();
+    }
+
+    /**
+     * Returns the correlation matrix of the columns of this matrix.
+     */
+    public DoubleMatrix correlation() {
+	return accumulate().correlation();
+    }
+
+    /**
+     * Forces any changes made to this matrix to be written to the
+     * file.
+     */
+    public void force() {
+	for (MappedByteBuffer map : maps) {
+	    map.force();
+	}
+    }
+
+}
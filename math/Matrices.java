@@ -4,18 +4,25 @@ package math;
 import util.Strings;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Useful (static) functions for working with matrices.
  *
  * @author <a href="mailto:jdale@berkeley.edu">Joseph Dale</a>
- * @version 20060112
+ * @version 20261017
  */
 public class Matrices {
 
@@ -29,7 +36,7 @@ public class Matrices {
 
 	for (int i = 0; i < d.length; i += 1) {
 
-	    result.data[i][i] = d.data[i];
+	    result.set(i, i, d.get(i));
 
 	}
 
@@ -47,7 +54,7 @@ public class Matrices {
 
 	for (int i = 0; i < n; i += 1) {
 
-	    identity.data[i][i] = 1;
+	    identity.set(i, i, 1);
 
 	}
 
@@ -91,43 +98,75 @@ public class Matrices {
 
     /**
      * Reads the contents of a file as a tab-delimited matrix of
-     * doubles.
+     * doubles. Rows with fewer fields than the longest are padded with
+     * NaN. The file is memory-mapped and parsed in parallel (see
+     * ParallelTextReader), so the whole matrix must fit in the heap;
+     * for larger files, use blockReader. A file compressed with gzip
+     * can't be mapped, so it is read and parsed sequentially, by the
+     * same rules.
      */
     public static DoubleMatrix read(File file, boolean header) throws IOException {
 
-	List<DoubleVector> rows = readRows(file, header);
-	int columns = countColumns(rows);
-	DoubleMatrix dm = new DoubleMatrix(rows.size(), columns);
+	if (!isGzip(file)) {
 
-	int i = 0;
+	    return ParallelTextReader.read(file, header);
 
-	for (DoubleVector row : rows) {
+	}
 
-	    for (int j = 0; j < row.length(); j += 1) {
+	InputStream input = new GZIPInputStream(new FileInputStream(file), MatrixWriter.BUFFER_SIZE);
 
-		dm.data[i][j] = row.data[j];
+	try {
 
-	    }
+	    return ParallelTextReader.read(input, header);
 
-	    for (int j = row.length(); j < columns; j += 1) {
+	} finally {
 
-		dm.data[i][j] = Double.NaN;
+	    input.close();
 
-	    }
+	}
 
-	    i += 1;
+    }
 
-	}
 
-	return dm;
+    /**
+     * Reads the rows of a matrix a block at a time, so that a matrix
+     * too large for memory can be processed in a single pass. Each
+     * call to next returns a matrix holding the next block of rows
+     * (all blocks but the last have the same number of rows), or null
+     * after the last row.
+     */
+    public static abstract class BlockReader implements Closeable {
+
+	public abstract int columns();
+
+	public abstract DoubleMatrix next() throws IOException;
+
+	public void close() throws IOException {
+
+	}
 
     }
 
 
-    private static List<DoubleVector> readRows(File file, boolean header) throws IOException {
+    /**
+     * Returns a reader for the rows of a tab-delimited file, in
+     * blocks of the given number of rows. The number of columns is
+     * taken from the first row; shorter rows are padded with NaN, as
+     * by read. The file may be compressed with gzip.
+     */
+    public static BlockReader blockReader(File file, final boolean header, final int blockRows) throws IOException {
+
+	final BufferedReader input;
+
+	if (isGzip(file)) {
+
+	    input = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file), MatrixWriter.BUFFER_SIZE)));
 
-	List<DoubleVector> rows = new LinkedList<DoubleVector>();
-	BufferedReader input = new BufferedReader(new FileReader(file));
+	} else {
+
+	    input = new BufferedReader(new FileReader(file));
+
+	}
 
 	if (header) {
 
@@ -135,48 +174,149 @@ public class Matrices {
 
 	}
 
-	while (true) {
+	final String first = input.readLine();
+	final int columns = (first == null) ? 0 : Strings.tokenize(first).length;
 
-	    String line = input.readLine();
+	return new BlockReader() {
 
-	    if (line == null) {
+	    private String line = first;
 
-		break;
+	    public int columns() {
+
+		return columns;
 
 	    }
 
-	    String[] fields = Strings.tokenize(line);
-	    DoubleVector row = new DoubleVector(fields.length);
+	    public DoubleMatrix next() throws IOException {
+
+		List<DoubleVector> rows = new LinkedList<DoubleVector>();
+
+		while ((line != null) && (rows.size() < blockRows)) {
+
+		    String[] fields = Strings.tokenize(line);
+
+		    if (fields.length > columns) {
+
+			throw new IOException("Row has more than " + columns + " columns: " + line);
+
+		    }
+
+		    DoubleVector row = new DoubleVector(columns);
+		    row.fill(Double.NaN);
+
+		    for (int i = 0; i < fields.length; i += 1) {
+
+			row.data[i] = Double.parseDouble(fields[i]);
+
+		    }
+
+		    rows.add(row);
+		    line = input.readLine();
+
+		}
+
+		if (rows.isEmpty()) {
+
+		    return null;
 
-	    for (int i = 0; i < fields.length; i += 1) {
+		}
 
-		row.data[i] = Double.parseDouble(fields[i]);
+		DoubleMatrix block = new DoubleMatrix(rows.size(), columns);
+		int i = 0;
+
+		for (DoubleVector row : rows) {
+
+		    System.arraycopy(row.data, 0, block.data, i * columns, columns);
+		    i += 1;
+
+		}
+
+		return block;
 
 	    }
 
-	    rows.add(row);
+	    public void close() throws IOException {
 
-	}
+		input.close();
 
-	return rows;
+	    }
+
+	};
 
     }
 
 
     /**
-     * Returns the length of the longest vector in the given list.
+     * Returns a reader for the rows of the given matrix, in blocks of
+     * the given number of rows. The blocks are views of the matrix.
      */
-    private static int countColumns(List<DoubleVector> rows) {
+    public static BlockReader blockReader(final DoubleMatrix d, final int blockRows) {
 
-	int columns = -1;
+	return new BlockReader() {
 
-	for (DoubleVector dv : rows) {
+	    private int start = 0;
 
-	    columns = Math.max(columns, dv.length());
+	    public int columns() {
 
-	}
+		return d.columns;
+
+	    }
 
-	return columns;
+	    public DoubleMatrix next() {
+
+		if (start >= d.rows) {
+
+		    return null;
+
+		}
+
+		int end = Math.min(start + blockRows, d.rows);
+		DoubleMatrix block = d.selectRows(start, end);
+		start = end;
+
+		return block;
+
+	    }
+
+	};
+
+    }
+
+
+    /**
+     * Returns a reader for the rows of the given memory-mapped
+     * matrix, in blocks of the given number of rows, each copied to
+     * the heap.
+     */
+    public static BlockReader blockReader(final MappedDoubleMatrix d, final int blockRows) {
+
+	return new BlockReader() {
+
+	    private int start = 0;
+
+	    public int columns() {
+
+		return d.columns();
+
+	    }
+
+	    public DoubleMatrix next() {
+
+		if (start >= d.rows()) {
+
+		    return null;
+
+		}
+
+		int end = Math.min(start + blockRows, d.rows());
+		DoubleMatrix block = d.selectRows(start, end);
+		start = end;
+
+		return block;
+
+	    }
+
+	};
 
     }
 
@@ -188,22 +328,141 @@ public class Matrices {
     }
 
 
+    /**
+     * Writes the given matrix to the given file as tab-delimited text
+     * (see MatrixWriter), compressed with gzip if the file's name ends
+     * with ".gz".
+     */
     public static void write(DoubleMatrix d, File file) throws IOException {
 
-	PrintWriter output = new PrintWriter(file);
+	write(d, file, file.getName().endsWith(".gz"));
+
+    }
+
+
+    public static void write(DoubleMatrix d, File file, boolean gzip) throws IOException {
 
-	for (int i = 0; i < d.rows; i += 1) {
+	MatrixWriter output = new MatrixWriter(file, gzip);
 
-	    output.print(d.data[i][0]);
+	try {
 
-	    for (int j = 1; j < d.columns; j += 1) {
+	    output.write(d);
 
-		output.print("\t" + d.data[i][j]);
+	} finally {
+
+	    output.close();
+
+	}
+
+    }
+
+
+    /**
+     * Writes the given matrix to the given file in the binary format
+     * read by readBinary and MappedDoubleMatrix (see the latter for a
+     * description). Unlike write, this is exact, and doesn't format
+     * numbers.
+     */
+    public static void writeBinary(DoubleMatrix d, File file) throws IOException {
+
+	writeBinary(d, file, false);
+
+    }
+
+
+    /**
+     * Writes the given matrix to the given file in the binary format,
+     * compressed with gzip if requested. readBinary reads compressed
+     * files, but MappedDoubleMatrix can't map them.
+     */
+    public static void writeBinary(DoubleMatrix d, File file, boolean gzip) throws IOException {
+
+	if (!gzip) {
+
+	    FileOutputStream output = new FileOutputStream(file);
+
+	    try {
+
+		d.writeTo(output.getChannel());
+
+	    } finally {
+
+		output.close();
 
 	    }
 
-	    output.println();
-	    output.flush();
+	} else {
+
+	    OutputStream output = MatrixWriter.open(file, true);
+
+	    try {
+
+		d.writeTo(Channels.newChannel(output));
+
+	    } finally {
+
+		output.close();
+
+	    }
+
+	}
+
+    }
+
+
+    /**
+     * Reads a matrix from the given file, in the binary format written
+     * by writeBinary (compressed or not), into the heap. To work with
+     * a file too large for the heap, use MappedDoubleMatrix instead.
+     */
+    public static DoubleMatrix readBinary(File file) throws IOException {
+
+	if (!isGzip(file)) {
+
+	    FileInputStream input = new FileInputStream(file);
+
+	    try {
+
+		return DoubleMatrix.readFrom(input.getChannel());
+
+	    } finally {
+
+		input.close();
+
+	    }
+
+	}
+
+	InputStream input = new GZIPInputStream(new FileInputStream(file), MatrixWriter.BUFFER_SIZE);
+
+	try {
+
+	    return DoubleMatrix.readFrom(Channels.newChannel(input));
+
+	} finally {
+
+	    input.close();
+
+	}
+
+    }
+
+
+    /**
+     * Returns whether the given file starts with the gzip magic
+     * number.
+     */
+    private static boolean isGzip(File file) throws IOException {
+
+	FileInputStream input = new FileInputStream(file);
+
+	try {
+
+	    return (input.read() == 0x1F) && (input.read() == 0x8B);
+
+	} finally {
+
+	    input.close();
 
 	}
 
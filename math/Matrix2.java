@@ -0,0 +1,148 @@
+package math;
+
+/**
+ * A 2 x 2 matrix, held in fields rather than an array, for the
+ * Newton steps of estimators with two parameters. The determinant,
+ * inverse and solutions of linear systems are computed in closed form
+ * (by Cramer's rule) rather than by a decomposition, and every
+ * operation which produces a matrix or vector stores it in a
+ * destination supplied by the caller, which may be one of the
+ * operands, so that an iteration need not allocate anything.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public final class Matrix2 {
+
+    double m00, m01;
+    double m10, m11;
+
+    /**
+     * Creates a matrix of zeroes.
+     */
+    public Matrix2() {
+    }
+
+    /**
+     * Creates a matrix with the given elements, by rows.
+     */
+    public Matrix2(double m00, double m01, double m10, double m11) {
+	set(m00, m01, m10, m11);
+    }
+
+    public Matrix2 set(double m00, double m01, double m10, double m11) {
+	this.m00 = m00;
+	this.m01 = m01;
+	this.m10 = m10;
+	this.m11 = m11;
+
+	return this;
+    }
+
+    public Matrix2 set(Matrix2 b) {
+	return set(b.m00, b.m01, b.m10, b.m11);
+    }
+
+    public double get(int i, int j) {
+	switch (index(i, j)) {
+	case 0: return m00;
+	case 1: return m01;
+	case 2: return m10;
+	case 3: return m11;
+	default: throw new IllegalStateException();
+	}
+    }
+
+    public void set(int i, int j, double x) {
+	switch (index(i, j)) {
+	case 0: m00 = x; break;
+	case 1: m01 = x; break;
+	case 2: m10 = x; break;
+	case 3: m11 = x; break;
+	default: throw new IllegalStateException();
+	}
+    }
+
+    private static int index(int i, int j) {
+	if ((i < 0) || (i >= 2) || (j < 0) || (j >= 2)) {
+	    throw new IndexOutOfBoundsException("Index (" + i + ", " + j + ") out of range: 2 x 2.");
+	}
+
+	return i * 2 + j;
+    }
+
+    public double determinant() {
+	return m00 * m11 - m01 * m10;
+    }
+
+    /**
+     * Stores the inverse of this matrix in dest, which may be this
+     * matrix; returns dest.
+     */
+    public Matrix2 inverse(Matrix2 dest) throws SingularMatrixException {
+	double det = m00 * m11 - m01 * m10;
+
+	if (det == 0) {
+	    throw new SingularMatrixException("Matrix is singular.");
+	}
+
+	double r = 1 / det;
+
+	return dest.set(m11 * r,
+			-m01 * r,
+			-m10 * r,
+			m00 * r);
+    }
+
+    public Matrix2 inverse() throws SingularMatrixException {
+	return inverse(new Matrix2());
+    }
+
+    /**
+     * Stores the solution x of this * x = b in dest, which may be b;
+     * returns dest.
+     */
+    public Vector2 solve(Vector2 b, Vector2 dest) throws SingularMatrixException {
+	double det = m00 * m11 - m01 * m10;
+
+	if (det == 0) {
+	    throw new SingularMatrixException("Matrix is singular.");
+	}
+
+	double r = 1 / det;
+
+	return dest.set((m11 * b.x0 - m01 * b.x1) * r,
+			(m00 * b.x1 - m10 * b.x0) * r);
+    }
+
+    public Vector2 solve(Vector2 b) throws SingularMatrixException {
+	return solve(b, new Vector2());
+    }
+
+    /**
+     * Stores this * v in dest, which may be v; returns dest.
+     */
+    public Vector2 multiply(Vector2 v, Vector2 dest) {
+	return dest.set(m00 * v.x0 + m01 * v.x1,
+			m10 * v.x0 + m11 * v.x1);
+    }
+
+    /**
+     * Stores this * b in dest, which may be this or b; returns dest.
+     */
+    public Matrix2 multiply(Matrix2 b, Matrix2 dest) {
+	return dest.set(m00 * b.m00 + m01 * b.m10,
+			m00 * b.m01 + m01 * b.m11,
+			m10 * b.m00 + m11 * b.m10,
+			m10 * b.m01 + m11 * b.m11);
+    }
+
+    public DoubleMatrix toDoubleMatrix() {
+	return new DoubleMatrix(new double[]{m00, m01, m10, m11}, 0, 2, 2, 2, 1);
+    }
+
+    public String toString() {
+	return toDoubleMatrix().toString();
+    }
+
+}
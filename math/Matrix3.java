@@ -0,0 +1,182 @@
+package math;
+
+/**
+ * A 3 x 3 matrix, held in fields rather than an array. The
+ * determinant and inverse are computed in closed form, from the
+ * cofactors; see Matrix2.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public final class Matrix3 {
+
+    double m00, m01, m02;
+    double m10, m11, m12;
+    double m20, m21, m22;
+
+    /**
+     * Creates a matrix of zeroes.
+     */
+    public Matrix3() {
+    }
+
+    /**
+     * Creates a matrix with the given elements, by rows.
+     */
+    public Matrix3(double m00, double m01, double m02, double m10, double m11, double m12, double m20, double m21, double m22) {
+	set(m00, m01, m02, m10, m11, m12, m20, m21, m22);
+    }
+
+    public Matrix3 set(double m00, double m01, double m02, double m10, double m11, double m12, double m20, double m21, double m22) {
+	this.m00 = m00;
+	this.m01 = m01;
+	this.m02 = m02;
+	this.m10 = m10;
+	this.m11 = m11;
+	this.m12 = m12;
+	this.m20 = m20;
+	this.m21 = m21;
+	this.m22 = m22;
+
+	return this;
+    }
+
+    public Matrix3 set(Matrix3 b) {
+	return set(b.m00, b.m01, b.m02, b.m10, b.m11, b.m12, b.m20, b.m21, b.m22);
+    }
+
+    public double get(int i, int j) {
+	switch (index(i, j)) {
+	case 0: return m00;
+	case 1: return m01;
+	case 2: return m02;
+	case 3: return m10;
+	case 4: return m11;
+	case 5: return m12;
+	case 6: return m20;
+	case 7: return m21;
+	case 8: return m22;
+	default: throw new IllegalStateException();
+	}
+    }
+
+    public void set(int i, int j, double x) {
+	switch (index(i, j)) {
+	case 0: m00 = x; break;
+	case 1: m01 = x; break;
+	case 2: m02 = x; break;
+	case 3: m10 = x; break;
+	case 4: m11 = x; break;
+	case 5: m12 = x; break;
+	case 6: m20 = x; break;
+	case 7: m21 = x; break;
+	case 8: m22 = x; break;
+	default: throw new IllegalStateException();
+	}
+    }
+
+    private static int index(int i, int j) {
+	if ((i < 0) || (i >= 3) || (j < 0) || (j >= 3)) {
+	    throw new IndexOutOfBoundsException("Index (" + i + ", " + j + ") out of range: 3 x 3.");
+	}
+
+	return i * 3 + j;
+    }
+
+    public double determinant() {
+	double c00 = m11 * m22 - m12 * m21;
+	double c01 = m12 * m20 - m10 * m22;
+	double c02 = m10 * m21 - m11 * m20;
+
+	return m00 * c00 + m01 * c01 + m02 * c02;
+    }
+
+    /**
+     * Stores the inverse of this matrix in dest, which may be this
+     * matrix; returns dest.
+     */
+    public Matrix3 inverse(Matrix3 dest) throws SingularMatrixException {
+	double c00 = m11 * m22 - m12 * m21;
+	double c01 = m12 * m20 - m10 * m22;
+	double c02 = m10 * m21 - m11 * m20;
+	double det = m00 * c00 + m01 * c01 + m02 * c02;
+
+	if (det == 0) {
+	    throw new SingularMatrixException("Matrix is singular.");
+	}
+
+	double r = 1 / det;
+
+	return dest.set(c00 * r,
+			(m02 * m21 - m01 * m22) * r,
+			(m01 * m12 - m02 * m11) * r,
+			c01 * r,
+			(m00 * m22 - m02 * m20) * r,
+			(m02 * m10 - m00 * m12) * r,
+			c02 * r,
+			(m01 * m20 - m00 * m21) * r,
+			(m00 * m11 - m01 * m10) * r);
+    }
+
+    public Matrix3 inverse() throws SingularMatrixException {
+	return inverse(new Matrix3());
+    }
+
+    /**
+     * Stores the solution x of this * x = b in dest, which may be b;
+     * returns dest.
+     */
+    public Vector3 solve(Vector3 b, Vector3 dest) throws SingularMatrixException {
+	double c00 = m11 * m22 - m12 * m21;
+	double c01 = m12 * m20 - m10 * m22;
+	double c02 = m10 * m21 - m11 * m20;
+	double det = m00 * c00 + m01 * c01 + m02 * c02;
+
+	if (det == 0) {
+	    throw new SingularMatrixException("Matrix is singular.");
+	}
+
+	double r = 1 / det;
+
+	return dest.set((c00 * b.x0 + (m02 * m21 - m01 * m22) * b.x1 + (m01 * m12 - m02 * m11) * b.x2) * r,
+			(c01 * b.x0 + (m00 * m22 - m02 * m20) * b.x1 + (m02 * m10 - m00 * m12) * b.x2) * r,
+			(c02 * b.x0 + (m01 * m20 - m00 * m21) * b.x1 + (m00 * m11 - m01 * m10) * b.x2) * r);
+    }
+
+    public Vector3 solve(Vector3 b) throws SingularMatrixException {
+	return solve(b, new Vector3());
+    }
+
+    /**
+     * Stores this * v in dest, which may be v; returns dest.
+     */
+    public Vector3 multiply(Vector3 v, Vector3 dest) {
+	return dest.set(m00 * v.x0 + m01 * v.x1 + m02 * v.x2,
+			m10 * v.x0 + m11 * v.x1 + m12 * v.x2,
+			m20 * v.x0 + m21 * v.x1 + m22 * v.x2);
+    }
+
+    /**
+     * Stores this * b in dest, which may be this or b; returns dest.
+     */
+    public Matrix3 multiply(Matrix3 b, Matrix3 dest) {
+	return dest.set(m00 * b.m00 + m01 * b.m10 + m02 * b.m20,
+			m00 * b.m01 + m01 * b.m11 + m02 * b.m21,
+			m00 * b.m02 + m01 * b.m12 + m02 * b.m22,
+			m10 * b.m00 + m11 * b.m10 + m12 * b.m20,
+			m10 * b.m01 + m11 * b.m11 + m12 * b.m21,
+			m10 * b.m02 + m11 * b.m12 + m12 * b.m22,
+			m20 * b.m00 + m21 * b.m10 + m22 * b.m20,
+			m20 * b.m01 + m21 * b.m11 + m22 * b.m21,
+			m20 * b.m02 + m21 * b.m12 + m22 * b.m22);
+    }
+
+    public DoubleMatrix toDoubleMatrix() {
+	return new DoubleMatrix(new double[]{m00, m01, m02, m10, m11, m12, m20, m21, m22}, 0, 3, 3, 3, 1);
+    }
+
+    public String toString() {
+	return toDoubleMatrix().toString();
+    }
+
+}
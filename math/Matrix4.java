@@ -0,0 +1,248 @@
+package math;
+
+/**
+ * A 4 x 4 matrix, held in fields rather than an array. The
+ * determinant and inverse are computed in closed form, from the
+ * twelve 2 x 2 minors of the first two and last two rows (Laplace
+ * expansion); see Matrix2.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public final class Matrix4 {
+
+    double m00, m01, m02, m03;
+    double m10, m11, m12, m13;
+    double m20, m21, m22, m23;
+    double m30, m31, m32, m33;
+
+    /**
+     * Creates a matrix of zeroes.
+     */
+    public Matrix4() {
+    }
+
+    /**
+     * Creates a matrix with the given elements, by rows.
+     */
+    public Matrix4(double m00, double m01, double m02, double m03, double m10, double m11, double m12, double m13, double m20, double m21, double m22, double m23, double m30, double m31, double m32, double m33) {
+	set(m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
+    }
+
+    public Matrix4 set(double m00, double m01, double m02, double m03, double m10, double m11, double m12, double m13, double m20, double m21, double m22, double m23, double m30, double m31, double m32, double m33) {
+	this.m00 = m00;
+	this.m01 = m01;
+	this.m02 = m02;
+	this.m03 = m03;
+	this.m10 = m10;
+	this.m11 = m11;
+	this.m12 = m12;
+	this.m13 = m13;
+	this.m20 = m20;
+	this.m21 = m21;
+	this.m22 = m22;
+	this.m23 = m23;
+	this.m30 = m30;
+	this.m31 = m31;
+	this.m32 = m32;
+	this.m33 = m33;
+
+	return this;
+    }
+
+    public Matrix4 set(Matrix4 b) {
+	return set(b.m00, b.m01, b.m02, b.m03, b.m10, b.m11, b.m12, b.m13, b.m20, b.m21, b.m22, b.m23, b.m30, b.m31, b.m32, b.m33);
+    }
+
+    public double get(int i, int j) {
+	switch (index(i, j)) {
+	case 0: return m00;
+	case 1: return m01;
+	case 2: return m02;
+	case 3: return m03;
+	case 4: return m10;
+	case 5: return m11;
+	case 6: return m12;
+	case 7: return m13;
+	case 8: return m20;
+	case 9: return m21;
+	case 10: return m22;
+	case 11: return m23;
+	case 12: return m30;
+	case 13: return m31;
+	case 14: return m32;
+	case 15: return m33;
+	default: throw new IllegalStateException();
+	}
+    }
+
+    public void set(int i, int j, double x) {
+	switch (index(i, j)) {
+	case 0: m00 = x; break;
+	case 1: m01 = x; break;
+	case 2: m02 = x; break;
+	case 3: m03 = x; break;
+	case 4: m10 = x; break;
+	case 5: m11 = x; break;
+	case 6: m12 = x; break;
+	case 7: m13 = x; break;
+	case 8: m20 = x; break;
+	case 9: m21 = x; break;
+	case 10: m22 = x; break;
+	case 11: m23 = x; break;
+	case 12: m30 = x; break;
+	case 13: m31 = x; break;
+	case 14: m32 = x; break;
+	case 15: m33 = x; break;
+	default: throw new IllegalStateException();
+	}
+    }
+
+    private static int index(int i, int j) {
+	if ((i < 0) || (i >= 4) || (j < 0) || (j >= 4)) {
+	    throw new IndexOutOfBoundsException("Index (" + i + ", " + j + ") out of range: 4 x 4.");
+	}
+
+	return i * 4 + j;
+    }
+
+    public double determinant() {
+	double s0 = m00 * m11 - m10 * m01;
+	double s1 = m00 * m12 - m10 * m02;
+	double s2 = m00 * m13 - m10 * m03;
+	double s3 = m01 * m12 - m11 * m02;
+	double s4 = m01 * m13 - m11 * m03;
+	double s5 = m02 * m13 - m12 * m03;
+	double c5 = m22 * m33 - m32 * m23;
+	double c4 = m21 * m33 - m31 * m23;
+	double c3 = m21 * m32 - m31 * m22;
+	double c2 = m20 * m33 - m30 * m23;
+	double c1 = m20 * m32 - m30 * m22;
+	double c0 = m20 * m31 - m30 * m21;
+
+	return s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+    }
+
+    /**
+     * Stores the inverse of this matrix in dest, which may be this
+     * matrix; returns dest.
+     */
+    public Matrix4 inverse(Matrix4 dest) throws SingularMatrixException {
+	double s0 = m00 * m11 - m10 * m01;
+	double s1 = m00 * m12 - m10 * m02;
+	double s2 = m00 * m13 - m10 * m03;
+	double s3 = m01 * m12 - m11 * m02;
+	double s4 = m01 * m13 - m11 * m03;
+	double s5 = m02 * m13 - m12 * m03;
+	double c5 = m22 * m33 - m32 * m23;
+	double c4 = m21 * m33 - m31 * m23;
+	double c3 = m21 * m32 - m31 * m22;
+	double c2 = m20 * m33 - m30 * m23;
+	double c1 = m20 * m32 - m30 * m22;
+	double c0 = m20 * m31 - m30 * m21;
+	double det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+
+	if (det == 0) {
+	    throw new SingularMatrixException("Matrix is singular.");
+	}
+
+	double r = 1 / det;
+
+	return dest.set((m11 * c5 - m12 * c4 + m13 * c3) * r,
+			(-m01 * c5 + m02 * c4 - m03 * c3) * r,
+			(m31 * s5 - m32 * s4 + m33 * s3) * r,
+			(-m21 * s5 + m22 * s4 - m23 * s3) * r,
+			(-m10 * c5 + m12 * c2 - m13 * c1) * r,
+			(m00 * c5 - m02 * c2 + m03 * c1) * r,
+			(-m30 * s5 + m32 * s2 - m33 * s1) * r,
+			(m20 * s5 - m22 * s2 + m23 * s1) * r,
+			(m10 * c4 - m11 * c2 + m13 * c0) * r,
+			(-m00 * c4 + m01 * c2 - m03 * c0) * r,
+			(m30 * s4 - m31 * s2 + m33 * s0) * r,
+			(-m20 * s4 + m21 * s2 - m23 * s0) * r,
+			(-m10 * c3 + m11 * c1 - m12 * c0) * r,
+			(m00 * c3 - m01 * c1 + m02 * c0) * r,
+			(-m30 * s3 + m31 * s1 - m32 * s0) * r,
+			(m20 * s3 - m21 * s1 + m22 * s0) * r);
+    }
+
+    public Matrix4 inverse() throws SingularMatrixException {
+	return inverse(new Matrix4());
+    }
+
+    /**
+     * Stores the solution x of this * x = b in dest, which may be b;
+     * returns dest.
+     */
+    public Vector4 solve(Vector4 b, Vector4 dest) throws SingularMatrixException {
+	double s0 = m00 * m11 - m10 * m01;
+	double s1 = m00 * m12 - m10 * m02;
+	double s2 = m00 * m13 - m10 * m03;
+	double s3 = m01 * m12 - m11 * m02;
+	double s4 = m01 * m13 - m11 * m03;
+	double s5 = m02 * m13 - m12 * m03;
+	double c5 = m22 * m33 - m32 * m23;
+	double c4 = m21 * m33 - m31 * m23;
+	double c3 = m21 * m32 - m31 * m22;
+	double c2 = m20 * m33 - m30 * m23;
+	double c1 = m20 * m32 - m30 * m22;
+	double c0 = m20 * m31 - m30 * m21;
+	double det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+
+	if (det == 0) {
+	    throw new SingularMatrixException("Matrix is singular.");
+	}
+
+	double r = 1 / det;
+
+	return dest.set(((m11 * c5 - m12 * c4 + m13 * c3) * b.x0 + (-m01 * c5 + m02 * c4 - m03 * c3) * b.x1 + (m31 * s5 - m32 * s4 + m33 * s3) * b.x2 + (-m21 * s5 + m22 * s4 - m23 * s3) * b.x3) * r,
+			((-m10 * c5 + m12 * c2 - m13 * c1) * b.x0 + (m00 * c5 - m02 * c2 + m03 * c1) * b.x1 + (-m30 * s5 + m32 * s2 - m33 * s1) * b.x2 + (m20 * s5 - m22 * s2 + m23 * s1) * b.x3) * r,
+			((m10 * c4 - m11 * c2 + m13 * c0) * b.x0 + (-m00 * c4 + m01 * c2 - m03 * c0) * b.x1 + (m30 * s4 - m31 * s2 + m33 * s0) * b.x2 + (-m20 * s4 + m21 * s2 - m23 * s0) * b.x3) * r,
+			((-m10 * c3 + m11 * c1 - m12 * c0) * b.x0 + (m00 * c3 - m01 * c1 + m02 * c0) * b.x1 + (-m30 * s3 + m31 * s1 - m32 * s0) * b.x2 + (m20 * s3 - m21 * s1 + m22 * s0) * b.x3) * r);
+    }
+
+    public Vector4 solve(Vector4 b) throws SingularMatrixException {
+	return solve(b, new Vector4());
+    }
+
+    /**
+     * Stores this * v in dest, which may be v; returns dest.
+     */
+    public Vector4 multiply(Vector4 v, Vector4 dest) {
+	return dest.set(m00 * v.x0 + m01 * v.x1 + m02 * v.x2 + m03 * v.x3,
+			m10 * v.x0 + m11 * v.x1 + m12 * v.x2 + m13 * v.x3,
+			m20 * v.x0 + m21 * v.x1 + m22 * v.x2 + m23 * v.x3,
+			m30 * v.x0 + m31 * v.x1 + m32 * v.x2 + m33 * v.x3);
+    }
+
+    /**
+     * Stores this * b in dest, which may be this or b; returns dest.
+     */
+    public Matrix4 multiply(Matrix4 b, Matrix4 dest) {
+	return dest.set(m00 * b.m00 + m01 * b.m10 + m02 * b.m20 + m03 * b.m30,
+			m00 * b.m01 + m01 * b.m11 + m02 * b.m21 + m03 * b.m31,
+			m00 * b.m02 + m01 * b.m12 + m02 * b.m22 + m03 * b.m32,
+			m00 * b.m03 + m01 * b.m13 + m02 * b.m23 + m03 * b.m33,
+			m10 * b.m00 + m11 * b.m10 + m12 * b.m20 + m13 * b.m30,
+			m10 * b.m01 + m11 * b.m11 + m12 * b.m21 + m13 * b.m31,
+			m10 * b.m02 + m11 * b.m12 + m12 * b.m22 + m13 * b.m32,
+			m10 * b.m03 + m11 * b.m13 + m12 * b.m23 + m13 * b.m33,
+			m20 * b.m00 + m21 * b.m10 + m22 * b.m20 + m23 * b.m30,
+			m20 * b.m01 + m21 * b.m11 + m22 * b.m21 + m23 * b.m31,
+			m20 * b.m02 + m21 * b.m12 + m22 * b.m22 + m23 * b.m32,
+			m20 * b.m03 + m21 * b.m13 + m22 * b.m23 + m23 * b.m33,
+			m30 * b.m00 + m31 * b.m10 + m32 * b.m20 + m33 * b.m30,
+			m30 * b.m01 + m31 * b.m11 + m32 * b.m21 + m33 * b.m31,
+			m30 * b.m02 + m31 * b.m12 + m32 * b.m22 + m33 * b.m32,
+			m30 * b.m03 + m31 * b.m13 + m32 * b.m23 + m33 * b.m33);
+    }
+
+    public DoubleMatrix toDoubleMatrix() {
+	return new DoubleMatrix(new double[]{m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33}, 0, 4, 4, 4, 1);
+    }
+
+    public String toString() {
+	return toDoubleMatrix().toString();
+    }
+
+}
@@ -0,0 +1,147 @@
+package math;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes matrices as tab-delimited text, one row per line, as read by
+ * Matrices.read, optionally compressed with gzip.
+ *
+ * Numbers are formatted by DoubleFormatter, as the shortest decimals
+ * which read back exactly, straight into a byte buffer of BUFFER_SIZE
+ * bytes, which is written out only when full; no strings are created.
+ * Rows can be written one at a time, so a result needn't be held in
+ * memory all at once.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class MatrixWriter implements Closeable {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final OutputStream output;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position = 0;
+
+    /**
+     * Creates a writer for the given file, compressed with gzip if the
+     * file's name ends with ".gz".
+     */
+    public MatrixWriter(File file) throws IOException {
+	this(file, file.getName().endsWith(".gz"));
+    }
+
+    public MatrixWriter(File file, boolean gzip) throws IOException {
+	this(open(file, gzip));
+    }
+
+    /**
+     * Creates a writer to the given stream, which is closed by close.
+     */
+    public MatrixWriter(OutputStream output) {
+	this.output = output;
+    }
+
+    /**
+     * Opens the given file for writing, through a gzip stream if
+     * requested.
+     */
+    static OutputStream open(File file, boolean gzip) throws IOException {
+	OutputStream output = new FileOutputStream(file);
+
+	if (gzip) {
+	    try {
+		output = new GZIPOutputStream(new BufferedOutputStream(output, BUFFER_SIZE), BUFFER_SIZE);
+	    } catch (IOException e) {
+		output.close();
+		throw e;
+	    }
+	}
+
+	return output;
+    }
+
+    /**
+     * Writes the rows of the given matrix.
+     */
+    public void write(DoubleMatrix d) throws IOException {
+	for (int i = 0; i < d.rows; i += 1) {
+	    int r = d.index(i, 0);
+
+	    for (int j = 0; j < d.columns; j += 1) {
+		writeField(j, d.data[r + j * d.columnStride]);
+	    }
+
+	    endRow();
+	}
+    }
+
+    /**
+     * Writes the given vector as a row.
+     */
+    public void writeRow(DoubleVector row) throws IOException {
+	for (int j = 0; j < row.length; j += 1) {
+	    writeField(j, row.data[row.offset + j]);
+	}
+
+	endRow();
+    }
+
+    public void writeRow(double[] row) throws IOException {
+	for (int j = 0; j < row.length; j += 1) {
+	    writeField(j, row[j]);
+	}
+
+	endRow();
+    }
+
+    private void writeField(int j, double x) throws IOException {
+	if (position + DoubleFormatter.MAX_LENGTH + 1 > buffer.length) {
+	    drain();
+	}
+
+	if (j > 0) {
+	    buffer[position++] = '\t';
+	}
+
+	position = DoubleFormatter.format(x, buffer, position);
+    }
+
+    private void endRow() throws IOException {
+	if (position + 1 > buffer.length) {
+	    drain();
+	}
+
+	buffer[position++] = '\n';
+    }
+
+    /**
+     * Writes out the contents of the buffer.
+     */
+    private void drain() throws IOException {
+	output.write(buffer, 0, position);
+	position = 0;
+    }
+
+    public void flush() throws IOException {
+	drain();
+	output.flush();
+    }
+
+    public void close() throws IOException {
+	try {
+	    drain();
+	} finally {
+	    output.close();
+	}
+    }
+
+}
@@ -0,0 +1,106 @@
+package math;
+
+/**
+ * Access to native implementations of some numerical routines, with
+ * pure Java fallbacks.
+ *
+ * The backend is chosen the first time get() is called, not when the
+ * package is loaded. The preferred backend is ForeignMath, which calls
+ * the plain C library libforeignmath through the foreign function and
+ * memory API (java.lang.foreign), passing off-heap memory rather than
+ * Java arrays; it is compiled separately (see the Makefile), and needs
+ * a JDK which supports that API. If it can't be loaded, or its
+ * library can't be found, the JNI library libjnimath is tried
+ * instead, through JNIMath. If neither is available, get() returns
+ * null, and callers use their pure Java code.
+ *
+ * No failure to find a class or library ever propagates to the
+ * caller: the worst case is that the native code isn't used. Setting
+ * the system property math.native to false disables both backends.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+abstract class NativeMath {
+
+    /**
+     * Holds the backend, so that it is only looked for when first
+     * needed.
+     */
+    private static class Holder {
+	static final NativeMath INSTANCE = load();
+    }
+
+    private static NativeMath load() {
+	if ("false".equals(System.getProperty("math.native"))) {
+	    return null;
+	}
+
+	try {
+	    return (NativeMath) Class.forName("math.ForeignMath").getDeclaredConstructor().newInstance();
+	} catch (Throwable t) {
+	    // The class, the API or the library is missing; try JNI.
+	}
+
+	try {
+	    if (JNIMath.LOADED) {
+		return new JNI();
+	    }
+	} catch (Throwable t) {
+	    // Fall through.
+	}
+
+	return null;
+    }
+
+    /**
+     * Returns the native backend, or null if none is available.
+     */
+    static NativeMath get() {
+	return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns a short name for this backend.
+     */
+    abstract String name();
+
+    /**
+     * Computes p = a * b, where a is r1 x c1, b is c1 x c2, and all
+     * three are stored contiguously by rows, starting at index 0.
+     */
+    abstract void multiply(double[] a, double[] b, double[] p, int r1, int c1, int c2);
+
+    /**
+     * Returns the natural logarithm of the gamma function.
+     */
+    abstract double lgamma(double x);
+
+    /**
+     * The backend which uses the JNI library, whose multiply takes
+     * and returns arrays of rows.
+     */
+    static class JNI extends NativeMath {
+
+	String name() {
+	    return "jni";
+	}
+
+	void multiply(double[] a, double[] b, double[] p, int r1, int c1, int c2) {
+	    // The JNI code multiplies rows by rows, so it takes b transposed.
+	    double[][] m1 = new DoubleMatrix(a, 0, r1, c1, c1, 1).toArray();
+	    double[][] m2t = new DoubleMatrix(b, 0, c2, c1, 1, c2).toArray();
+	    double[][] q = JNIMath.multiply(m1, r1, c1, m2t, c2, c1);
+
+	    for (int i = 0; i < r1; i += 1) {
+		System.arraycopy(q[i], 0, p, i * c2, c2);
+	    }
+	}
+
+	double lgamma(double x) {
+	    return JNIMath.lgamma(x);
+	}
+
+    }
+
+}
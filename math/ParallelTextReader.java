@@ -0,0 +1,435 @@
+package math;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a whitespace-delimited text file of numbers into a matrix,
+ * in parallel, for Matrices.read.
+ *
+ * The file is memory-mapped and split into chunks of about
+ * CHUNK_SIZE bytes, each ending at a line break. It is read twice,
+ * both times a chunk per task in the BlockedMultiply pool: the first
+ * pass counts the lines and fields of each chunk, which gives the
+ * dimensions of the matrix and the first row of each chunk, and the
+ * second parses each chunk straight into the rows of the matrix with
+ * DoubleParser, which creates no objects. The first pass only
+ * compares bytes, so it costs little compared to parsing.
+ *
+ * A stream which can't be mapped (e.g., a file compressed with gzip)
+ * is read sequentially instead, in a single pass: the fields are
+ * parsed with DoubleParser into a growable array, and the matrix is
+ * formed from it at the end.
+ *
+ * Fields are separated by runs of spaces, tabs, carriage returns and
+ * form feeds, as by StringTokenizer; rows with fewer fields than the
+ * longest are padded with NaN.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+class ParallelTextReader {
+
+    /**
+     * The approximate number of bytes in a chunk.
+     */
+    static final int CHUNK_SIZE = 1 << 24;
+
+    /**
+     * The number of bytes read at a time while looking for the end of
+     * a line.
+     */
+    private static final int SCAN_SIZE = 1 << 12;
+
+    /**
+     * The size of the buffer into which a stream is read.
+     */
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The largest array which can be allocated.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * A range of whole lines of the file.
+     */
+    private static class Chunk {
+
+	final long start;
+	final long end;
+	MappedByteBuffer buffer;
+
+	/**
+	 * The number of lines, the largest number of fields on a line,
+	 * and the index of the first line in the matrix.
+	 */
+	int rows;
+	int columns;
+	int firstRow;
+
+	Chunk(long start, long end) {
+	    this.start = start;
+	    this.end = end;
+	}
+
+    }
+
+    private ParallelTextReader() {
+    }
+
+    static DoubleMatrix read(File file, boolean header) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+	try {
+	    FileChannel channel = raf.getChannel();
+	    long size = channel.size();
+	    long start = header ? nextLine(channel, 1, size) : 0;
+	    Chunk[] chunks = split(channel, start, size);
+
+	    for (Chunk c : chunks) {
+		if (c.end - c.start > Integer.MAX_VALUE) {
+		    throw new IOException("Line too long at byte " + c.start + ".");
+		}
+
+		c.buffer = channel.map(FileChannel.MapMode.READ_ONLY, c.start, c.end - c.start);
+	    }
+
+	    run(chunks, null);
+
+	    long rows = 0;
+	    int columns = 0;
+
+	    for (Chunk c : chunks) {
+		c.firstRow = (int) rows;
+		rows += c.rows;
+		columns = Math.max(columns, c.columns);
+	    }
+
+	    if (rows * columns > Integer.MAX_VALUE) {
+		throw new IOException("Matrix too large for the heap: " + rows + "x" + columns + "; use Matrices.blockReader.");
+	    }
+
+	    DoubleMatrix d = new DoubleMatrix((int) rows, columns);
+
+	    run(chunks, d);
+
+	    return d;
+	} finally {
+	    raf.close();
+	}
+    }
+
+    /**
+     * Reads a matrix from a stream, with the same rules as read.
+     */
+    static DoubleMatrix read(InputStream in, boolean header) throws IOException {
+	byte[] buf = new byte[STREAM_BUFFER_SIZE];
+	ByteBuffer b = ByteBuffer.wrap(buf);
+	double[] values = new double[STREAM_BUFFER_SIZE];
+	int[] widths = new int[1 << 10];
+	int count = 0;
+	int rows = 0;
+	int columns = 0;
+	int fields = 0;
+	boolean inLine = false;
+	boolean skipping = header;
+	int p = 0;
+	int n = 0;
+
+	while (true) {
+	    if (p == n) {
+		n = in.read(buf, 0, buf.length);
+		p = 0;
+
+		if (n < 0) {
+		    break;
+		}
+
+		continue;
+	    }
+
+	    byte x = buf[p];
+
+	    if (skipping) {
+		skipping = (x != '\n');
+		p += 1;
+	    } else if (x == '\n') {
+		if (rows == widths.length) {
+		    widths = Arrays.copyOf(widths, 2 * rows);
+		}
+
+		widths[rows++] = fields;
+		columns = Math.max(columns, fields);
+		fields = 0;
+		inLine = false;
+		p += 1;
+	    } else if (isDelimiter(x)) {
+		inLine = true;
+		p += 1;
+	    } else {
+		int q = p + 1;
+
+		while (true) {
+		    while ((q < n) && ((x = buf[q]) != '\n') && !isDelimiter(x)) {
+			q += 1;
+		    }
+
+		    if (q < n) {
+			break;
+		    }
+
+		    // The field runs to the end of the buffer, so move it
+		    // to the start (growing the buffer if it fills it), and
+		    // read more after it.
+		    int length = n - p;
+
+		    if (length == buf.length) {
+			buf = Arrays.copyOf(buf, 2 * length);
+			b = ByteBuffer.wrap(buf);
+		    } else {
+			System.arraycopy(buf, p, buf, 0, length);
+		    }
+
+		    int r = in.read(buf, length, buf.length - length);
+
+		    p = 0;
+		    q = length;
+		    n = length;
+
+		    if (r < 0) {
+			break;
+		    }
+
+		    n += r;
+		}
+
+		if (count == values.length) {
+		    if (count == MAX_ARRAY_SIZE) {
+			throw new IOException("Matrix too large for the heap; use Matrices.blockReader.");
+		    }
+
+		    values = Arrays.copyOf(values, (int) Math.min(2L * count, MAX_ARRAY_SIZE));
+		}
+
+		values[count++] = DoubleParser.parse(b, p, q);
+		fields += 1;
+		inLine = true;
+		p = q;
+	    }
+	}
+
+	// The last line needn't end with a newline.
+	if (inLine) {
+	    if (rows == widths.length) {
+		widths = Arrays.copyOf(widths, rows + 1);
+	    }
+
+	    widths[rows++] = fields;
+	    columns = Math.max(columns, fields);
+	}
+
+	if ((long) rows * columns > Integer.MAX_VALUE) {
+	    throw new IOException("Matrix too large for the heap: " + rows + "x" + columns + "; use Matrices.blockReader.");
+	}
+
+	double[] data;
+
+	if (count == rows * columns) {
+	    // Every row is full.
+	    data = (count == values.length) ? values : Arrays.copyOf(values, count);
+	} else {
+	    data = new double[rows * columns];
+
+	    for (int i = 0, k = 0; i < rows; k += widths[i], i += 1) {
+		System.arraycopy(values, k, data, i * columns, widths[i]);
+		Arrays.fill(data, i * columns + widths[i], (i + 1) * columns, Double.NaN);
+	    }
+	}
+
+	return new DoubleMatrix(data, 0, rows, columns, columns, 1);
+    }
+
+    /**
+     * Splits the bytes from start to size into chunks of whole lines.
+     */
+    private static Chunk[] split(FileChannel channel, long start, long size) throws IOException {
+	List<Chunk> chunks = new ArrayList<Chunk>();
+
+	while (start < size) {
+	    long end = nextLine(channel, Math.min(start + CHUNK_SIZE, size), size);
+
+	    chunks.add(new Chunk(start, end));
+	    start = end;
+	}
+
+	return chunks.toArray(new Chunk[chunks.size()]);
+    }
+
+    /**
+     * Returns the smallest position p >= from which starts a line:
+     * either the end of the file, or just after a newline.
+     */
+    private static long nextLine(FileChannel channel, long from, long size) throws IOException {
+	ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+	long p = from - 1;
+
+	while (p < size) {
+	    scan.clear();
+
+	    int n = channel.read(scan, p);
+
+	    for (int i = 0; i < n; i += 1) {
+		if (scan.get(i) == '\n') {
+		    return p + i + 1;
+		}
+	    }
+
+	    if (n < 0) {
+		break;
+	    }
+
+	    p += n;
+	}
+
+	return size;
+    }
+
+    /**
+     * Counts the lines and fields of the chunks if d is null, and
+     * otherwise parses them into d.
+     */
+    private static void run(Chunk[] chunks, DoubleMatrix d) {
+	if (chunks.length == 1) {
+	    process(chunks[0], d);
+	} else if (chunks.length > 1) {
+	    BlockedMultiply.pool().invoke(new Chunks(chunks, d, 0, chunks.length));
+	}
+    }
+
+    private static void process(Chunk c, DoubleMatrix d) {
+	if (d == null) {
+	    count(c);
+	} else {
+	    parse(c, d);
+	}
+    }
+
+    private static boolean isDelimiter(byte b) {
+	return (b == ' ') || (b == '\t') || (b == '\r') || (b == '\f');
+    }
+
+    private static void count(Chunk c) {
+	MappedByteBuffer b = c.buffer;
+	int n = b.limit();
+	int rows = 0;
+	int columns = 0;
+	int fields = 0;
+	boolean inField = false;
+
+	for (int p = 0; p < n; p += 1) {
+	    byte x = b.get(p);
+
+	    if (x == '\n') {
+		rows += 1;
+		columns = Math.max(columns, fields);
+		fields = 0;
+		inField = false;
+	    } else if (isDelimiter(x)) {
+		inField = false;
+	    } else if (!inField) {
+		fields += 1;
+		inField = true;
+	    }
+	}
+
+	// The last line of the file needn't end with a newline.
+	if ((n > 0) && (b.get(n - 1) != '\n')) {
+	    rows += 1;
+	    columns = Math.max(columns, fields);
+	}
+
+	c.rows = rows;
+	c.columns = columns;
+    }
+
+    private static void parse(Chunk c, DoubleMatrix d) {
+	MappedByteBuffer b = c.buffer;
+	double[] data = d.data;
+	int columns = d.columns;
+	int n = b.limit();
+	int k = c.firstRow * columns;
+	int end = k + columns;
+
+	for (int p = 0; p < n; ) {
+	    byte x = b.get(p);
+
+	    if (x == '\n') {
+		while (k < end) {
+		    data[k++] = Double.NaN;
+		}
+
+		end += columns;
+		p += 1;
+	    } else if (isDelimiter(x)) {
+		p += 1;
+	    } else {
+		int q = p + 1;
+
+		while ((q < n) && ((x = b.get(q)) != '\n') && !isDelimiter(x)) {
+		    q += 1;
+		}
+
+		data[k++] = DoubleParser.parse(b, p, q);
+		p = q;
+	    }
+	}
+
+	if ((n > 0) && (b.get(n - 1) != '\n')) {
+	    while (k < end) {
+		data[k++] = Double.NaN;
+	    }
+	}
+    }
+
+    /**
+     * Processes a range of chunks, splitting it in half until a single
+     * chunk remains.
+     */
+    private static class Chunks extends RecursiveAction {
+
+	private final Chunk[] chunks;
+	private final DoubleMatrix d;
+	private final int lo;
+	private final int hi;
+
+	Chunks(Chunk[] chunks, DoubleMatrix d, int lo, int hi) {
+	    this.chunks = chunks;
+	    this.d = d;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected void compute() {
+	    if (hi - lo == 1) {
+		process(chunks[lo], d);
+	    } else {
+		int mid = (lo + hi) >>> 1;
+
+		invokeAll(new Chunks(chunks, d, lo, mid),
+			  new Chunks(chunks, d, mid, hi));
+	    }
+	}
+
+    }
+
+}
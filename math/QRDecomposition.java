@@ -0,0 +1,292 @@
+package math;
+
+/**
+ * The QR decomposition of an m x n matrix A with m >= n, computed by
+ * Householder reflections: A = Q * R, where Q is an m x n matrix with
+ * orthonormal columns and R is an n x n upper triangular matrix.
+ *
+ * The main use of the decomposition is to solve least-squares
+ * problems, minimizing |A * x - b|, without forming A' * A (which
+ * squares the condition number of the problem).
+ *
+ * The factorization works on the columns of A, so A is copied into
+ * transposed form first, making each column a contiguous row of the
+ * working matrix. The Householder vectors are kept in place of the
+ * eliminated columns, as in the LINPACK and JAMA implementations, and
+ * Q is only formed on request.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class QRDecomposition {
+
+    /**
+     * The transpose of the working matrix: row k holds column k of
+     * R above the diagonal (in elements 0 to k - 1) and the kth
+     * Householder vector (in elements k to m - 1).
+     */
+    private final DoubleMatrix qrt;
+
+    /**
+     * The diagonal of R.
+     */
+    private final double[] rdiag;
+
+    private final int m;
+
+    private final int n;
+
+    /**
+     * Factors the given matrix, which must have at least as many rows
+     * as columns. The matrix itself is not modified.
+     */
+    public QRDecomposition(DoubleMatrix a) {
+	if (a.rows < a.columns) {
+	    throw new IllegalArgumentException("Matrix has fewer rows than columns: " + a.rows + " x " + a.columns + ".");
+	}
+
+	this.m = a.rows;
+	this.n = a.columns;
+	this.qrt = a.transpose().clone();
+	this.rdiag = new double[n];
+
+	factor();
+    }
+
+    private void factor() {
+	double[] q = qrt.data;
+
+	for (int k = 0; k < n; k += 1) {
+	    int rk = k * m;
+	    double nrm = 0;
+
+	    for (int i = k; i < m; i += 1) {
+		nrm += q[rk + i] * q[rk + i];
+	    }
+
+	    nrm = Math.sqrt(nrm);
+
+	    if (nrm != 0) {
+		if (q[rk + k] < 0) {
+		    nrm = -nrm;
+		}
+
+		for (int i = k; i < m; i += 1) {
+		    q[rk + i] /= nrm;
+		}
+
+		q[rk + k] += 1;
+
+		// Apply the reflection to the remaining columns.
+		for (int j = k + 1; j < n; j += 1) {
+		    int rj = j * m;
+		    double s = 0;
+
+		    for (int i = k; i < m; i += 1) {
+			s += q[rk + i] * q[rj + i];
+		    }
+
+		    s = -s / q[rk + k];
+
+		    for (int i = k; i < m; i += 1) {
+			q[rj + i] += s * q[rk + i];
+		    }
+		}
+	    }
+
+	    rdiag[k] = -nrm;
+	}
+    }
+
+    public int rows() {
+	return m;
+    }
+
+    public int columns() {
+	return n;
+    }
+
+    /**
+     * Returns true if the factored matrix has full column rank, i.e.,
+     * if no diagonal element of R is zero.
+     */
+    public boolean isFullRank() {
+	for (int k = 0; k < n; k += 1) {
+	    if (rdiag[k] == 0) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Returns the n x n upper triangular factor R.
+     */
+    public DoubleMatrix getR() {
+	DoubleMatrix r = new DoubleMatrix(n, n);
+
+	for (int i = 0; i < n; i += 1) {
+	    r.data[i * n + i] = rdiag[i];
+
+	    for (int j = i + 1; j < n; j += 1) {
+		r.data[i * n + j] = qrt.data[j * m + i];
+	    }
+	}
+
+	return r;
+    }
+
+    /**
+     * Returns the m x n factor Q, whose columns are orthonormal.
+     */
+    public DoubleMatrix getQ() {
+	// Build Q' row by row, by applying the reflections in reverse
+	// order to the first n rows of the identity.
+	DoubleMatrix qt = new DoubleMatrix(n, m);
+	double[] q = qrt.data;
+
+	for (int k = n - 1; k >= 0; k -= 1) {
+	    int rk = k * m;
+
+	    qt.data[k * m + k] = 1;
+
+	    for (int j = k; j < n; j += 1) {
+		if (q[rk + k] != 0) {
+		    int rj = j * m;
+		    double s = 0;
+
+		    for (int i = k; i < m; i += 1) {
+			s += q[rk + i] * qt.data[rj + i];
+		    }
+
+		    s = -s / q[rk + k];
+
+		    for (int i = k; i < m; i += 1) {
+			qt.data[rj + i] += s * q[rk + i];
+		    }
+		}
+	    }
+	}
+
+	return qt.transpose();
+    }
+
+    /**
+     * Replaces the m elements of y starting at start with the first
+     * m elements of Q' * y (where Q here is the full m x m orthogonal
+     * matrix).
+     */
+    private void applyQTranspose(double[] y, int start) {
+	double[] q = qrt.data;
+
+	for (int k = 0; k < n; k += 1) {
+	    int rk = k * m;
+
+	    if (q[rk + k] != 0) {
+		double s = 0;
+
+		for (int i = k; i < m; i += 1) {
+		    s += q[rk + i] * y[start + i];
+		}
+
+		s = -s / q[rk + k];
+
+		for (int i = k; i < m; i += 1) {
+		    y[start + i] += s * q[rk + i];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Solves R * x = y in place, where y is stored in the first n of
+     * the m elements starting at start.
+     */
+    private void backSubstitute(double[] y, int start) {
+	double[] q = qrt.data;
+
+	for (int k = n - 1; k >= 0; k -= 1) {
+	    y[start + k] /= rdiag[k];
+
+	    double yk = y[start + k];
+	    int rk = k * m;
+
+	    for (int i = 0; i < k; i += 1) {
+		y[start + i] -= yk * q[rk + i];
+	    }
+	}
+    }
+
+    /**
+     * Returns the vector x of length n which minimizes |A * x - b|,
+     * where A is the factored matrix.
+     */
+    public DoubleVector solve(DoubleVector b) throws SingularMatrixException {
+	if (b.length != m) {
+	    throw new IllegalArgumentException("Rows of matrix don't match length of vector: " + m + ", " + b.length + ".");
+	}
+
+	checkFullRank();
+
+	double[] y = b.clone().data;
+
+	applyQTranspose(y, 0);
+	backSubstitute(y, 0);
+
+	return new DoubleVector(y, 0, n);
+    }
+
+    /**
+     * Returns the n x k matrix X which minimizes the Frobenius norm
+     * of A * X - B, where A is the factored matrix; each column of X
+     * is the least-squares solution for the corresponding column of
+     * B.
+     */
+    public DoubleMatrix solve(DoubleMatrix b) throws SingularMatrixException {
+	if (b.rows != m) {
+	    throw new IllegalArgumentException("Rows of matrices don't match: " + m + ", " + b.rows + ".");
+	}
+
+	checkFullRank();
+
+	// Work on the columns of B as contiguous rows of B'.
+	DoubleMatrix yt = b.transpose().clone();
+
+	for (int j = 0; j < yt.rows; j += 1) {
+	    applyQTranspose(yt.data, j * m);
+	    backSubstitute(yt.data, j * m);
+	}
+
+	return yt.selectColumns(0, n).transpose().clone();
+    }
+
+    /**
+     * Returns the residual sum of squares of the least-squares fit of
+     * b by the columns of A, i.e., the squared norm of the last m - n
+     * elements of Q' * b.
+     */
+    public double residualSumOfSquares(DoubleVector b) {
+	if (b.length != m) {
+	    throw new IllegalArgumentException("Rows of matrix don't match length of vector: " + m + ", " + b.length + ".");
+	}
+
+	double[] y = b.clone().data;
+	double s = 0;
+
+	applyQTranspose(y, 0);
+
+	for (int i = n; i < m; i += 1) {
+	    s += y[i] * y[i];
+	}
+
+	return s;
+    }
+
+    private void checkFullRank() throws SingularMatrixException {
+	if (!isFullRank()) {
+	    throw new SingularMatrixException("Matrix is rank deficient.");
+	}
+    }
+
+}
@@ -0,0 +1,432 @@
+package math;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Estimates the quantiles of a stream of numbers in bounded memory,
+ * with the KLL sketch (Z. Karnin, K. Lang and E. Liberty, "Optimal
+ * quantile approximation in streams", FOCS 2016), following the lazy
+ * variant of Liberty's reference implementation.
+ *
+ * The numbers are kept in a stack of levels, each holding items of
+ * weight 2^h. New numbers go into level 0; when the sketch is full,
+ * the lowest level holding at least its capacity is sorted and
+ * compacted: every other item (starting at random with the first or
+ * the second) moves up a level, with twice the weight, and the rest
+ * are discarded. The top level has capacity k, and each level below
+ * it 2/3 of the capacity of the one above (but at least 8), so the
+ * sketch holds at most about 3k numbers plus 8 per level, however
+ * long the stream.
+ *
+ * The rank of any number estimated from a sketch of n numbers is
+ * within epsilon * n of its true rank with high probability, where
+ * epsilon is O(1 / k) (see normalizedRankError). It doesn't depend
+ * on the order of the stream or on how it was split between merged
+ * sketches, so sketches of shards (e.g., filled by different threads,
+ * or serialized and read back from files) can be combined with merge
+ * into a sketch of the whole stream with the same accuracy.
+ *
+ * The minimum and maximum are kept exactly. NaN is ignored.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class QuantileSketch implements Serializable {
+
+    /**
+     * The default capacity of the top level, which gives a rank error
+     * of about 1.3%.
+     */
+    public static final int DEFAULT_K = 200;
+
+    /**
+     * The ratio of the capacity of each level to the one above.
+     */
+    private static final double C = 2.0 / 3.0;
+
+    /**
+     * The smallest capacity of a level, as in DataSketches.
+     */
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+
+    private final Random random;
+
+    /**
+     * The items of level h are levels[h][0] to levels[h][sizes[h] - 1],
+     * each with weight 2^h.
+     */
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+
+    /**
+     * The capacities of the levels, which change as levels are added.
+     */
+    private int[] capacities = new int[0];
+
+    /**
+     * The number of items held, and the number at which the sketch
+     * is compacted: the sum of the capacities of the levels.
+     */
+    private int size = 0;
+    private int maxSize = 0;
+
+    private long n = 0;
+
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * The items sorted, with their cumulative weights, for queries;
+     * null if the sketch has changed since they were computed.
+     */
+    private transient double[] sortedItems;
+    private transient long[] cumulativeWeights;
+
+    public QuantileSketch() {
+	this(DEFAULT_K);
+    }
+
+    /**
+     * Creates a sketch whose top level has capacity k (at least 8);
+     * larger k is more accurate but uses more memory.
+     */
+    public QuantileSketch(int k) {
+	this(k, new Random());
+    }
+
+    /**
+     * Creates a sketch with the given source of random compactions,
+     * e.g., for reproducible results.
+     */
+    public QuantileSketch(int k, Random random) {
+	if (k < 8) {
+	    throw new IllegalArgumentException("k must be at least 8: " + k + ".");
+	}
+
+	this.k = k;
+	this.random = random;
+	grow();
+    }
+
+    public int k() {
+	return k;
+    }
+
+    /**
+     * Returns the approximate rank error of quantiles and ranks, as a
+     * fraction of the number of items, with 99% confidence; the
+     * empirical fit of the DataSketches library, 2.296 / k^0.9723.
+     */
+    public double normalizedRankError() {
+	return normalizedRankError(k);
+    }
+
+    public static double normalizedRankError(int k) {
+	return 2.296 / Math.pow(k, 0.9723);
+    }
+
+    /**
+     * Adds a level at the top, and recomputes the capacities.
+     */
+    private void grow() {
+	int h = levels.length;
+
+	levels = Arrays.copyOf(levels, h + 1);
+	sizes = Arrays.copyOf(sizes, h + 1);
+	capacities = new int[h + 1];
+	levels[h] = new double[0];
+	maxSize = 0;
+
+	for (int i = 0; i <= h; i += 1) {
+	    capacities[i] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(C, h - i)));
+	    maxSize += capacities[i];
+	}
+    }
+
+    private void append(int h, double x) {
+	if (sizes[h] == levels[h].length) {
+	    levels[h] = Arrays.copyOf(levels[h], Math.max(8, 2 * sizes[h]));
+	}
+
+	levels[h][sizes[h]++] = x;
+    }
+
+    /**
+     * Adds a single number.
+     */
+    public QuantileSketch add(double x) {
+	if (Double.isNaN(x)) {
+	    return this;
+	}
+
+	if (n == 0) {
+	    min = x;
+	    max = x;
+	} else {
+	    min = Math.min(min, x);
+	    max = Math.max(max, x);
+	}
+
+	n += 1;
+	append(0, x);
+	size += 1;
+	sortedItems = null;
+
+	if (size >= maxSize) {
+	    compress();
+	}
+
+	return this;
+    }
+
+    public QuantileSketch add(double[] a) {
+	return add(a, 0, a.length);
+    }
+
+    /**
+     * Adds a[offset] to a[offset + length - 1].
+     */
+    public QuantileSketch add(double[] a, int offset, int length) {
+	for (int i = offset; i < offset + length; i += 1) {
+	    add(a[i]);
+	}
+
+	return this;
+    }
+
+    /**
+     * Adds the elements of the given vector.
+     */
+    public QuantileSketch add(DoubleVector v) {
+	return add(v.data, v.offset, v.length);
+    }
+
+    /**
+     * Adds the numbers summarized by another sketch, which is not
+     * modified. The other sketch's error carries over, so it should
+     * have (at least) the same k.
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+	if (other.n == 0) {
+	    return this;
+	}
+
+	while (levels.length < other.levels.length) {
+	    grow();
+	}
+
+	for (int h = 0; h < other.levels.length; h += 1) {
+	    int m = other.sizes[h];
+
+	    for (int i = 0; i < m; i += 1) {
+		append(h, other.levels[h][i]);
+	    }
+
+	    size += m;
+	}
+
+	min = (n == 0) ? other.min : Math.min(min, other.min);
+	max = (n == 0) ? other.max : Math.max(max, other.max);
+	n += other.n;
+	sortedItems = null;
+
+	while (size >= maxSize) {
+	    compress();
+	}
+
+	return this;
+    }
+
+    /**
+     * Compacts the lowest level holding at least its capacity (of
+     * which there is one while the sketch is full).
+     */
+    private void compress() {
+	for (int h = 0; h < levels.length; h += 1) {
+	    if (sizes[h] >= capacities[h]) {
+		if (h + 1 == levels.length) {
+		    grow();
+		}
+
+		double[] items = levels[h];
+		int m = sizes[h];
+
+		Arrays.sort(items, 0, m);
+
+		// An odd item out stays behind.
+		int keep = m & 1;
+
+		for (int i = keep + random.nextInt(2); i < m; i += 2) {
+		    append(h + 1, items[i]);
+		}
+
+		sizes[h] = keep;
+		size -= (m - keep) / 2;
+
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of numbers added so far, including those
+     * added to merged sketches.
+     */
+    public long count() {
+	return n;
+    }
+
+    /**
+     * Returns the number of items the sketch holds.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the smallest number added, or NaN if none have been.
+     */
+    public double min() {
+	return min;
+    }
+
+    public double max() {
+	return max;
+    }
+
+    /**
+     * Sorts the items, with their cumulative weights, by merging the
+     * sorted levels in turn.
+     */
+    private void sort() {
+	if (sortedItems != null) {
+	    return;
+	}
+
+	double[] items = new double[0];
+	long[] weights = new long[0];
+
+	for (int h = 0; h < levels.length; h += 1) {
+	    int m = sizes[h];
+	    double[] level = Arrays.copyOf(levels[h], m);
+	    double[] mergedItems = new double[items.length + m];
+	    long[] mergedWeights = new long[items.length + m];
+	    long w = 1L << h;
+	    int i = 0;
+	    int j = 0;
+
+	    Arrays.sort(level);
+
+	    for (int t = 0; t < mergedItems.length; t += 1) {
+		if ((j == m) || ((i < items.length) && (items[i] <= level[j]))) {
+		    mergedItems[t] = items[i];
+		    mergedWeights[t] = weights[i++];
+		} else {
+		    mergedItems[t] = level[j++];
+		    mergedWeights[t] = w;
+		}
+	    }
+
+	    items = mergedItems;
+	    weights = mergedWeights;
+	}
+
+	for (int t = 1; t < weights.length; t += 1) {
+	    weights[t] += weights[t - 1];
+	}
+
+	sortedItems = items;
+	cumulativeWeights = weights;
+    }
+
+    /**
+     * Returns an estimate of the p-quantile: the smallest number x
+     * added such that the fraction of the numbers <= x is at least p.
+     * The 0- and 1-quantiles are the exact minimum and maximum. NaN if
+     * no numbers have been added.
+     */
+    public double quantile(double p) {
+	if ((p < 0) || (p > 1)) {
+	    throw new IllegalArgumentException("Not a probability: " + p + ".");
+	}
+
+	if (n == 0) {
+	    return Double.NaN;
+	} else if (p == 0) {
+	    return min;
+	} else if (p == 1) {
+	    return max;
+	}
+
+	sort();
+
+	long total = cumulativeWeights[cumulativeWeights.length - 1];
+	double target = p * total;
+	int lo = 0;
+	int hi = cumulativeWeights.length - 1;
+
+	// The first item whose cumulative weight reaches the target.
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+
+	    if (cumulativeWeights[mid] < target) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+
+	return sortedItems[lo];
+    }
+
+    /**
+     * Returns estimates of the p-quantiles for each of the given p.
+     */
+    public double[] quantiles(double... ps) {
+	double[] q = new double[ps.length];
+
+	for (int i = 0; i < ps.length; i += 1) {
+	    q[i] = quantile(ps[i]);
+	}
+
+	return q;
+    }
+
+    public double median() {
+	return quantile(0.5);
+    }
+
+    /**
+     * Returns an estimate of the fraction of the numbers added which
+     * are <= x.
+     */
+    public double rank(double x) {
+	if (n == 0) {
+	    return Double.NaN;
+	}
+
+	sort();
+
+	int i = Arrays.binarySearch(sortedItems, x);
+
+	if (i >= 0) {
+	    // Move past any equal items.
+	    while ((i + 1 < sortedItems.length) && (sortedItems[i + 1] == x)) {
+		i += 1;
+	    }
+	} else {
+	    i = -i - 2;
+	}
+
+	return (i < 0) ? 0.0 : (double) cumulativeWeights[i] / cumulativeWeights[cumulativeWeights.length - 1];
+    }
+
+    public String toString() {
+	return "n = " + n + ", k = " + k + ", " + size + " items in " + levels.length + " levels";
+    }
+
+}
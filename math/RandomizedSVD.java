@@ -0,0 +1,262 @@
+package math;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A truncated singular value decomposition A ~ U * S * V' of an m x n
+ * matrix, with k singular values, computed by the randomized range
+ * finder of N. Halko, P. G. Martinsson and J. A. Tropp ("Finding
+ * structure with randomness", SIAM Review 53, 2011).
+ *
+ * The range of A is sampled by multiplying A by a random n x l matrix
+ * (l = k plus some oversampling), optionally refined by power
+ * iterations with A' * A, and the SVD of the projection of A onto the
+ * sampled range (a small l x n matrix) gives the result. The matrix is
+ * only ever used a block of rows at a time, in one pass per power
+ * iteration plus a final pass, so it can be read from a file which
+ * doesn't fit in memory.
+ *
+ * The method is designed for tall, skinny matrices: the m x l sample Y
+ * = A * Omega is never stored. Instead, the final pass accumulates the
+ * l x l Gram matrix Y' * Y and the l x n product Y' * A; if Y' * Y = W
+ * * L * W', then Q = Y * W * L^(-1/2) is an orthonormal basis of the
+ * sample, and Q' * A = L^(-1/2) * W' * (Y' * A). Because the Gram
+ * matrix squares the condition number of Y, singular values below
+ * about 1e-7 times the largest are not resolved; they are well below
+ * those of any rank-k approximation of interest.
+ *
+ * V and S are stored; the rows of U for any rows of A are given by
+ * getU.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class RandomizedSVD {
+
+    public static final int DEFAULT_OVERSAMPLING = 10;
+
+    public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+    /**
+     * The number of rows of an in-memory matrix processed at a time.
+     */
+    static final int BLOCK_ROWS = 4096;
+
+    /**
+     * Directions of the sample whose Gram eigenvalue is below this
+     * times the largest are treated as null.
+     */
+    private static final double RANK_TOLERANCE = 1e-14;
+
+    /**
+     * Opens a new pass over the rows of the matrix.
+     */
+    private static abstract class Source {
+	abstract Matrices.BlockReader open() throws IOException;
+    }
+
+    private final int k;
+
+    private int n;
+
+    /**
+     * The singular values, in decreasing order.
+     */
+    private DoubleVector sigma;
+
+    /**
+     * The right singular vectors, as the rows of a k x n matrix.
+     */
+    private DoubleMatrix vt;
+
+    /**
+     * Computes the k largest singular values of a, with the default
+     * oversampling and number of power iterations.
+     */
+    public RandomizedSVD(DoubleMatrix a, int k) {
+	this(a, k, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS);
+    }
+
+    /**
+     * Computes the k largest singular values of a, sampling k +
+     * oversampling directions, with the given number of power
+     * iterations. More power iterations give more accurate results
+     * for matrices whose singular values decay slowly.
+     */
+    public RandomizedSVD(final DoubleMatrix a, int k, int oversampling, int powerIterations) {
+	this.k = k;
+
+	try {
+	    fit(new Source() {
+		    Matrices.BlockReader open() {
+			return Matrices.blockReader(a, BLOCK_ROWS);
+		    }
+		}, oversampling, powerIterations);
+	} catch (IOException e) {
+	    // In-memory readers don't throw.
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Computes the k largest singular values of the memory-mapped
+     * matrix a, reading it sequentially a block of rows at a time.
+     */
+    public RandomizedSVD(final MappedDoubleMatrix a, int k, int oversampling, int powerIterations) {
+	this.k = k;
+
+	try {
+	    fit(new Source() {
+		    Matrices.BlockReader open() {
+			return Matrices.blockReader(a, BLOCK_ROWS);
+		    }
+		}, oversampling, powerIterations);
+	} catch (IOException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Computes the k largest singular values of the matrix in the
+     * given tab-delimited file (see Matrices.read), which is read
+     * powerIterations + 1 times, blockRows rows at a time.
+     */
+    public RandomizedSVD(final File file, final boolean header, final int blockRows, int k, int oversampling, int powerIterations) throws IOException {
+	this.k = k;
+
+	fit(new Source() {
+		Matrices.BlockReader open() throws IOException {
+		    return Matrices.blockReader(file, header, blockRows);
+		}
+	    }, oversampling, powerIterations);
+    }
+
+    private void fit(Source source, int oversampling, int powerIterations) throws IOException {
+	Matrices.BlockReader reader = source.open();
+
+	this.n = reader.columns();
+
+	if ((k < 1) || (k > n)) {
+	    reader.close();
+	    throw new IllegalArgumentException("Invalid number of singular values: " + k + ", for " + n + " columns.");
+	}
+
+	int l = Math.min(k + Math.max(oversampling, 0), n);
+	DoubleMatrix omega = new DoubleMatrix(n, l);
+	Random random = new Random(1);
+
+	for (int i = 0; i < omega.data.length; i += 1) {
+	    omega.data[i] = random.nextGaussian();
+	}
+
+	// Power iterations: omega = orth(A' * A * omega).
+	for (int q = 0; q < powerIterations; q += 1) {
+	    if (reader == null) {
+		reader = source.open();
+	    }
+
+	    DoubleMatrix z = new DoubleMatrix(n, l);
+	    DoubleMatrix b;
+
+	    while ((b = reader.next()) != null) {
+		z.addInPlace(b.transposeMultiply(b.multiply(omega)));
+	    }
+
+	    reader.close();
+	    reader = null;
+	    omega = z.qr().getQ();
+	}
+
+	if (reader == null) {
+	    reader = source.open();
+	}
+
+	// The final pass: the Gram matrix of Y = A * omega, and Y' * A.
+	DoubleMatrix gram = new DoubleMatrix(l, l);
+	DoubleMatrix ya = new DoubleMatrix(l, n);
+	DoubleMatrix b;
+
+	while ((b = reader.next()) != null) {
+	    DoubleMatrix y = b.multiply(omega);
+
+	    gram.addInPlace(y.transposeMultiply(y));
+	    ya.addInPlace(y.transposeMultiply(b));
+	}
+
+	reader.close();
+
+	SymmetricEigenDecomposition g = gram.eigen();
+	int r = 0;
+
+	while ((r < l) && (g.values[r] > RANK_TOLERANCE * g.values[0])) {
+	    r += 1;
+	}
+
+	// B = Q' * A, r x n.
+	DoubleMatrix qa = g.vectors.selectRows(0, r).multiply(ya);
+
+	for (int i = 0; i < r; i += 1) {
+	    qa.getRow(i).divideInPlace(Math.sqrt(g.values[i]));
+	}
+
+	// If B * B' = X * S^2 * X', then B = X * S * V', so V' = S^-1 *
+	// X' * B.
+	SymmetricEigenDecomposition bb = qa.multiplyTranspose(qa).eigen();
+	int rank = Math.min(k, r);
+
+	while ((rank > 0) && (bb.values[rank - 1] <= 0)) {
+	    rank -= 1;
+	}
+
+	this.sigma = new DoubleVector(rank);
+	this.vt = bb.vectors.selectRows(0, rank).multiply(qa);
+
+	for (int i = 0; i < rank; i += 1) {
+	    sigma.set(i, Math.sqrt(bb.values[i]));
+	    vt.getRow(i).divideInPlace(sigma.get(i));
+	}
+    }
+
+    /**
+     * Returns the number of singular values computed: k, unless the
+     * matrix has lower rank.
+     */
+    public int rank() {
+	return sigma.length;
+    }
+
+    /**
+     * Returns the singular values, in decreasing order.
+     */
+    public DoubleVector getSingularValues() {
+	return sigma.clone();
+    }
+
+    /**
+     * Returns the n x k matrix V of right singular vectors.
+     */
+    public DoubleMatrix getV() {
+	return vt.transpose().clone();
+    }
+
+    /**
+     * Returns the rows of U corresponding to the given rows of A: rows
+     * * V * S^-1. For the whole matrix A, this is U itself.
+     */
+    public DoubleMatrix getU(DoubleMatrix rows) {
+	if (rows.columns != n) {
+	    throw new IllegalArgumentException("Columns of rows don't match: " + rows.columns + ", " + n + ".");
+	}
+
+	DoubleMatrix u = rows.multiplyTranspose(vt);
+
+	for (int i = 0; i < u.rows; i += 1) {
+	    u.getRow(i).divideInPlace(sigma);
+	}
+
+	return u;
+    }
+
+}
@@ -0,0 +1,184 @@
+package math;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorKernels implemented with the incubating Vector API, which
+ * the JIT compiles to SIMD instructions (e.g., four doubles at a time
+ * with AVX2, eight with AVX-512).
+ *
+ * This class needs JDK 16 or later, and is compiled separately from
+ * the rest of the package (see the Makefile). It is loaded
+ * reflectively by VectorKernels, so the package still works without
+ * it. Note that within this file, DoubleVector is
+ * jdk.incubator.vector.DoubleVector, not math.DoubleVector.
+ *
+ * Each reduction keeps two vector accumulators, to hide the latency
+ * of the vector additions, and adds up the lanes only at the end.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+final class SimdKernels extends VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private static final int LANES = SPECIES.length();
+
+    boolean isSimd() {
+	return true;
+    }
+
+    double sum(double[] a, int ao, int n) {
+	DoubleVector s0 = DoubleVector.zero(SPECIES);
+	DoubleVector s1 = DoubleVector.zero(SPECIES);
+	int i = 0;
+
+	for (; i + 2 * LANES <= n; i += 2 * LANES) {
+	    s0 = s0.add(DoubleVector.fromArray(SPECIES, a, ao + i));
+	    s1 = s1.add(DoubleVector.fromArray(SPECIES, a, ao + i + LANES));
+	}
+
+	double s = s0.add(s1).reduceLanes(VectorOperators.ADD);
+
+	for (; i < n; i += 1) {
+	    s += a[ao + i];
+	}
+
+	return s;
+    }
+
+    double dot(double[] a, int ao, double[] b, int bo, int n) {
+	DoubleVector s0 = DoubleVector.zero(SPECIES);
+	DoubleVector s1 = DoubleVector.zero(SPECIES);
+	int i = 0;
+
+	for (; i + 2 * LANES <= n; i += 2 * LANES) {
+	    DoubleVector a0 = DoubleVector.fromArray(SPECIES, a, ao + i);
+	    DoubleVector a1 = DoubleVector.fromArray(SPECIES, a, ao + i + LANES);
+	    DoubleVector b0 = DoubleVector.fromArray(SPECIES, b, bo + i);
+	    DoubleVector b1 = DoubleVector.fromArray(SPECIES, b, bo + i + LANES);
+
+	    s0 = s0.add(a0.mul(b0));
+	    s1 = s1.add(a1.mul(b1));
+	}
+
+	double s = s0.add(s1).reduceLanes(VectorOperators.ADD);
+
+	for (; i < n; i += 1) {
+	    s += a[ao + i] * b[bo + i];
+	}
+
+	return s;
+    }
+
+    double sumOfSquares(double[] a, int ao, int n) {
+	DoubleVector s0 = DoubleVector.zero(SPECIES);
+	DoubleVector s1 = DoubleVector.zero(SPECIES);
+	int i = 0;
+
+	for (; i + 2 * LANES <= n; i += 2 * LANES) {
+	    DoubleVector a0 = DoubleVector.fromArray(SPECIES, a, ao + i);
+	    DoubleVector a1 = DoubleVector.fromArray(SPECIES, a, ao + i + LANES);
+
+	    s0 = s0.add(a0.mul(a0));
+	    s1 = s1.add(a1.mul(a1));
+	}
+
+	double s = s0.add(s1).reduceLanes(VectorOperators.ADD);
+
+	for (; i < n; i += 1) {
+	    s += a[ao + i] * a[ao + i];
+	}
+
+	return s;
+    }
+
+    double squaredDistance(double[] a, int ao, double[] b, int bo, int n) {
+	DoubleVector s0 = DoubleVector.zero(SPECIES);
+	DoubleVector s1 = DoubleVector.zero(SPECIES);
+	int i = 0;
+
+	for (; i + 2 * LANES <= n; i += 2 * LANES) {
+	    DoubleVector d0 = DoubleVector.fromArray(SPECIES, a, ao + i).sub(DoubleVector.fromArray(SPECIES, b, bo + i));
+	    DoubleVector d1 = DoubleVector.fromArray(SPECIES, a, ao + i + LANES).sub(DoubleVector.fromArray(SPECIES, b, bo + i + LANES));
+
+	    s0 = s0.add(d0.mul(d0));
+	    s1 = s1.add(d1.mul(d1));
+	}
+
+	double s = s0.add(s1).reduceLanes(VectorOperators.ADD);
+
+	for (; i < n; i += 1) {
+	    double d = a[ao + i] - b[bo + i];
+	    s += d * d;
+	}
+
+	return s;
+    }
+
+    void add(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	int i = 0;
+
+	for (; i + LANES <= n; i += LANES) {
+	    DoubleVector.fromArray(SPECIES, a, ao + i).add(DoubleVector.fromArray(SPECIES, b, bo + i)).intoArray(c, co + i);
+	}
+
+	for (; i < n; i += 1) {
+	    c[co + i] = a[ao + i] + b[bo + i];
+	}
+    }
+
+    void subtract(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	int i = 0;
+
+	for (; i + LANES <= n; i += LANES) {
+	    DoubleVector.fromArray(SPECIES, a, ao + i).sub(DoubleVector.fromArray(SPECIES, b, bo + i)).intoArray(c, co + i);
+	}
+
+	for (; i < n; i += 1) {
+	    c[co + i] = a[ao + i] - b[bo + i];
+	}
+    }
+
+    void multiply(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	int i = 0;
+
+	for (; i + LANES <= n; i += LANES) {
+	    DoubleVector.fromArray(SPECIES, a, ao + i).mul(DoubleVector.fromArray(SPECIES, b, bo + i)).intoArray(c, co + i);
+	}
+
+	for (; i < n; i += 1) {
+	    c[co + i] = a[ao + i] * b[bo + i];
+	}
+    }
+
+    void divide(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	int i = 0;
+
+	for (; i + LANES <= n; i += LANES) {
+	    DoubleVector.fromArray(SPECIES, a, ao + i).div(DoubleVector.fromArray(SPECIES, b, bo + i)).intoArray(c, co + i);
+	}
+
+	for (; i < n; i += 1) {
+	    c[co + i] = a[ao + i] / b[bo + i];
+	}
+    }
+
+    void axpy(double[] a, int ao, double s, double[] b, int bo, double[] c, int co, int n) {
+	int i = 0;
+
+	for (; i + LANES <= n; i += LANES) {
+	    DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + i);
+
+	    DoubleVector.fromArray(SPECIES, a, ao + i).add(vb.mul(s)).intoArray(c, co + i);
+	}
+
+	for (; i < n; i += 1) {
+	    c[co + i] = a[ao + i] + s * b[bo + i];
+	}
+    }
+
+}
@@ -0,0 +1,623 @@
+package math;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable sparse matrix of doubles, in compressed sparse row
+ * (CSR) or compressed sparse column (CSC) form.
+ *
+ * In CSR form, the non-zero elements of row i are stored in positions
+ * pointers[i] to pointers[i + 1] - 1 of values, in increasing order
+ * of column, and the column of each is stored at the same position of
+ * indices; CSC form is the same with the roles of rows and columns
+ * exchanged. The CSR form of a matrix is therefore also the CSC form
+ * of its transpose, so transpose() copies nothing.
+ *
+ * Products with dense vectors and matrices take time proportional to
+ * the number of non-zero elements (times the number of columns of a
+ * dense matrix factor), whichever form the matrix is in. CSR form
+ * gives the best memory access pattern for multiply, and CSC form for
+ * transposeMultiply.
+ *
+ * Matrices are created by a Builder, from (row, column, value)
+ * triplets, or from a dense matrix.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class SparseDoubleMatrix implements Serializable {
+
+    private final int rows;
+
+    private final int columns;
+
+    /**
+     * True if this matrix is stored by rows (CSR), false if by
+     * columns (CSC).
+     */
+    private final boolean byRows;
+
+    /**
+     * The start of each row (CSR) or column (CSC) in indices and
+     * values, followed by the number of non-zero elements.
+     */
+    private final int[] pointers;
+
+    /**
+     * The column (CSR) or row (CSC) of each non-zero element.
+     */
+    private final int[] indices;
+
+    private final double[] values;
+
+    private SparseDoubleMatrix(int rows, int columns, boolean byRows, int[] pointers, int[] indices, double[] values) {
+	this.rows = rows;
+	this.columns = columns;
+	this.byRows = byRows;
+	this.pointers = pointers;
+	this.indices = indices;
+	this.values = values;
+    }
+
+    /**
+     * Accumulates (row, column, value) triplets, in any order, from
+     * which a sparse matrix is built. Values given for the same
+     * element more than once are summed.
+     */
+    public static class Builder {
+
+	private final int rows;
+	private final int columns;
+	private int[] is;
+	private int[] js;
+	private double[] xs;
+	private int size;
+
+	public Builder(int rows, int columns) {
+	    if ((rows < 0) || (columns < 0)) {
+		throw new IllegalArgumentException("Invalid matrix dimensions: " + rows + "x" + columns + ".");
+	    }
+
+	    this.rows = rows;
+	    this.columns = columns;
+	    this.is = new int[16];
+	    this.js = new int[16];
+	    this.xs = new double[16];
+	    this.size = 0;
+	}
+
+	/**
+	 * Adds x to the (i, j)th element; returns this builder.
+	 */
+	public Builder add(int i, int j, double x) {
+	    if ((i < 0) || (i >= rows) || (j < 0) || (j >= columns)) {
+		throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside a " + rows + "x" + columns + " matrix.");
+	    }
+
+	    if (size == is.length) {
+		int capacity = 2 * size;
+		is = Arrays.copyOf(is, capacity);
+		js = Arrays.copyOf(js, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+	    }
+
+	    is[size] = i;
+	    js[size] = j;
+	    xs[size] = x;
+	    size += 1;
+
+	    return this;
+	}
+
+	/**
+	 * Returns the matrix in CSR form.
+	 */
+	public SparseDoubleMatrix toCSR() {
+	    return compress(rows, columns, true, is, js, xs, size);
+	}
+
+	/**
+	 * Returns the matrix in CSC form.
+	 */
+	public SparseDoubleMatrix toCSC() {
+	    return compress(rows, columns, false, js, is, xs, size);
+	}
+
+    }
+
+    /**
+     * Returns a CSR matrix containing the non-zero elements of the
+     * given dense matrix.
+     */
+    public static SparseDoubleMatrix fromDense(DoubleMatrix dm) {
+	Builder b = new Builder(dm.rows, dm.columns);
+
+	for (int i = 0; i < dm.rows; i += 1) {
+	    for (int j = 0; j < dm.columns; j += 1) {
+		double x = dm.get(i, j);
+
+		if (x != 0) {
+		    b.add(i, j, x);
+		}
+	    }
+	}
+
+	return b.toCSR();
+    }
+
+    /**
+     * Builds a matrix from n triplets, given as parallel arrays of
+     * major indices (rows for CSR, columns for CSC), minor indices
+     * and values. Two stable counting sorts, by minor and then by
+     * major index, put the triplets in order; duplicates are then
+     * adjacent, and are summed.
+     */
+    private static SparseDoubleMatrix compress(int rows, int columns, boolean byRows, int[] major, int[] minor, double[] x, int n) {
+	int majors = byRows ? rows : columns;
+	int minors = byRows ? columns : rows;
+
+	int[] byMinor = new int[n];
+	int[] count = new int[minors + 1];
+
+	for (int k = 0; k < n; k += 1) {
+	    count[minor[k] + 1] += 1;
+	}
+
+	for (int m = 0; m < minors; m += 1) {
+	    count[m + 1] += count[m];
+	}
+
+	for (int k = 0; k < n; k += 1) {
+	    byMinor[count[minor[k]]++] = k;
+	}
+
+	int[] pointers = new int[majors + 1];
+
+	for (int k = 0; k < n; k += 1) {
+	    pointers[major[k] + 1] += 1;
+	}
+
+	for (int m = 0; m < majors; m += 1) {
+	    pointers[m + 1] += pointers[m];
+	}
+
+	int[] next = Arrays.copyOf(pointers, majors);
+	int[] indices = new int[n];
+	double[] values = new double[n];
+
+	for (int t = 0; t < n; t += 1) {
+	    int k = byMinor[t];
+	    int p = next[major[k]]++;
+
+	    indices[p] = minor[k];
+	    values[p] = x[k];
+	}
+
+	return sumDuplicates(rows, columns, byRows, pointers, indices, values);
+    }
+
+    /**
+     * Merges adjacent elements with the same index within each major
+     * row or column, compacting the arrays if any were found.
+     */
+    private static SparseDoubleMatrix sumDuplicates(int rows, int columns, boolean byRows, int[] pointers, int[] indices, double[] values) {
+	int majors = pointers.length - 1;
+	int p = 0;
+	int start = 0;
+
+	for (int m = 0; m < majors; m += 1) {
+	    int end = pointers[m + 1];
+
+	    for (int k = start; k < end; k += 1) {
+		if ((p > pointers[m]) && (indices[p - 1] == indices[k])) {
+		    values[p - 1] += values[k];
+		} else {
+		    indices[p] = indices[k];
+		    values[p] = values[k];
+		    p += 1;
+		}
+	    }
+
+	    start = end;
+	    pointers[m + 1] = p;
+	}
+
+	if (p < indices.length) {
+	    indices = Arrays.copyOf(indices, p);
+	    values = Arrays.copyOf(values, p);
+	}
+
+	return new SparseDoubleMatrix(rows, columns, byRows, pointers, indices, values);
+    }
+
+    public int rows() {
+	return rows;
+    }
+
+    public int columns() {
+	return columns;
+    }
+
+    /**
+     * Returns the number of stored (non-zero) elements.
+     */
+    public int nonZeros() {
+	return values.length;
+    }
+
+    /**
+     * Returns true if this matrix is stored in CSR form, false if in
+     * CSC form.
+     */
+    public boolean isCSR() {
+	return byRows;
+    }
+
+    /**
+     * Returns this matrix in CSR form: this matrix itself if it is
+     * already in CSR form, and otherwise a converted copy.
+     */
+    public SparseDoubleMatrix toCSR() {
+	return byRows ? this : convert();
+    }
+
+    /**
+     * Returns this matrix in CSC form: this matrix itself if it is
+     * already in CSC form, and otherwise a converted copy.
+     */
+    public SparseDoubleMatrix toCSC() {
+	return byRows ? convert() : this;
+    }
+
+    /**
+     * Returns this matrix in the other form, by a counting sort on
+     * the minor indices. Elements are visited in major order, so each
+     * new major row or column comes out sorted.
+     */
+    private SparseDoubleMatrix convert() {
+	int majors = pointers.length - 1;
+	int minors = byRows ? columns : rows;
+	int n = values.length;
+	int[] newPointers = new int[minors + 1];
+
+	for (int k = 0; k < n; k += 1) {
+	    newPointers[indices[k] + 1] += 1;
+	}
+
+	for (int m = 0; m < minors; m += 1) {
+	    newPointers[m + 1] += newPointers[m];
+	}
+
+	int[] next = Arrays.copyOf(newPointers, minors);
+	int[] newIndices = new int[n];
+	double[] newValues = new double[n];
+
+	for (int m = 0; m < majors; m += 1) {
+	    for (int k = pointers[m]; k < pointers[m + 1]; k += 1) {
+		int p = next[indices[k]]++;
+
+		newIndices[p] = m;
+		newValues[p] = values[k];
+	    }
+	}
+
+	return new SparseDoubleMatrix(rows, columns, !byRows, newPointers, newIndices, newValues);
+    }
+
+    /**
+     * Returns the transpose of this matrix, which shares its storage
+     * with this matrix: the transpose of a CSR matrix is a CSC matrix,
+     * and vice versa.
+     */
+    public SparseDoubleMatrix transpose() {
+	return new SparseDoubleMatrix(columns, rows, !byRows, pointers, indices, values);
+    }
+
+    /**
+     * Returns the (i, j)th element, found by binary search.
+     */
+    public double get(int i, int j) {
+	if ((i < 0) || (i >= rows) || (j < 0) || (j >= columns)) {
+	    throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside a " + rows + "x" + columns + " matrix.");
+	}
+
+	int major = byRows ? i : j;
+	int minor = byRows ? j : i;
+	int k = Arrays.binarySearch(indices, pointers[major], pointers[major + 1], minor);
+
+	return (k >= 0) ? values[k] : 0;
+    }
+
+    /**
+     * Returns this matrix in dense form.
+     */
+    public DoubleMatrix toDense() {
+	DoubleMatrix dm = new DoubleMatrix(rows, columns);
+	int majors = pointers.length - 1;
+
+	for (int m = 0; m < majors; m += 1) {
+	    for (int k = pointers[m]; k < pointers[m + 1]; k += 1) {
+		if (byRows) {
+		    dm.data[m * columns + indices[k]] = values[k];
+		} else {
+		    dm.data[indices[k] * columns + m] = values[k];
+		}
+	    }
+	}
+
+	return dm;
+    }
+
+    /**
+     * Returns the product of this matrix and the given vector (as a
+     * column vector).
+     */
+    public DoubleVector multiply(DoubleVector dv) {
+	return multiply(dv, new DoubleVector(rows));
+    }
+
+    /**
+     * Stores the product of this matrix and the given vector in dest,
+     * whose length must be the number of rows of this matrix, and
+     * which must not share storage with the given vector; returns
+     * dest.
+     */
+    public DoubleVector multiply(DoubleVector dv, DoubleVector dest) {
+	if ((dv.length != columns) || (dest.length != rows)) {
+	    throw new IllegalArgumentException("Dimensions don't match: " + rows + "x" + columns + ", " + dv.length + ", " + dest.length + ".");
+	}
+
+	double[] x = dv.data;
+	double[] y = dest.data;
+	int xo = dv.offset;
+	int yo = dest.offset;
+
+	if (byRows) {
+	    for (int i = 0; i < rows; i += 1) {
+		double s = 0;
+
+		for (int k = pointers[i]; k < pointers[i + 1]; k += 1) {
+		    s += values[k] * x[xo + indices[k]];
+		}
+
+		y[yo + i] = s;
+	    }
+	} else {
+	    dest.fill(0);
+
+	    for (int j = 0; j < columns; j += 1) {
+		double xj = x[xo + j];
+
+		if (xj != 0) {
+		    for (int k = pointers[j]; k < pointers[j + 1]; k += 1) {
+			y[yo + indices[k]] += values[k] * xj;
+		    }
+		}
+	    }
+	}
+
+	return dest;
+    }
+
+    /**
+     * Returns the product of the transpose of this matrix and the
+     * given vector, without forming the transpose.
+     */
+    public DoubleVector transposeMultiply(DoubleVector dv) {
+	return transpose().multiply(dv);
+    }
+
+    /**
+     * Stores the product of the transpose of this matrix and the given
+     * vector in dest; returns dest.
+     */
+    public DoubleVector transposeMultiply(DoubleVector dv, DoubleVector dest) {
+	return transpose().multiply(dv, dest);
+    }
+
+    /**
+     * Returns the product of this matrix and the given dense matrix.
+     * Each non-zero element of this matrix contributes a multiple of
+     * a row of dm to a row of the product, so both are read by rows.
+     */
+    public DoubleMatrix multiply(DoubleMatrix dm) {
+	if (dm.rows != columns) {
+	    throw new IllegalArgumentException("dm.rows != this.columns: " + dm.rows + ", " + columns + ".");
+	}
+
+	int n = dm.columns;
+	DoubleMatrix p = new DoubleMatrix(rows, n);
+	int majors = pointers.length - 1;
+
+	for (int m = 0; m < majors; m += 1) {
+	    for (int k = pointers[m]; k < pointers[m + 1]; k += 1) {
+		int i = byRows ? m : indices[k];
+		int j = byRows ? indices[k] : m;
+		double a = values[k];
+		int rp = i * n;
+		int rd = dm.index(j, 0);
+
+		for (int l = 0; l < n; l += 1) {
+		    p.data[rp + l] += a * dm.data[rd + l * dm.columnStride];
+		}
+	    }
+	}
+
+	return p;
+    }
+
+    /**
+     * Returns the product of the transpose of this matrix and the
+     * given dense matrix, without forming the transpose.
+     */
+    public DoubleMatrix transposeMultiply(DoubleMatrix dm) {
+	return transpose().multiply(dm);
+    }
+
+    /**
+     * Returns the sum of each column of this matrix.
+     */
+    public DoubleVector sumColumns() {
+	DoubleVector sums = new DoubleVector(columns);
+	int majors = pointers.length - 1;
+
+	for (int m = 0; m < majors; m += 1) {
+	    for (int k = pointers[m]; k < pointers[m + 1]; k += 1) {
+		sums.data[byRows ? indices[k] : m] += values[k];
+	    }
+	}
+
+	return sums;
+    }
+
+    /**
+     * Returns a vector whose ith entry is the mean of the ith column
+     * of this matrix.
+     */
+    public DoubleVector mean() {
+	return sumColumns().divideInPlace(rows);
+    }
+
+    /**
+     * Returns X' * X, where X is this matrix, as a dense matrix.
+     */
+    public DoubleMatrix gram() {
+	return gram(null, new DoubleMatrix(columns, columns));
+    }
+
+    /**
+     * Returns X' * W * X, where X is this matrix and W is the diagonal
+     * matrix with the given weights (one per row) on its diagonal, as
+     * a dense matrix.
+     */
+    public DoubleMatrix gram(DoubleVector weights) {
+	return gram(weights, new DoubleMatrix(columns, columns));
+    }
+
+    /**
+     * Stores X' * W * X in dest, a square matrix whose size is the
+     * number of columns of this matrix; returns dest. If weights is
+     * null, W is the identity. Each row of X contributes the products
+     * of its pairs of non-zero elements, so the time taken is
+     * proportional to the sum over the rows of the square of their
+     * number of non-zero elements, plus the size of dest.
+     */
+    public DoubleMatrix gram(DoubleVector weights, DoubleMatrix dest) {
+	if ((dest.rows != columns) || (dest.columns != columns)) {
+	    throw new IllegalArgumentException("Dimensions of destination don't match: " + dest.rows + "x" + dest.columns + ", " + columns + "x" + columns + ".");
+	}
+
+	if ((weights != null) && (weights.length != rows)) {
+	    throw new IllegalArgumentException("Number of weights doesn't match rows of matrix: " + weights.length + ", " + rows + ".");
+	}
+
+	SparseDoubleMatrix csr = toCSR();
+
+	for (int i = 0; i < columns; i += 1) {
+	    dest.fillRow(i, 0);
+	}
+
+	// Accumulate the upper triangle (indices are sorted within each row).
+	for (int i = 0; i < rows; i += 1) {
+	    double w = (weights == null) ? 1 : weights.data[weights.offset + i];
+
+	    if (w == 0) {
+		continue;
+	    }
+
+	    int end = csr.pointers[i + 1];
+
+	    for (int k = csr.pointers[i]; k < end; k += 1) {
+		double a = w * csr.values[k];
+		int r = dest.index(csr.indices[k], 0);
+
+		for (int l = k; l < end; l += 1) {
+		    dest.data[r + csr.indices[l] * dest.columnStride] += a * csr.values[l];
+		}
+	    }
+	}
+
+	for (int i = 0; i < columns; i += 1) {
+	    for (int j = i + 1; j < columns; j += 1) {
+		dest.set(j, i, dest.get(i, j));
+	    }
+	}
+
+	return dest;
+    }
+
+    /**
+     * Returns the variance-covariance matrix of the columns of this
+     * matrix, as a dense matrix, computed from the non-zero elements
+     * only; the result is the same as that of toDense().covariance(),
+     * up to rounding.
+     *
+     * The products of the deviations from the means are summed
+     * directly, rather than by subtracting n * m_i * m_j from the
+     * gram matrix, which cancels when the means are large compared to
+     * the standard deviations. A stored element x contributes the
+     * deviation d = x - m_i, and an implicit zero contributes -m_i, so
+     * for columns i and j the sum splits into: the products d_i * d_j
+     * over the rows in which both are stored; -m_j times the sum of
+     * d_i over the rows in which only i is stored (the sum over all
+     * rows storing i less that over the rows storing both), and
+     * likewise for j; and m_i * m_j times the number of rows storing
+     * neither. The sums over pairs of stored elements take the same
+     * time as gram.
+     */
+    public DoubleMatrix covariance() {
+	SparseDoubleMatrix csr = toCSR();
+	double[] m = mean().data;
+	DoubleMatrix vcov = new DoubleMatrix(columns, columns);
+
+	// The sums of the deviations and numbers of stored elements of
+	// each column, and for each pair of columns, the sum of the
+	// deviations of column i over the rows storing both (both[i][j])
+	// and the number of such rows (upper triangle).
+	double[] sums = new double[columns];
+	int[] counts = new int[columns];
+	double[] both = new double[columns * columns];
+	int[] bothCounts = new int[columns * columns];
+
+	for (int r = 0; r < rows; r += 1) {
+	    int end = csr.pointers[r + 1];
+
+	    for (int k = csr.pointers[r]; k < end; k += 1) {
+		int i = csr.indices[k];
+		double di = csr.values[k] - m[i];
+
+		sums[i] += di;
+		counts[i] += 1;
+
+		for (int l = k; l < end; l += 1) {
+		    int j = csr.indices[l];
+		    double dj = csr.values[l] - m[j];
+
+		    vcov.data[i * columns + j] += di * dj;
+		    both[i * columns + j] += di;
+		    bothCounts[i * columns + j] += 1;
+
+		    if (j != i) {
+			both[j * columns + i] += dj;
+		    }
+		}
+	    }
+	}
+
+	for (int i = 0; i < columns; i += 1) {
+	    for (int j = i; j < columns; j += 1) {
+		int neither = rows - counts[i] - counts[j] + bothCounts[i * columns + j];
+		double onlyI = sums[i] - both[i * columns + j];
+		double onlyJ = sums[j] - both[j * columns + i];
+		double vij = (vcov.data[i * columns + j] - m[j] * onlyI - m[i] * onlyJ + neither * m[i] * m[j]) / (rows - 1);
+
+		vcov.set(i, j, vij);
+		vcov.set(j, i, vij);
+	    }
+	}
+
+	return vcov;
+    }
+
+}
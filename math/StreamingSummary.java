@@ -0,0 +1,317 @@
+package math;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Accumulates the count, mean, minimum, maximum and second, third and
+ * fourth central moments of a stream of numbers in one pass, without
+ * keeping the numbers.
+ *
+ * Single numbers are added with the update of Welford, extended to
+ * the higher moments by Terriberry. Arrays are summarized a block of
+ * BLOCK numbers at a time, with two passes over the block (which is
+ * still in cache for the second): the first finds its mean, and the
+ * second its central moments. Each block, like the summary of
+ * another accumulator passed to merge, is then combined with the
+ * totals by the pairwise formulas of Chan, Golub and LeVeque and of
+ * Pebay (P. Pebay, "Formulas for robust, one-pass parallel
+ * computation of covariances and arbitrary-order statistical
+ * moments", Sandia Report SAND2008-6212, 2008). So accumulators for
+ * parts of a stream (e.g., from different threads, or columns of
+ * different blocks of rows) can be combined into one for the whole.
+ *
+ * As in DoubleVector, NaN propagates to every statistic.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class StreamingSummary {
+
+    /**
+     * The number of elements of an array summarized at a time.
+     */
+    static final int BLOCK = 1 << 12;
+
+    /**
+     * The number of elements below which DoubleVector.summarize works
+     * serially, and above which the elements are split between tasks.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private long n;
+
+    private double mean;
+
+    /**
+     * The sums of the second, third and fourth powers of the
+     * deviations from the mean.
+     */
+    private double m2;
+    private double m3;
+    private double m4;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an accumulator with (as yet) no numbers.
+     */
+    public StreamingSummary() {
+    }
+
+    /**
+     * Returns a summary of the elements of the given vector, computed
+     * in parallel in the BlockedMultiply pool if it is long enough.
+     */
+    static StreamingSummary summarize(double[] data, int offset, int length) {
+	if (length < PARALLEL_THRESHOLD) {
+	    return new StreamingSummary().add(data, offset, length);
+	}
+
+	return BlockedMultiply.pool().invoke(new Range(data, offset, offset + length));
+    }
+
+    /**
+     * Adds a single number.
+     */
+    public StreamingSummary add(double x) {
+	long n1 = n;
+
+	n += 1;
+
+	double delta = x - mean;
+	double deltaN = delta / n;
+	double deltaN2 = deltaN * deltaN;
+	double term = delta * deltaN * n1;
+
+	mean += deltaN;
+	m4 += term * deltaN2 * ((double) n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+	m3 += term * deltaN * (n - 2) - 3 * deltaN * m2;
+	m2 += term;
+
+	min = Math.min(min, x);
+	max = Math.max(max, x);
+
+	return this;
+    }
+
+    public StreamingSummary add(double[] a) {
+	return add(a, 0, a.length);
+    }
+
+    /**
+     * Adds a[offset] to a[offset + length - 1].
+     */
+    public StreamingSummary add(double[] a, int offset, int length) {
+	for (int k = 0; k < length; k += BLOCK) {
+	    addBlock(a, offset + k, Math.min(BLOCK, length - k));
+	}
+
+	return this;
+    }
+
+    /**
+     * Adds the elements of the given vector.
+     */
+    public StreamingSummary add(DoubleVector v) {
+	return add(v.data, v.offset, v.length);
+    }
+
+    private void addBlock(double[] a, int offset, int length) {
+	double sum = 0.0;
+	double lo = min;
+	double hi = max;
+
+	for (int i = offset; i < offset + length; i += 1) {
+	    double x = a[i];
+
+	    sum += x;
+	    lo = Math.min(lo, x);
+	    hi = Math.max(hi, x);
+	}
+
+	double mb = sum / length;
+	double s2 = 0.0;
+	double s3 = 0.0;
+	double s4 = 0.0;
+
+	for (int i = offset; i < offset + length; i += 1) {
+	    double d = a[i] - mb;
+	    double d2 = d * d;
+
+	    s2 += d2;
+	    s3 += d2 * d;
+	    s4 += d2 * d2;
+	}
+
+	combine(length, mb, s2, s3, s4);
+	min = lo;
+	max = hi;
+    }
+
+    /**
+     * Adds the numbers summarized by another accumulator, which is not
+     * modified.
+     */
+    public StreamingSummary merge(StreamingSummary other) {
+	if (other.n > 0) {
+	    combine(other.n, other.mean, other.m2, other.m3, other.m4);
+	    min = Math.min(min, other.min);
+	    max = Math.max(max, other.max);
+	}
+
+	return this;
+    }
+
+    /**
+     * Combines the totals for nb more numbers, with mean mb and sums
+     * of powers of deviations m2b, m3b and m4b, with the totals so
+     * far.
+     */
+    private void combine(long nb, double mb, double m2b, double m3b, double m4b) {
+	if (nb == 0) {
+	    return;
+	}
+
+	if (n == 0) {
+	    n = nb;
+	    mean = mb;
+	    m2 = m2b;
+	    m3 = m3b;
+	    m4 = m4b;
+
+	    return;
+	}
+
+	double na = n;
+	double total = na + nb;
+	double delta = mb - mean;
+	double deltaN = delta / total;
+	double deltaN2 = deltaN * deltaN;
+	double product = na * nb;
+
+	m4 += m4b
+	    + delta * deltaN * deltaN2 * product * (na * na - product + (double) nb * nb)
+	    + 6 * deltaN2 * (na * na * m2b + (double) nb * nb * m2)
+	    + 4 * deltaN * (na * m3b - nb * m3);
+	m3 += m3b
+	    + delta * deltaN2 * product * (na - nb)
+	    + 3 * deltaN * (na * m2b - nb * m2);
+	m2 += m2b + delta * deltaN * product;
+	mean += nb * deltaN;
+	n += nb;
+    }
+
+    /**
+     * Returns the number of numbers added so far.
+     */
+    public long count() {
+	return n;
+    }
+
+    /**
+     * Returns the mean, or NaN if no numbers have been added.
+     */
+    public double mean() {
+	return (n > 0) ? mean : Double.NaN;
+    }
+
+    public double sum() {
+	return mean * n;
+    }
+
+    /**
+     * Returns the sample variance (with divisor n - 1), or NaN if
+     * fewer than two numbers have been added.
+     */
+    public double variance() {
+	return (n > 1) ? m2 / (n - 1.0) : Double.NaN;
+    }
+
+    public double standardDeviation() {
+	return Math.sqrt(variance());
+    }
+
+    /**
+     * Returns the standard error of the mean.
+     */
+    public double standardError() {
+	return Math.sqrt(variance() / n);
+    }
+
+    /**
+     * Returns the skewness, m3 / m2^(3/2), where mk is the kth central
+     * moment (with divisor n).
+     */
+    public double skewness() {
+	return Math.sqrt((double) n) * m3 / Math.pow(m2, 1.5);
+    }
+
+    /**
+     * Returns the excess kurtosis, m4 / m2^2 - 3, where mk is the kth
+     * central moment (with divisor n).
+     */
+    public double kurtosis() {
+	return n * m4 / (m2 * m2) - 3;
+    }
+
+    /**
+     * Returns the smallest number added, or positive infinity if none
+     * have been.
+     */
+    public double min() {
+	return min;
+    }
+
+    /**
+     * Returns the largest number added, or negative infinity if none
+     * have been.
+     */
+    public double max() {
+	return max;
+    }
+
+    public double range() {
+	return max - min;
+    }
+
+    public String toString() {
+	return "n = " + n + ", mean = " + mean() + ", sd = " + standardDeviation() + ", min = " + min + ", max = " + max;
+    }
+
+    /**
+     * Summarizes a range of an array, splitting it in half until it is
+     * shorter than PARALLEL_THRESHOLD, and merging the summaries of the
+     * halves.
+     */
+    private static class Range extends RecursiveTask<StreamingSummary> {
+
+	private final double[] data;
+	private final int lo;
+	private final int hi;
+
+	Range(double[] data, int lo, int hi) {
+	    this.data = data;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected StreamingSummary compute() {
+	    if (hi - lo < PARALLEL_THRESHOLD) {
+		return new StreamingSummary().add(data, lo, hi - lo);
+	    }
+
+	    int mid = (lo + hi) >>> 1;
+	    Range left = new Range(data, lo, mid);
+	    Range right = new Range(data, mid, hi);
+
+	    left.fork();
+
+	    StreamingSummary s = right.compute();
+
+	    return left.join().merge(s);
+	}
+
+    }
+
+}
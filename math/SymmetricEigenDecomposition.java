@@ -0,0 +1,420 @@
+package math;
+
+/**
+ * The eigendecomposition of a real symmetric n x n matrix A: A = V *
+ * D * V', where D is the diagonal matrix of the eigenvalues and the
+ * columns of V are the corresponding (orthonormal) eigenvectors. The
+ * eigenvalues are in decreasing order.
+ *
+ * The full decomposition is computed as in EISPACK and JAMA: A is
+ * reduced to tridiagonal form by Householder reflections (tred2), and
+ * the tridiagonal matrix is diagonalized by the implicit QL algorithm
+ * (tql2), which takes O(n^3) time. A partial decomposition, holding
+ * only the k largest eigenvalues and their eigenvectors, is computed
+ * much faster for large matrices by Lanczos (see largest).
+ *
+ * The eigenvectors are stored as the rows of a k x n matrix, so that
+ * the plane rotations of tql2, and the products which form Ritz
+ * vectors in Lanczos, run along contiguous rows.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class SymmetricEigenDecomposition {
+
+    /**
+     * The maximum number of QL iterations per eigenvalue.
+     */
+    private static final int MAX_ITERATIONS = 30;
+
+    private final int n;
+
+    /**
+     * The eigenvalues, in decreasing order.
+     */
+    final double[] values;
+
+    /**
+     * The eigenvectors, as rows, in the order of values.
+     */
+    final DoubleMatrix vectors;
+
+    /**
+     * Decomposes the given matrix, which must be square and symmetric
+     * (this isn't checked). The matrix itself is not modified.
+     */
+    public SymmetricEigenDecomposition(DoubleMatrix a) {
+	if (a.rows != a.columns) {
+	    throw new IllegalArgumentException("Matrix is not square: " + a.rows + " x " + a.columns + ".");
+	}
+
+	this.n = a.rows;
+	this.values = new double[n];
+
+	double[] v = a.clone().data;
+	double[] e = new double[n];
+
+	if (n > 0) {
+	    tred2(v, values, e, n);
+	}
+
+	// tred2 leaves the transformation in the columns of v, while
+	// tql2 rotates rows.
+	this.vectors = new DoubleMatrix(v, 0, n, n, n, 1).transpose().clone();
+
+	if (n > 0) {
+	    tql2(vectors.data, values, e, n);
+	}
+
+	sort();
+    }
+
+    /**
+     * Creates a partial decomposition from the given eigenvalues, in
+     * decreasing order, and eigenvectors (as rows).
+     */
+    SymmetricEigenDecomposition(double[] values, DoubleMatrix vectors) {
+	this.n = vectors.columns;
+	this.values = values;
+	this.vectors = vectors;
+    }
+
+    /**
+     * Returns the decomposition of the k largest eigenvalues of the
+     * given symmetric matrix, computed by Lanczos if the matrix is
+     * large compared to k, and otherwise by the full decomposition.
+     */
+    public static SymmetricEigenDecomposition largest(DoubleMatrix a, int k) {
+	if (a.rows != a.columns) {
+	    throw new IllegalArgumentException("Matrix is not square: " + a.rows + " x " + a.columns + ".");
+	}
+
+	if ((k < 0) || (k > a.rows)) {
+	    throw new IllegalArgumentException("Invalid number of eigenvalues: " + k + ", for " + a.rows + " x " + a.rows + " matrix.");
+	}
+
+	if ((k > 0) && (Lanczos.basisSize(a.rows, k) < a.rows)) {
+	    return Lanczos.largest(a, k);
+	} else {
+	    return new SymmetricEigenDecomposition(a).truncate(k);
+	}
+    }
+
+    /**
+     * Returns the decomposition restricted to the first k eigenvalues.
+     */
+    SymmetricEigenDecomposition truncate(int k) {
+	double[] d = new double[k];
+
+	System.arraycopy(values, 0, d, 0, k);
+
+	return new SymmetricEigenDecomposition(d, vectors.selectRows(0, k).clone());
+    }
+
+    /**
+     * Returns the order of the decomposed matrix.
+     */
+    public int size() {
+	return n;
+    }
+
+    /**
+     * Returns the number of eigenvalues held: n for a full
+     * decomposition, and k for a partial one.
+     */
+    public int count() {
+	return values.length;
+    }
+
+    /**
+     * Returns the eigenvalues, in decreasing order.
+     */
+    public DoubleVector getEigenvalues() {
+	return new DoubleVector(values.clone());
+    }
+
+    public double getEigenvalue(int i) {
+	return values[i];
+    }
+
+    /**
+     * Returns a copy of the eigenvector of the ith eigenvalue.
+     */
+    public DoubleVector getEigenvector(int i) {
+	return vectors.getRow(i).clone();
+    }
+
+    /**
+     * Returns the n x k matrix V whose columns are the eigenvectors.
+     */
+    public DoubleMatrix getEigenvectors() {
+	return vectors.transpose().clone();
+    }
+
+    /**
+     * Sorts the eigenvalues, and the eigenvectors with them, into
+     * decreasing order.
+     */
+    private void sort() {
+	double[] z = vectors.data;
+	double[] tmp = new double[n];
+
+	for (int i = 0; i < n - 1; i += 1) {
+	    int k = i;
+
+	    for (int j = i + 1; j < n; j += 1) {
+		if (values[j] > values[k]) {
+		    k = j;
+		}
+	    }
+
+	    if (k != i) {
+		double p = values[k];
+		values[k] = values[i];
+		values[i] = p;
+
+		System.arraycopy(z, i * n, tmp, 0, n);
+		System.arraycopy(z, k * n, z, i * n, n);
+		System.arraycopy(tmp, 0, z, k * n, n);
+	    }
+	}
+    }
+
+    /**
+     * Reduces the symmetric matrix v (n x n, by rows) to tridiagonal
+     * form by Householder reflections, leaving the diagonal in d, the
+     * subdiagonal in e[1] to e[n - 1], and the accumulated
+     * orthogonal transformation in v.
+     */
+    private static void tred2(double[] v, double[] d, double[] e, int n) {
+	for (int j = 0; j < n; j += 1) {
+	    d[j] = v[(n - 1) * n + j];
+	}
+
+	for (int i = n - 1; i > 0; i -= 1) {
+	    double scale = 0;
+	    double h = 0;
+
+	    for (int k = 0; k < i; k += 1) {
+		scale += Math.abs(d[k]);
+	    }
+
+	    if (scale == 0) {
+		e[i] = d[i - 1];
+
+		for (int j = 0; j < i; j += 1) {
+		    d[j] = v[(i - 1) * n + j];
+		    v[i * n + j] = 0;
+		    v[j * n + i] = 0;
+		}
+	    } else {
+		// Generate the Householder vector.
+		for (int k = 0; k < i; k += 1) {
+		    d[k] /= scale;
+		    h += d[k] * d[k];
+		}
+
+		double f = d[i - 1];
+		double g = Math.sqrt(h);
+
+		if (f > 0) {
+		    g = -g;
+		}
+
+		e[i] = scale * g;
+		h -= f * g;
+		d[i - 1] = f - g;
+
+		for (int j = 0; j < i; j += 1) {
+		    e[j] = 0;
+		}
+
+		// Apply the similarity transformation to the remaining
+		// columns.
+		for (int j = 0; j < i; j += 1) {
+		    f = d[j];
+		    v[j * n + i] = f;
+		    g = e[j] + v[j * n + j] * f;
+
+		    for (int k = j + 1; k <= i - 1; k += 1) {
+			g += v[k * n + j] * d[k];
+			e[k] += v[k * n + j] * f;
+		    }
+
+		    e[j] = g;
+		}
+
+		f = 0;
+
+		for (int j = 0; j < i; j += 1) {
+		    e[j] /= h;
+		    f += e[j] * d[j];
+		}
+
+		double hh = f / (h + h);
+
+		for (int j = 0; j < i; j += 1) {
+		    e[j] -= hh * d[j];
+		}
+
+		for (int j = 0; j < i; j += 1) {
+		    f = d[j];
+		    g = e[j];
+
+		    for (int k = j; k <= i - 1; k += 1) {
+			v[k * n + j] -= f * e[k] + g * d[k];
+		    }
+
+		    d[j] = v[(i - 1) * n + j];
+		    v[i * n + j] = 0;
+		}
+	    }
+
+	    d[i] = h;
+	}
+
+	// Accumulate the transformations.
+	for (int i = 0; i < n - 1; i += 1) {
+	    v[(n - 1) * n + i] = v[i * n + i];
+	    v[i * n + i] = 1;
+
+	    double h = d[i + 1];
+
+	    if (h != 0) {
+		for (int k = 0; k <= i; k += 1) {
+		    d[k] = v[k * n + i + 1] / h;
+		}
+
+		for (int j = 0; j <= i; j += 1) {
+		    double g = 0;
+
+		    for (int k = 0; k <= i; k += 1) {
+			g += v[k * n + i + 1] * v[k * n + j];
+		    }
+
+		    for (int k = 0; k <= i; k += 1) {
+			v[k * n + j] -= g * d[k];
+		    }
+		}
+	    }
+
+	    for (int k = 0; k <= i; k += 1) {
+		v[k * n + i + 1] = 0;
+	    }
+	}
+
+	for (int j = 0; j < n; j += 1) {
+	    d[j] = v[(n - 1) * n + j];
+	    v[(n - 1) * n + j] = 0;
+	}
+
+	v[(n - 1) * n + n - 1] = 1;
+	e[0] = 0;
+    }
+
+    /**
+     * Diagonalizes the symmetric tridiagonal matrix with diagonal d
+     * and subdiagonal e[1] to e[n - 1] by the implicit QL algorithm,
+     * leaving the eigenvalues in d, and applying the rotations to the
+     * rows of z (n x n).
+     */
+    private static void tql2(double[] z, double[] d, double[] e, int n) {
+	for (int i = 1; i < n; i += 1) {
+	    e[i - 1] = e[i];
+	}
+
+	e[n - 1] = 0;
+
+	double f = 0;
+	double tst1 = 0;
+	double eps = Math.ulp(1.0);
+
+	for (int l = 0; l < n; l += 1) {
+	    // Find a small subdiagonal element.
+	    tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+
+	    int m = l;
+
+	    while ((m < n - 1) && (Math.abs(e[m]) > eps * tst1)) {
+		m += 1;
+	    }
+
+	    // If m == l, d[l] is already an eigenvalue; otherwise,
+	    // iterate.
+	    if (m > l) {
+		int iter = 0;
+
+		do {
+		    iter += 1;
+
+		    if (iter > MAX_ITERATIONS) {
+			throw new IllegalStateException("Eigenvalue " + l + " did not converge.");
+		    }
+
+		    // Compute the implicit shift.
+		    double g = d[l];
+		    double p = (d[l + 1] - g) / (2 * e[l]);
+		    double r = Math.hypot(p, 1);
+
+		    if (p < 0) {
+			r = -r;
+		    }
+
+		    d[l] = e[l] / (p + r);
+		    d[l + 1] = e[l] * (p + r);
+
+		    double dl1 = d[l + 1];
+		    double h = g - d[l];
+
+		    for (int i = l + 2; i < n; i += 1) {
+			d[i] -= h;
+		    }
+
+		    f += h;
+
+		    // Implicit QL transformation.
+		    p = d[m];
+
+		    double c = 1;
+		    double c2 = c;
+		    double c3 = c;
+		    double el1 = e[l + 1];
+		    double s = 0;
+		    double s2 = 0;
+
+		    for (int i = m - 1; i >= l; i -= 1) {
+			c3 = c2;
+			c2 = c;
+			s2 = s;
+			g = c * e[i];
+			h = c * p;
+			r = Math.hypot(p, e[i]);
+			e[i + 1] = s * r;
+			s = e[i] / r;
+			c = p / r;
+			p = c * d[i] - s * g;
+			d[i + 1] = h + s * (c * g + s * d[i]);
+
+			// Rotate eigenvectors i and i + 1.
+			int zi = i * n;
+			int zj = zi + n;
+
+			for (int k = 0; k < n; k += 1) {
+			    h = z[zj + k];
+			    z[zj + k] = s * z[zi + k] + c * h;
+			    z[zi + k] = c * z[zi + k] - s * h;
+			}
+		    }
+
+		    p = -s * s2 * c3 * el1 * e[l] / dl1;
+		    e[l] = s * p;
+		    d[l] = c * p;
+		} while (Math.abs(e[l]) > eps * tst1);
+	    }
+
+	    d[l] += f;
+	    e[l] = 0;
+	}
+    }
+
+}
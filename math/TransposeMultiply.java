@@ -0,0 +1,262 @@
+package math;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Kernels for the products A' * B, A' * W * B (W diagonal) and A * B',
+ * which read both operands in their natural, row-major layout instead
+ * of transposing one of them first.
+ *
+ * A' * B is the sum over rows i of the outer products of row i of A
+ * and row i of B, so it is computed by streaming through the rows
+ * once, adding each outer product to the result with axpy. The rows
+ * are split into one range per thread of the BlockedMultiply pool
+ * (but at least TASK_ROWS rows each), which are summed in parallel,
+ * so even a tall, skinny product whose result is a single tile is
+ * computed by every thread. The first range is summed straight into
+ * the result, and each of the others into a partial result, which
+ * the caller may supply to be reused. This needs the result to fit
+ * in cache; larger results are computed by BlockedMultiply, which
+ * reads A' as a strided view and weights the rows of B as it reads
+ * them. Either way, when A and B are the same matrix, only the
+ * upper triangle of the result is computed.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+class TransposeMultiply {
+
+    /**
+     * The smallest number of rows summed by a single task.
+     */
+    static final int TASK_ROWS = 2048;
+
+    /**
+     * Results with more elements than this (512K) are computed by
+     * BlockedMultiply rather than by streaming.
+     */
+    static final int STREAMING_LIMIT = 1 << 16;
+
+    private static final VectorKernels KERNELS = VectorKernels.INSTANCE;
+
+    /**
+     * Stores a' * diag(w) * b in p, which must not share storage with
+     * a or b; w may be null, for a' * b.
+     */
+    static void multiply(DoubleMatrix a, DoubleVector w, DoubleMatrix b, DoubleMatrix p) {
+	multiply(a, w, b, p, null);
+    }
+
+    /**
+     * Stores a' * diag(w) * b in p, as above. If partials is not null,
+     * its elements hold the partial results of the threads other than
+     * the first, and are allocated (or reallocated, if too small) as
+     * needed, so that a caller computing many products can reuse them;
+     * it should have BlockedMultiply.pool().getParallelism() - 1
+     * elements.
+     */
+    static void multiply(DoubleMatrix a, DoubleVector w, DoubleMatrix b, DoubleMatrix p, double[][] partials) {
+	boolean symmetric = (a == b);
+
+	if ((long) p.rows * p.columns > STREAMING_LIMIT) {
+	    BlockedMultiply.multiply(a.transpose(), w, b, p, symmetric);
+
+	    return;
+	}
+
+	int size = p.rows * p.columns;
+	boolean direct = p.isContiguous();
+	double[] s = direct ? p.data : new double[size];
+	int base = direct ? p.offset : 0;
+	int tasks = 1;
+
+	if (direct) {
+	    Arrays.fill(s, base, base + size, 0);
+	}
+
+	if ((long) a.rows * p.rows * p.columns >= DoubleMatrix.BLOCKED_THRESHOLD) {
+	    int threads = BlockedMultiply.pool().getParallelism();
+
+	    tasks = (int) Math.max(1, Math.min(threads, (long) a.rows / TASK_ROWS));
+	}
+
+	if (tasks == 1) {
+	    partial(a, w, b, symmetric, 0, a.rows, s, base);
+	} else {
+	    double[][] sums = new double[tasks][];
+	    int[] bases = new int[tasks];
+
+	    sums[0] = s;
+	    bases[0] = base;
+
+	    for (int t = 1; t < tasks; t += 1) {
+		if ((partials != null) && (t - 1 < partials.length)) {
+		    if ((partials[t - 1] == null) || (partials[t - 1].length < size)) {
+			partials[t - 1] = new double[size];
+		    } else {
+			Arrays.fill(partials[t - 1], 0, size, 0);
+		    }
+
+		    sums[t] = partials[t - 1];
+		} else {
+		    sums[t] = new double[size];
+		}
+	    }
+
+	    BlockedMultiply.pool().invoke(new Rows(a, w, b, symmetric, sums, bases, 0, tasks));
+
+	    for (int t = 1; t < tasks; t += 1) {
+		KERNELS.add(s, base, sums[t], 0, s, base, size);
+	    }
+	}
+
+	for (int k = 0; k < p.rows; k += 1) {
+	    for (int j = 0; j < p.columns; j += 1) {
+		if (symmetric && (j < k)) {
+		    p.data[p.index(k, j)] = s[base + j * p.columns + k];
+		} else if (!direct) {
+		    p.data[p.index(k, j)] = s[k * p.columns + j];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Stores a' * v in dest, which must not share storage with a or
+     * v.
+     */
+    static void multiply(DoubleMatrix a, DoubleVector v, DoubleVector dest) {
+	multiply(a, null, new DoubleMatrix(v.data, v.offset, v.length, 1, 1, 1),
+		 new DoubleMatrix(dest.data, dest.offset, dest.length, 1, 1, 1));
+    }
+
+    /**
+     * Stores a * b' in p, which must not share storage with a or b.
+     */
+    static void multiplyTranspose(DoubleMatrix a, DoubleMatrix b, DoubleMatrix p) {
+	if ((long) a.rows * a.columns * b.rows >= DoubleMatrix.BLOCKED_THRESHOLD) {
+	    // Copying b' is cheap compared to the product.
+	    BlockedMultiply.multiply(a, b.transpose(), p);
+
+	    return;
+	}
+
+	int n = a.columns;
+
+	for (int i = 0; i < a.rows; i += 1) {
+	    int ra = a.index(i, 0);
+
+	    for (int j = 0; j < b.rows; j += 1) {
+		int rb = b.index(j, 0);
+		double s;
+
+		if ((a.columnStride == 1) && (b.columnStride == 1)) {
+		    s = KERNELS.dot(a.data, ra, b.data, rb, n);
+		} else {
+		    s = 0;
+
+		    for (int k = 0; k < n; k += 1) {
+			s += a.data[ra + k * a.columnStride] * b.data[rb + k * b.columnStride];
+		    }
+		}
+
+		p.data[p.index(i, j)] = s;
+	    }
+	}
+    }
+
+    /**
+     * Adds the sum of the outer products of rows lo to hi - 1 of a and
+     * b, weighted by w, to the compact a.columns x b.columns array
+     * starting at s[base] (only the upper triangle, if symmetric).
+     */
+    private static void partial(DoubleMatrix a, DoubleVector w, DoubleMatrix b, boolean symmetric, int lo, int hi, double[] s, int base) {
+	int pr = a.columns;
+	int pc = b.columns;
+
+	for (int i = lo; i < hi; i += 1) {
+	    double wi = (w == null) ? 1 : w.data[w.offset + i];
+
+	    if (wi == 0) {
+		continue;
+	    }
+
+	    int ra = a.index(i, 0);
+	    int rb = b.index(i, 0);
+
+	    if ((pc == 1) && (a.columnStride == 1)) {
+		// A matrix-vector product: add a multiple of row i of a.
+		double x = wi * b.data[rb];
+
+		if (x != 0) {
+		    KERNELS.axpy(s, base, x, a.data, ra, s, base, pr);
+		}
+
+		continue;
+	    }
+
+	    for (int k = 0; k < pr; k += 1) {
+		double x = wi * a.data[ra + k * a.columnStride];
+
+		if (x != 0) {
+		    int j0 = symmetric ? k : 0;
+		    int sk = base + k * pc;
+
+		    if (b.columnStride == 1) {
+			KERNELS.axpy(s, sk + j0, x, b.data, rb + j0, s, sk + j0, pc - j0);
+		    } else {
+			for (int j = j0; j < pc; j += 1) {
+			    s[sk + j] += x * b.data[rb + j * b.columnStride];
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Sums the outer products of the rows for a range of tasks, each
+     * taking an equal share of the rows of a and summing them into
+     * its own array, splitting the range in half until a single task
+     * remains.
+     */
+    private static class Rows extends RecursiveAction {
+
+	private final DoubleMatrix a;
+	private final DoubleVector w;
+	private final DoubleMatrix b;
+	private final boolean symmetric;
+	private final double[][] sums;
+	private final int[] bases;
+	private final int lo;
+	private final int hi;
+
+	Rows(DoubleMatrix a, DoubleVector w, DoubleMatrix b, boolean symmetric, double[][] sums, int[] bases, int lo, int hi) {
+	    this.a = a;
+	    this.w = w;
+	    this.b = b;
+	    this.symmetric = symmetric;
+	    this.sums = sums;
+	    this.bases = bases;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected void compute() {
+	    if (hi - lo == 1) {
+		int first = (int) ((long) a.rows * lo / sums.length);
+		int last = (int) ((long) a.rows * (lo + 1) / sums.length);
+
+		partial(a, w, b, symmetric, first, last, sums[lo], bases[lo]);
+	    } else {
+		int mid = (lo + hi) >>> 1;
+
+		invokeAll(new Rows(a, w, b, symmetric, sums, bases, lo, mid),
+			  new Rows(a, w, b, symmetric, sums, bases, mid, hi));
+	    }
+	}
+
+    }
+
+}
@@ -0,0 +1,40 @@
+package math;
+
+/**
+ * Unsigned 64-bit arithmetic shared by DoubleParser and
+ * DoubleFormatter, written without Math.multiplyHigh (which needs
+ * Java 9) so that the package still builds for older releases.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+final class UnsignedMath {
+
+    private static final long LOW_32 = 0xFFFFFFFFL;
+
+    private UnsignedMath() {
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned 128-bit product of a
+     * and b, computed from the four products of their 32-bit halves.
+     */
+    static long multiplyHigh(long a, long b) {
+	long a0 = a & LOW_32;
+	long a1 = a >>> 32;
+	long b0 = b & LOW_32;
+	long b1 = b >>> 32;
+
+	// Each partial product fits in 64 unsigned bits.
+	long p00 = a0 * b0;
+	long p01 = a0 * b1;
+	long p10 = a1 * b0;
+	long p11 = a1 * b1;
+
+	// The carry out of the low 64 bits, at most 3 * (2^32 - 1).
+	long middle = (p00 >>> 32) + (p01 & LOW_32) + (p10 & LOW_32);
+
+	return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+
+}
@@ -0,0 +1,112 @@
+package math;
+
+/**
+ * A vector of 2 doubles, held in fields rather than an array. See
+ * Matrix2.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public final class Vector2 {
+
+    double x0;
+
+    double x1;
+
+    /**
+     * Creates a vector of zeroes.
+     */
+    public Vector2() {
+    }
+
+    public Vector2(double x0, double x1) {
+	set(x0, x1);
+    }
+
+    public Vector2 set(double x0, double x1) {
+	this.x0 = x0;
+	this.x1 = x1;
+
+	return this;
+    }
+
+    public Vector2 set(Vector2 v) {
+	return set(v.x0, v.x1);
+    }
+
+    public double get(int i) {
+	switch (i) {
+	case 0: return x0;
+	case 1: return x1;
+	default: throw new IndexOutOfBoundsException("Index " + i + " out of range: length 2.");
+	}
+    }
+
+    public void set(int i, double x) {
+	switch (i) {
+	case 0: x0 = x; break;
+	case 1: x1 = x; break;
+	default: throw new IndexOutOfBoundsException("Index " + i + " out of range: length 2.");
+	}
+    }
+
+    public int length() {
+	return 2;
+    }
+
+    /**
+     * Stores this + v in dest, which may be this or v; returns dest.
+     */
+    public Vector2 add(Vector2 v, Vector2 dest) {
+	return dest.set(x0 + v.x0, x1 + v.x1);
+    }
+
+    public Vector2 addInPlace(Vector2 v) {
+	return add(v, this);
+    }
+
+    /**
+     * Stores this - v in dest, which may be this or v; returns dest.
+     */
+    public Vector2 subtract(Vector2 v, Vector2 dest) {
+	return dest.set(x0 - v.x0, x1 - v.x1);
+    }
+
+    public Vector2 subtractInPlace(Vector2 v) {
+	return subtract(v, this);
+    }
+
+    /**
+     * Multiplies this vector by d, in place; returns this vector.
+     */
+    public Vector2 multiplyInPlace(double d) {
+	return set(x0 * d, x1 * d);
+    }
+
+    /**
+     * Adds a * v to this vector, in place; returns this vector.
+     */
+    public Vector2 axpy(double a, Vector2 v) {
+	return set(x0 + a * v.x0, x1 + a * v.x1);
+    }
+
+    public double dotProduct(Vector2 v) {
+	return x0 * v.x0 + x1 * v.x1;
+    }
+
+    /**
+     * Returns the Euclidean norm of this vector.
+     */
+    public double norm() {
+	return Math.sqrt(dotProduct(this));
+    }
+
+    public DoubleVector toDoubleVector() {
+	return new DoubleVector(new double[]{x0, x1});
+    }
+
+    public String toString() {
+	return "[" + x0 + " " + x1 + "]";
+    }
+
+}
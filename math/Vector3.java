@@ -0,0 +1,117 @@
+package math;
+
+/**
+ * A vector of 3 doubles, held in fields rather than an array. See
+ * Matrix3.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public final class Vector3 {
+
+    double x0;
+
+    double x1;
+
+    double x2;
+
+    /**
+     * Creates a vector of zeroes.
+     */
+    public Vector3() {
+    }
+
+    public Vector3(double x0, double x1, double x2) {
+	set(x0, x1, x2);
+    }
+
+    public Vector3 set(double x0, double x1, double x2) {
+	this.x0 = x0;
+	this.x1 = x1;
+	this.x2 = x2;
+
+	return this;
+    }
+
+    public Vector3 set(Vector3 v) {
+	return set(v.x0, v.x1, v.x2);
+    }
+
+    public double get(int i) {
+	switch (i) {
+	case 0: return x0;
+	case 1: return x1;
+	case 2: return x2;
+	default: throw new IndexOutOfBoundsException("Index " + i + " out of range: length 3.");
+	}
+    }
+
+    public void set(int i, double x) {
+	switch (i) {
+	case 0: x0 = x; break;
+	case 1: x1 = x; break;
+	case 2: x2 = x; break;
+	default: throw new IndexOutOfBoundsException("Index " + i + " out of range: length 3.");
+	}
+    }
+
+    public int length() {
+	return 3;
+    }
+
+    /**
+     * Stores this + v in dest, which may be this or v; returns dest.
+     */
+    public Vector3 add(Vector3 v, Vector3 dest) {
+	return dest.set(x0 + v.x0, x1 + v.x1, x2 + v.x2);
+    }
+
+    public Vector3 addInPlace(Vector3 v) {
+	return add(v, this);
+    }
+
+    /**
+     * Stores this - v in dest, which may be this or v; returns dest.
+     */
+    public Vector3 subtract(Vector3 v, Vector3 dest) {
+	return dest.set(x0 - v.x0, x1 - v.x1, x2 - v.x2);
+    }
+
+    public Vector3 subtractInPlace(Vector3 v) {
+	return subtract(v, this);
+    }
+
+    /**
+     * Multiplies this vector by d, in place; returns this vector.
+     */
+    public Vector3 multiplyInPlace(double d) {
+	return set(x0 * d, x1 * d, x2 * d);
+    }
+
+    /**
+     * Adds a * v to this vector, in place; returns this vector.
+     */
+    public Vector3 axpy(double a, Vector3 v) {
+	return set(x0 + a * v.x0, x1 + a * v.x1, x2 + a * v.x2);
+    }
+
+    public double dotProduct(Vector3 v) {
+	return x0 * v.x0 + x1 * v.x1 + x2 * v.x2;
+    }
+
+    /**
+     * Returns the Euclidean norm of this vector.
+     */
+    public double norm() {
+	return Math.sqrt(dotProduct(this));
+    }
+
+    public DoubleVector toDoubleVector() {
+	return new DoubleVector(new double[]{x0, x1, x2});
+    }
+
+    public String toString() {
+	return "[" + x0 + " " + x1 + " " + x2 + "]";
+    }
+
+}
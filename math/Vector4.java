@@ -0,0 +1,122 @@
+package math;
+
+/**
+ * A vector of 4 doubles, held in fields rather than an array. See
+ * Matrix4.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public final class Vector4 {
+
+    double x0;
+
+    double x1;
+
+    double x2;
+
+    double x3;
+
+    /**
+     * Creates a vector of zeroes.
+     */
+    public Vector4() {
+    }
+
+    public Vector4(double x0, double x1, double x2, double x3) {
+	set(x0, x1, x2, x3);
+    }
+
+    public Vector4 set(double x0, double x1, double x2, double x3) {
+	this.x0 = x0;
+	this.x1 = x1;
+	this.x2 = x2;
+	this.x3 = x3;
+
+	return this;
+    }
+
+    public Vector4 set(Vector4 v) {
+	return set(v.x0, v.x1, v.x2, v.x3);
+    }
+
+    public double get(int i) {
+	switch (i) {
+	case 0: return x0;
+	case 1: return x1;
+	case 2: return x2;
+	case 3: return x3;
+	default: throw new IndexOutOfBoundsException("Index " + i + " out of range: length 4.");
+	}
+    }
+
+    public void set(int i, double x) {
+	switch (i) {
+	case 0: x0 = x; break;
+	case 1: x1 = x; break;
+	case 2: x2 = x; break;
+	case 3: x3 = x; break;
+	default: throw new IndexOutOfBoundsException("Index " + i + " out of range: length 4.");
+	}
+    }
+
+    public int length() {
+	return 4;
+    }
+
+    /**
+     * Stores this + v in dest, which may be this or v; returns dest.
+     */
+    public Vector4 add(Vector4 v, Vector4 dest) {
+	return dest.set(x0 + v.x0, x1 + v.x1, x2 + v.x2, x3 + v.x3);
+    }
+
+    public Vector4 addInPlace(Vector4 v) {
+	return add(v, this);
+    }
+
+    /**
+     * Stores this - v in dest, which may be this or v; returns dest.
+     */
+    public Vector4 subtract(Vector4 v, Vector4 dest) {
+	return dest.set(x0 - v.x0, x1 - v.x1, x2 - v.x2, x3 - v.x3);
+    }
+
+    public Vector4 subtractInPlace(Vector4 v) {
+	return subtract(v, this);
+    }
+
+    /**
+     * Multiplies this vector by d, in place; returns this vector.
+     */
+    public Vector4 multiplyInPlace(double d) {
+	return set(x0 * d, x1 * d, x2 * d, x3 * d);
+    }
+
+    /**
+     * Adds a * v to this vector, in place; returns this vector.
+     */
+    public Vector4 axpy(double a, Vector4 v) {
+	return set(x0 + a * v.x0, x1 + a * v.x1, x2 + a * v.x2, x3 + a * v.x3);
+    }
+
+    public double dotProduct(Vector4 v) {
+	return x0 * v.x0 + x1 * v.x1 + x2 * v.x2 + x3 * v.x3;
+    }
+
+    /**
+     * Returns the Euclidean norm of this vector.
+     */
+    public double norm() {
+	return Math.sqrt(dotProduct(this));
+    }
+
+    public DoubleVector toDoubleVector() {
+	return new DoubleVector(new double[]{x0, x1, x2, x3});
+    }
+
+    public String toString() {
+	return "[" + x0 + " " + x1 + " " + x2 + " " + x3 + "]";
+    }
+
+}
@@ -0,0 +1,167 @@
+package math;
+
+/**
+ * The inner loops of the elementwise operations and reductions on
+ * DoubleVector and DoubleMatrix, over runs of contiguous elements.
+ *
+ * The instance used is chosen when this class is loaded. If the class
+ * SimdKernels (which uses the incubating jdk.incubator.vector API,
+ * and is compiled separately; see the Makefile) can be loaded, it is
+ * used; this requires a JDK with the module, and the JVM to be run
+ * with --add-modules jdk.incubator.vector. Otherwise, or if the
+ * system property math.simd is set to false, the plain loops in
+ * Scalar are used.
+ *
+ * The SIMD reductions add up partial sums in a different order from
+ * the scalar loops, so their results may differ in the last few
+ * bits.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+abstract class VectorKernels {
+
+    static final VectorKernels INSTANCE = load();
+
+    private static VectorKernels load() {
+	if (!"false".equals(System.getProperty("math.simd"))) {
+	    try {
+		return (VectorKernels) Class.forName("math.SimdKernels").getDeclaredConstructor().newInstance();
+	    } catch (Throwable t) {
+		// The class or the module is missing; fall through.
+	    }
+	}
+
+	return new Scalar();
+    }
+
+    /**
+     * Returns true if the SIMD kernels are in use.
+     */
+    abstract boolean isSimd();
+
+    /**
+     * Returns the sum of a[ao] to a[ao + n - 1].
+     */
+    abstract double sum(double[] a, int ao, int n);
+
+    /**
+     * Returns the sum of the products a[ao + i] * b[bo + i], for i
+     * from 0 to n - 1.
+     */
+    abstract double dot(double[] a, int ao, double[] b, int bo, int n);
+
+    /**
+     * Returns the sum of the squares of a[ao] to a[ao + n - 1].
+     */
+    abstract double sumOfSquares(double[] a, int ao, int n);
+
+    /**
+     * Returns the sum of the squares of the differences a[ao + i] -
+     * b[bo + i], for i from 0 to n - 1.
+     */
+    abstract double squaredDistance(double[] a, int ao, double[] b, int bo, int n);
+
+    /**
+     * Sets c[co + i] = a[ao + i] + b[bo + i], for i from 0 to n - 1;
+     * c may be a or b (at the same offset). Likewise for subtract,
+     * multiply and divide.
+     */
+    abstract void add(double[] a, int ao, double[] b, int bo, double[] c, int co, int n);
+
+    abstract void subtract(double[] a, int ao, double[] b, int bo, double[] c, int co, int n);
+
+    abstract void multiply(double[] a, int ao, double[] b, int bo, double[] c, int co, int n);
+
+    abstract void divide(double[] a, int ao, double[] b, int bo, double[] c, int co, int n);
+
+    /**
+     * Sets c[co + i] = a[ao + i] + s * b[bo + i], for i from 0 to n
+     * - 1.
+     */
+    abstract void axpy(double[] a, int ao, double s, double[] b, int bo, double[] c, int co, int n);
+
+    /**
+     * The scalar loops, which give the same results as the loops
+     * they replaced in DoubleVector and DoubleMatrix.
+     */
+    static class Scalar extends VectorKernels {
+
+	boolean isSimd() {
+	    return false;
+	}
+
+	double sum(double[] a, int ao, int n) {
+	    double s = 0;
+
+	    for (int i = 0; i < n; i += 1) {
+		s += a[ao + i];
+	    }
+
+	    return s;
+	}
+
+	double dot(double[] a, int ao, double[] b, int bo, int n) {
+	    double s = 0;
+
+	    for (int i = 0; i < n; i += 1) {
+		s += a[ao + i] * b[bo + i];
+	    }
+
+	    return s;
+	}
+
+	double sumOfSquares(double[] a, int ao, int n) {
+	    double s = 0;
+
+	    for (int i = 0; i < n; i += 1) {
+		s += a[ao + i] * a[ao + i];
+	    }
+
+	    return s;
+	}
+
+	double squaredDistance(double[] a, int ao, double[] b, int bo, int n) {
+	    double s = 0;
+
+	    for (int i = 0; i < n; i += 1) {
+		double d = a[ao + i] - b[bo + i];
+		s += d * d;
+	    }
+
+	    return s;
+	}
+
+	void add(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	    for (int i = 0; i < n; i += 1) {
+		c[co + i] = a[ao + i] + b[bo + i];
+	    }
+	}
+
+	void subtract(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	    for (int i = 0; i < n; i += 1) {
+		c[co + i] = a[ao + i] - b[bo + i];
+	    }
+	}
+
+	void multiply(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	    for (int i = 0; i < n; i += 1) {
+		c[co + i] = a[ao + i] * b[bo + i];
+	    }
+	}
+
+	void divide(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+	    for (int i = 0; i < n; i += 1) {
+		c[co + i] = a[ao + i] / b[bo + i];
+	    }
+	}
+
+	void axpy(double[] a, int ao, double s, double[] b, int bo, double[] c, int co, int n) {
+	    for (int i = 0; i < n; i += 1) {
+		c[co + i] = a[ao + i] + s * b[bo + i];
+	    }
+	}
+
+    }
+
+}
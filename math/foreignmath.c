@@ -0,0 +1,53 @@
+/*
+ * Native functions called from math.ForeignMath through the foreign
+ * function and memory API (java.lang.foreign). Unlike math_JNIMath.c,
+ * this is a plain C library with no JNI dependencies: the Java side
+ * passes pointers to off-heap memory, so no arrays are marshalled.
+ *
+ * All matrices are dense and stored by rows.
+ */
+
+#include <math.h>
+
+
+/*
+ * Computes p = a * b, where a is r1 x c1 and b is c1 x c2. The i-k-j
+ * loop order reads b and writes p along rows.
+ */
+void fm_multiply(const double * a, const double * b, double * p, int r1, int c1, int c2) {
+
+    int i, j, k;
+
+    for (i = 0; i < r1; i += 1) {
+
+	double * pi = p + (long) i * c2;
+
+	for (j = 0; j < c2; j += 1) {
+
+	    pi[j] = 0;
+
+	}
+
+	for (k = 0; k < c1; k += 1) {
+
+	    double aik = a[(long) i * c1 + k];
+	    const double * bk = b + (long) k * c2;
+
+	    for (j = 0; j < c2; j += 1) {
+
+		pi[j] += aik * bk[j];
+
+	    }
+
+	}
+
+    }
+
+}
+
+
+double fm_lgamma(double x) {
+
+    return lgamma(x);
+
+}
@@ -75,12 +75,16 @@ public class GradMin {
      * Starting at point p, finds the minimum in direction q of the
      * function whose gradient is grad, to precision eps. We use the
      * fact that at the desired point, the gradient will be
-     * perpendicular to the direction in which we're searching.
+     * perpendicular to the direction in which we're searching. The
+     * points at which the gradient is evaluated are all computed into
+     * a single buffer, so grad must not retain its argument.
      */
     public static DoubleVector lineMin(final VectorFunctional grad, final DoubleVector p, final DoubleVector q, double eps) {
+	final DoubleVector v = new DoubleVector(p.length());
+
 	Function f = new Function() {
 		public double apply(double x) {
-		    DoubleVector v = p.add(q.multiply(x));
+		    p.axpy(x, q, v);
 		    return q.dotProduct(grad.apply(v));
 		}
 	    };
@@ -88,7 +92,7 @@ public class GradMin {
 	double[] root = bisectRoot(f, eps);
 	double x0 = (root[0] + root[1]) / 2;
 
-	return p.add(q.multiply(x0));
+	return p.axpy(x0, q, v);
     }
 
     /**
@@ -3,6 +3,7 @@ package stat;
 
 import math.DoubleMatrix;
 import math.DoubleVector;
+import math.SparseDoubleMatrix;
 import math.SingularMatrixException;
 
 /**
@@ -10,7 +11,7 @@ import math.SingularMatrixException;
  * least-squares algorithm.
  *
  * @author <a href="mailto:jdale@berkeley.edu">Joseph Dale</a>
- * @version 20060823
+ * @version 20261017
  */
 public class LogisticRegression {
 
@@ -21,10 +22,22 @@ public class LogisticRegression {
     private static final double EPS = 1e-8;
 
     /**
-     * The design matrix.
+     * The design matrix, if it is dense; otherwise null.
      */
     private DoubleMatrix X;
 
+    /**
+     * The design matrix, if it is sparse; otherwise null.
+     */
+    private SparseDoubleMatrix sparseX;
+
+    /**
+     * The dimensions of the design matrix.
+     */
+    private int n;
+
+    private int p;
+
     /**
      * The output vector.
      */
@@ -58,11 +71,41 @@ public class LogisticRegression {
      */
     private double deltaLL;
 
+    /*
+     * Buffers reused on every iteration: the weights, X' * W * X,
+     * y - pi, and X' * (y - pi).
+     */
+    private DoubleVector w;
+
+    private DoubleMatrix G;
+
+    private DoubleVector r;
+
+    private DoubleVector d;
+
 
     public LogisticRegression(DoubleMatrix X, DoubleVector y) {
 
 	this.X = X;
 	this.y = y;
+	this.n = X.rows();
+	this.p = X.columns();
+
+    }
+
+
+    /**
+     * Creates a regression on a sparse design matrix. Each iteration
+     * then takes time proportional to the number of non-zero elements
+     * of X (more precisely, to the sum of the squares of the numbers
+     * of non-zero elements in each row), rather than to its size.
+     */
+    public LogisticRegression(SparseDoubleMatrix X, DoubleVector y) {
+
+	this.sparseX = X.toCSR();
+	this.y = y;
+	this.n = X.rows();
+	this.p = X.columns();
 
     }
 
@@ -154,18 +197,23 @@ public class LogisticRegression {
 
     private void initialize() {
 
-	this.beta = new DoubleVector(X.columns());
+	this.beta = new DoubleVector(p);
 	beta.fill(0);
 
-	this.theta = new DoubleVector(X.rows());
+	this.theta = new DoubleVector(n);
 	theta.fill(0);
 
-	this.pi = new DoubleVector(X.rows());
+	this.pi = new DoubleVector(n);
 	pi.fill(0.5);
 
 	this.ll = computeLogLikelihood();
 	this.deltaLL = Double.NaN;
 
+	this.w = new DoubleVector(n);
+	this.G = new DoubleMatrix(p, p);
+	this.r = new DoubleVector(n);
+	this.d = new DoubleVector(p);
+
 // 	System.err.println("Initial parameters: " + beta);
 // 	System.err.println("Initial log-likelihood: " + ll);
 
@@ -176,36 +224,38 @@ public class LogisticRegression {
 
 	double llOld = ll;
 
-	DoubleMatrix WX = X.clone();
+	for (int i = 0; i < n; i += 1) {
 
-	/*
-	 * Instead of actually forming the diagonal weight matrix W,
-	 * then doing a full matrix multiplication by the design
-	 * matrix X, we do things much more efficiently, computing WX
-	 * by multiplying the ith row of X by the ith element of W.
-	 */
-	for (int i = 0; i < WX.rows(); i += 1) {
+	    w.set(i, pi.get(i) * (1 - pi.get(i)));
 
-	    double w = pi.get(i) * (1 - pi.get(i));
+	}
 
-	    for (int j = 0; j < WX.columns(); j += 1) {
+	if (X != null) {
 
-		WX.set(i, j, w * WX.get(i, j));
+	    updateDense();
 
-	    }
+	} else {
 
-	}
+	    updateSparse();
 
-	DoubleMatrix tX = X.transpose();
-	DoubleMatrix G = tX.multiply(WX);
-	DoubleVector d = tX.multiply(y.subtract(pi));
+	}
 
 	try {
 
 	    DoubleVector z = G.solve(d);
-	    beta = beta.add(z);
-	    theta = X.multiply(beta);
-	    pi = inverseLogit(theta);
+	    beta.addInPlace(z);
+
+	    if (X != null) {
+
+		X.multiply(beta, theta);
+
+	    } else {
+
+		sparseX.multiply(beta, theta);
+
+	    }
+
+	    inverseLogit(theta, pi);
 	    ll = computeLogLikelihood();
 	    deltaLL = ll - llOld;
 
@@ -218,6 +268,38 @@ public class LogisticRegression {
     }
 
 
+    /**
+     * Computes G = X' * W * X and d = X' * (y - pi) for a dense X.
+     */
+    private void updateDense() {
+
+	/*
+	 * Instead of actually forming the diagonal weight matrix W,
+	 * or even the weighted design matrix W * X, the products
+	 * weight each row of X as it is read (whether they stream
+	 * through the rows or, for many columns, are computed in
+	 * tiles), and are computed into the buffers allocated by
+	 * initialize. Apart from the solve, an iteration allocates no
+	 * n x p matrices.
+	 */
+	X.transposeMultiplyWeighted(w, X, G);
+	X.transposeMultiply(y.subtract(pi, r), d);
+
+    }
+
+
+    /**
+     * Computes G = X' * W * X and d = X' * (y - pi) for a sparse X,
+     * touching only its non-zero elements.
+     */
+    private void updateSparse() {
+
+	sparseX.gram(w, G);
+	sparseX.transposeMultiply(y.subtract(pi, r), d);
+
+    }
+
+
     private void checkNaN() throws IdentifiabilityException {
 
 	if (Double.isNaN(ll)) {
@@ -239,9 +321,10 @@ public class LogisticRegression {
     }
 
 
-    private static DoubleVector inverseLogit(DoubleVector theta) {
-
-	DoubleVector pi = new DoubleVector(theta.length());
+    /**
+     * Stores the inverse logit of each element of theta in pi.
+     */
+    private static void inverseLogit(DoubleVector theta, DoubleVector pi) {
 
 	for (int i = 0; i < pi.length(); i += 1) {
 
@@ -253,8 +336,6 @@ public class LogisticRegression {
 
 	}
 
-	return pi;
-
     }
 
 
@@ -0,0 +1,355 @@
+package stat;
+
+import java.util.Arrays;
+
+import math.DoubleMatrix;
+import math.DoubleVector;
+import math.IncrementalQR;
+import math.QRDecomposition;
+import math.SingularMatrixException;
+
+/**
+ * Performs ordinary least-squares regression, via the QR
+ * decomposition of the design matrix rather than the normal
+ * equations.
+ *
+ * The regression can either be fitted to a design matrix held in
+ * memory, or fitted incrementally: rows are added a block at a time
+ * with add, and only the (p + 1) x (p + 1) triangular factor of the
+ * design matrix augmented by the output vector is kept, so the number
+ * of rows is limited only by the time taken to read them. Partial fits
+ * of disjoint blocks of rows can be combined with merge.
+ *
+ * R-squared is computed relative to the mean of y, so it is only
+ * meaningful if the design matrix includes an intercept column.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class OLSRegression {
+
+    /**
+     * The number of parameters (columns of the design matrix).
+     */
+    private final int p;
+
+    /**
+     * The triangular factor of [X y], for incremental fitting; null
+     * if the regression was fitted in memory.
+     */
+    private final IncrementalQR qr;
+
+    /**
+     * The number of rows fitted.
+     */
+    private long n;
+
+    /**
+     * The mean of the output, and the sum of squares of its
+     * deviations from the mean, for R-squared. They are updated a row
+     * at a time by Welford's method, and combined by merge with the
+     * pairwise update of Chan, Golub and LeVeque, as in
+     * math.Covariance; the sum of squares less the square of the sum
+     * over n cancels catastrophically when the mean is large compared
+     * to the spread.
+     */
+    private double meanY;
+
+    private double m2Y;
+
+    /**
+     * The triangular factor R of the design matrix, as of the last
+     * fit.
+     */
+    private DoubleMatrix R;
+
+    /**
+     * The parameter estimate.
+     */
+    private DoubleVector beta;
+
+    /**
+     * The residual sum of squares.
+     */
+    private double rss;
+
+
+    /**
+     * Fits the regression of y on the columns of X, which is not
+     * modified.
+     */
+    public OLSRegression(DoubleMatrix X, DoubleVector y) throws SingularMatrixException {
+
+	if (X.rows() != y.length()) {
+
+	    throw new IllegalArgumentException("Rows of design matrix don't match length of output: " + X.rows() + ", " + y.length() + ".");
+
+	}
+
+	this.p = X.columns();
+	this.qr = null;
+	this.n = 0;
+
+	accumulate(y);
+
+	QRDecomposition d = X.qr();
+
+	this.R = d.getR();
+	this.beta = d.solve(y);
+	this.rss = d.residualSumOfSquares(y);
+
+    }
+
+
+    /**
+     * Creates an incremental regression with p parameters and (as
+     * yet) no rows; add rows with add, then call fit.
+     */
+    public OLSRegression(int p) {
+
+	this.p = p;
+	this.qr = new IncrementalQR(p + 1);
+	this.n = 0;
+
+    }
+
+
+    /**
+     * Adds a block of rows of the design matrix, and the
+     * corresponding elements of the output, to an incremental
+     * regression.
+     */
+    public void add(DoubleMatrix X, DoubleVector y) {
+
+	checkIncremental();
+
+	if (X.columns() != p) {
+
+	    throw new IllegalArgumentException("Columns of design matrix don't match number of parameters: " + X.columns() + ", " + p + ".");
+
+	}
+
+	if (X.rows() != y.length()) {
+
+	    throw new IllegalArgumentException("Rows of design matrix don't match length of output: " + X.rows() + ", " + y.length() + ".");
+
+	}
+
+	qr.add(X.appendColumn(y));
+
+	accumulate(y);
+
+    }
+
+
+    /**
+     * Adds the rows added to another incremental regression (with the
+     * same number of parameters) to this one.
+     */
+    public void merge(OLSRegression other) {
+
+	checkIncremental();
+	other.checkIncremental();
+
+	qr.merge(other.qr);
+
+	if (other.n > 0) {
+
+	    double total = (double) n + other.n;
+	    double delta = other.meanY - meanY;
+
+	    m2Y += other.m2Y + delta * delta * n * (other.n / total);
+	    meanY += delta * (other.n / total);
+	    n += other.n;
+
+	}
+
+    }
+
+
+    /**
+     * Computes the parameter estimate from the rows added so far to an
+     * incremental regression. Rows may still be added afterwards, and
+     * the regression fitted again.
+     */
+    public void fit() throws SingularMatrixException {
+
+	checkIncremental();
+
+	DoubleMatrix Raug = qr.getR();
+
+	this.R = Raug.selectRows(0, p).selectColumns(0, p).clone();
+
+	/*
+	 * The last column of the augmented factor holds Q' * y; its
+	 * first p elements are the right-hand side for beta, and the
+	 * square of its last element is the residual sum of squares.
+	 */
+	double[] z = new double[p];
+
+	for (int i = 0; i < p; i += 1) {
+
+	    z[i] = Raug.get(i, p);
+
+	}
+
+	this.beta = new DoubleVector(backSubstitute(R, z));
+
+	double r = Raug.get(p, p);
+	this.rss = r * r;
+
+    }
+
+
+    public DoubleVector getParameters() {
+
+	return beta.clone();
+
+    }
+
+
+    public double getResidualSumOfSquares() {
+
+	return rss;
+
+    }
+
+
+    /**
+     * Returns the unbiased estimate of the error variance, rss / (n -
+     * p).
+     */
+    public double getResidualVariance() {
+
+	return rss / (n - p);
+
+    }
+
+
+    /**
+     * Returns the standard errors of the parameter estimates, the
+     * square roots of the diagonal of sigma^2 * (X' * X)^-1. Since X'
+     * * X = R' * R, the ith diagonal element of its inverse is the
+     * squared norm of row i of R^-1.
+     */
+    public DoubleVector getStandardErrors() throws SingularMatrixException {
+
+	double s2 = getResidualVariance();
+	DoubleVector se = new DoubleVector(p);
+	double[] e = new double[p];
+
+	for (int j = 0; j < p; j += 1) {
+
+	    // Column j of R^-1.
+	    Arrays.fill(e, 0);
+	    e[j] = 1;
+
+	    double[] c = backSubstitute(R, e);
+
+	    for (int i = 0; i <= j; i += 1) {
+
+		se.set(i, se.get(i) + c[i] * c[i]);
+
+	    }
+
+	}
+
+	for (int i = 0; i < p; i += 1) {
+
+	    se.set(i, Math.sqrt(s2 * se.get(i)));
+
+	}
+
+	return se;
+
+    }
+
+
+    /**
+     * Returns the coefficient of determination, 1 - rss / tss, where
+     * tss is the total sum of squares of y about its mean.
+     */
+    public double getRSquared() {
+
+	return 1 - rss / m2Y;
+
+    }
+
+
+    /**
+     * Returns the number of rows fitted.
+     */
+    public long rows() {
+
+	return n;
+
+    }
+
+
+    /**
+     * Counts the given outputs, and adds them to the mean and sum of
+     * squared deviations.
+     */
+    private void accumulate(DoubleVector y) {
+
+	for (int i = 0; i < y.length(); i += 1) {
+
+	    double delta = y.get(i) - meanY;
+
+	    n += 1;
+	    meanY += delta / n;
+	    m2Y += delta * (y.get(i) - meanY);
+
+	}
+
+    }
+
+
+    /**
+     * Returns the solution x of R * x = z, where R is upper
+     * triangular; throws SingularMatrixException if R has a zero on
+     * its diagonal.
+     */
+    private static double[] backSubstitute(DoubleMatrix R, double[] z) throws SingularMatrixException {
+
+	int p = z.length;
+	double[] x = z.clone();
+
+	for (int i = p - 1; i >= 0; i -= 1) {
+
+	    double rii = R.get(i, i);
+
+	    if (rii == 0) {
+
+		throw new SingularMatrixException("Design matrix is rank deficient.");
+
+	    }
+
+	    double s = x[i];
+
+	    for (int k = i + 1; k < p; k += 1) {
+
+		s -= R.get(i, k) * x[k];
+
+	    }
+
+	    x[i] = s / rii;
+
+	}
+
+	return x;
+
+    }
+
+
+    private void checkIncremental() {
+
+	if (qr == null) {
+
+	    throw new IllegalStateException("Regression was fitted in memory.");
+
+	}
+
+    }
+
+}
@@ -0,0 +1,192 @@
+package stat;
+
+import math.Covariance;
+import math.DoubleMatrix;
+import math.DoubleVector;
+import math.SymmetricEigenDecomposition;
+
+/**
+ * Principal component analysis: the principal components of a set of
+ * p-dimensional observations are the eigenvectors of their covariance
+ * matrix, in decreasing order of the variance (eigenvalue) along
+ * each.
+ *
+ * Only the first k components are computed. When k is small compared
+ * to p, they are found by Lanczos iteration (see
+ * SymmetricEigenDecomposition.largest), which is far faster than the
+ * full eigendecomposition of a large covariance matrix.
+ *
+ * The observations can be given as the rows of a matrix, or as a
+ * Covariance accumulator to which they have been added, so that they
+ * never need to be held in memory at once.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public class PCA {
+
+    /**
+     * The means of the variables.
+     */
+    private final DoubleVector mean;
+
+    /**
+     * The first k eigenvalues and eigenvectors of the covariance
+     * matrix.
+     */
+    private final SymmetricEigenDecomposition eigen;
+
+    /**
+     * The components, as the columns of a p x k matrix.
+     */
+    private final DoubleMatrix components;
+
+    /**
+     * The sum of the variances of all the variables (the trace of the
+     * covariance matrix).
+     */
+    private final double totalVariance;
+
+
+    /**
+     * Computes the first k principal components of the rows of X.
+     */
+    public PCA(DoubleMatrix X, int k) {
+
+	this(X.sumColumns().divideInPlace(X.rows()), X.covariance(), k);
+
+    }
+
+
+    /**
+     * Computes the first k principal components of the rows added to
+     * the given accumulator.
+     */
+    public PCA(Covariance c, int k) {
+
+	this(c.mean(), c.covariance(), k);
+
+    }
+
+
+    /**
+     * Computes the first k principal components of observations with
+     * the given means and covariance matrix.
+     */
+    public PCA(DoubleVector mean, DoubleMatrix covariance, int k) {
+
+	if (mean.length() != covariance.rows()) {
+
+	    throw new IllegalArgumentException("Length of mean doesn't match covariance matrix: " + mean.length() + ", " + covariance.rows() + ".");
+
+	}
+
+	this.mean = mean.clone();
+	this.eigen = covariance.eigen(k);
+	this.components = eigen.getEigenvectors();
+	this.totalVariance = covariance.diagonal().sum();
+
+    }
+
+
+    /**
+     * Returns the number of components computed.
+     */
+    public int components() {
+
+	return components.columns();
+
+    }
+
+
+    public DoubleVector getMean() {
+
+	return mean.clone();
+
+    }
+
+
+    /**
+     * Returns the p x k matrix whose columns are the principal
+     * components.
+     */
+    public DoubleMatrix getComponents() {
+
+	return components.clone();
+
+    }
+
+
+    public DoubleVector getComponent(int i) {
+
+	return eigen.getEigenvector(i);
+
+    }
+
+
+    /**
+     * Returns the variances of the observations along each component,
+     * in decreasing order.
+     */
+    public DoubleVector getVariances() {
+
+	return eigen.getEigenvalues();
+
+    }
+
+
+    /**
+     * Returns the fraction of the total variance of the observations
+     * along each component.
+     */
+    public DoubleVector getExplainedVariance() {
+
+	return eigen.getEigenvalues().divideInPlace(totalVariance);
+
+    }
+
+
+    /**
+     * Returns the coordinates of the given observation along the
+     * components, after subtracting the mean.
+     */
+    public DoubleVector project(DoubleVector x) {
+
+	return x.subtract(mean).multiply(components);
+
+    }
+
+
+    /**
+     * Returns the matrix whose ith row holds the coordinates of the
+     * ith row of X along the components. This is computed as X * V -
+     * 1 * (mean' * V), so that X is neither copied nor centered; the
+     * product is computed in parallel by tiles for large X.
+     */
+    public DoubleMatrix project(DoubleMatrix X) {
+
+	DoubleMatrix scores = X.multiply(components);
+	DoubleVector offset = mean.multiply(components);
+
+	for (int i = 0; i < scores.rows(); i += 1) {
+
+	    scores.getRow(i).subtractInPlace(offset);
+
+	}
+
+	return scores;
+
+    }
+
+
+    /**
+     * Returns the approximation of the observation with the given
+     * coordinates, from the first k components.
+     */
+    public DoubleVector reconstruct(DoubleVector scores) {
+
+	return components.multiply(scores).addInPlace(mean);
+
+    }
+
+}
@@ -5,58 +5,53 @@ import static math.GammaFunction.digamma;
 import static math.GammaFunction.trigamma;
 
 import math.DoubleVector;
-import math.DoubleMatrix;
+import math.Matrix2;
+import math.Vector2;
 
 /**
  * Another attempt at ML estimation for the gamma distribution. This
  * time we try Newton-Raphson.
  *
  * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
- * @version 20060309
+ * @version 20261017
  */
 class GammaMLE {
 
     /**
-     * Computes the score vector, the gradient of the log-likelihood.
+     * Computes the score vector, the gradient of the log-likelihood,
+     * into s.
      */
-    private static DoubleVector score(double sumX, double sumLogX, int n, double alpha, double beta) {
-	DoubleVector s = new DoubleVector(2);
-
-	s.set(0, sumLogX - n * (log(beta) + digamma(alpha)));
-	s.set(1, (sumX / beta - n * alpha) / beta);
-
-	return s;
+    private static Vector2 score(double sumX, double sumLogX, int n, double alpha, double beta, Vector2 s) {
+	return s.set(sumLogX - n * (log(beta) + digamma(alpha)),
+		     (sumX / beta - n * alpha) / beta);
     }
 
     /**
      * Computes the information matrix, the negative of the matrix of
-     * second derivatives of the log-likelihood.
+     * second derivatives of the log-likelihood, into i.
      */
-    private static DoubleMatrix information(double sumX, int n, double alpha, double beta) {
-	DoubleMatrix i = new DoubleMatrix(2, 2);
-
-	i.set(0, 0, n * trigamma(alpha));
-	i.set(0, 1, n / beta);
-	i.set(1, 0, n / beta);
-	i.set(1, 1, (2 * sumX / beta - n * alpha) / (beta * beta));
-
-	return i;
+    private static Matrix2 information(double sumX, int n, double alpha, double beta, Matrix2 i) {
+	return i.set(n * trigamma(alpha), n / beta,
+		     n / beta, (2 * sumX / beta - n * alpha) / (beta * beta));
     }
 
-    private static DoubleVector solve(DoubleVector x, double alphaInit, double betaInit) {
+    /**
+     * The score, information and Newton step are 2 x 2, so they are
+     * held in fixed-size types and updated in place: each iteration
+     * allocates nothing.
+     */
+    private static Vector2 solve(DoubleVector x, double alphaInit, double betaInit) {
 	double EPS = 1e-10;
 
-	DoubleVector params = new DoubleVector(2);
-	params.set(0, alphaInit);
-	params.set(1, betaInit);
+	Vector2 params = new Vector2(alphaInit, betaInit);
+	Vector2 s = new Vector2();
+	Matrix2 i = new Matrix2();
 	int n = x.length();
 	double sumX = x.sum();
 	double sumLogX = x.log().sum();
 
 	while (true) {
-// 	    System.out.println("alpha = " + params.get(0) + ", beta = " + params.get(1));
-	    DoubleVector s = score(sumX, sumLogX, n, params.get(0), params.get(1));
-	    DoubleMatrix i = information(sumX, n, params.get(0), params.get(1));
+	    score(sumX, sumLogX, n, params.get(0), params.get(1), s);
 
 	    /*
 	     * Stop when the norm of the gradient of the
@@ -66,7 +61,7 @@ class GammaMLE {
 		return params;
 	    } else {
 		try {
-		    params = params.add(i.solve(s));
+		    params.addInPlace(information(sumX, n, params.get(0), params.get(1), i).solve(s, s));
 		} catch (math.SingularMatrixException sme) {
 		    System.err.println("Information matrix singular -- cannot continue.");
 		    System.exit(1);
@@ -77,7 +72,7 @@ class GammaMLE {
 
     static GammaDistribution newtonMLE(DoubleVector x) {
 	GammaDistribution moment = GammaDistribution.momentEstimate(x);
-	DoubleVector params = solve(x, moment.getShape(), moment.getScale());
+	Vector2 params = solve(x, moment.getShape(), moment.getScale());
 
 	return new GammaDistribution(params.get(0), params.get(1));
     }
@@ -1,12 +1,19 @@
 package stat.dist;
 
+import math.CholeskyDecomposition;
 import math.DoubleMatrix;
 import math.DoubleVector;
+import math.Lib;
 import math.SingularMatrixException;
 
 /**
+ * A multivariate normal distribution. The covariance matrix is kept
+ * only in the form of its Cholesky factor L (covariance = L * L'),
+ * from which densities, Mahalanobis distances and random vectors are
+ * all computed in O(m^2) time per vector.
+ *
  * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
- * @version 20070817
+ * @version 20261017
  */
 public class MultivariateNormalDistribution extends DoubleVectorDistribution {
 
@@ -21,19 +28,22 @@ public class MultivariateNormalDistribution extends DoubleVectorDistribution {
     private DoubleVector mean;
 
     /**
-     * The variance-covariance matrix, an m-by-m matrix.
+     * The Cholesky decomposition of the variance-covariance matrix,
+     * an m-by-m matrix.
      */
-    private DoubleMatrix covariance;
+    private CholeskyDecomposition cholCov;
 
     /**
-     * The inverse of the covariance matrix.
+     * The natural logarithm of the determinant of the covariance
+     * matrix.
      */
-    private DoubleMatrix inverseCov;
+    private double logDetCov;
 
     /**
-     * The determinant of the covariance matrix.
+     * The source of the standard normal variates from which random
+     * vectors are made.
      */
-    private double detCov;
+    private BoxMullerGenerator bm = new BoxMullerGenerator();
 
 
     public MultivariateNormalDistribution(DoubleVector mean, DoubleMatrix covariance) {
@@ -47,21 +57,26 @@ public class MultivariateNormalDistribution extends DoubleVectorDistribution {
 
 	this.m = mean.length();
 	this.mean = mean.clone();
-	this.covariance = covariance.clone();
+	this.cholCov = covariance.cholesky();
 
 	try {
-	    this.inverseCov = covariance.inverse();
-	    this.detCov = covariance.determinant();
+	    this.logDetCov = cholCov.logDeterminant();
 	} catch (SingularMatrixException sme) {
-	    throw new IllegalArgumentException("Covariance matrix must be non-singular", sme);
+	    throw new IllegalArgumentException("Covariance matrix must be positive definite", sme);
 	}
+    }
 
-// 	System.err.println("NORMAL DIST -- m: " + m);
-// 	System.err.println("NORMAL DIST -- mean: " + mean);
-// 	System.err.println("NORMAL DIST -- covariance: " + covariance);
-// 	System.err.println("NORMAL DIST -- inverse covariance: " + inverseCov);
-// 	System.err.println("NORMAL DIST -- determinant of covariance: " + detCov);
-
+    /**
+     * Returns the vector y such that L * y = x - mean. The squared
+     * length of y is the squared Mahalanobis distance between x and
+     * the mean.
+     */
+    private DoubleVector whiten(DoubleVector x) {
+	try {
+	    return cholCov.solveLower(x.subtract(this.mean));
+	} catch (SingularMatrixException sme) {
+	    throw new ArithmeticException("Something very bad happened -- the covariance matrix is singular!");
+	}
     }
 
     /**
@@ -71,44 +86,81 @@ public class MultivariateNormalDistribution extends DoubleVectorDistribution {
      * between the given vector and the mean of this distribution.
      */
     public double z(DoubleVector x) {
-	DoubleVector v = x.subtract(this.mean);
-	double z = Double.NaN;
-
-	try {
-	    z = Math.sqrt(v.dotProduct(covariance.solve(v)));
-	} catch (SingularMatrixException sme) {
-	    throw new ArithmeticException("Something very bad happened -- the covariance matrix is singular!");
-	}
-
-	return z;
+	return whiten(x).norm();
     }
 
     public double logDensity(DoubleVector x) {
-	return
-	    -0.5 * x.subtract(mean).dotProduct(inverseCov.multiply(x.subtract(mean))) -
-	    0.5 * m * Math.log(2 * Math.PI) - 0.5 * Math.log(detCov);
+	DoubleVector y = whiten(x);
+
+	return -0.5 * y.dotProduct(y) - 0.5 * m * Lib.LN_2PI - 0.5 * logDetCov;
     }
 
     public double density(DoubleVector x) {
 	return Math.exp(logDensity(x));
     }
 
+    /**
+     * Generates a vector r of m independent N(0, 1) variates, then
+     * returns mean + L * r, where L is the Cholesky factor of the
+     * covariance matrix. See chapter 21 of Jordan's textbook, on
+     * sampling.
+     */
     public DoubleVector random() {
-	// Generate a vector r of m independent N(0, 1) variates, then
-	// return mean + sqrt(covariance) * r, where sqrt(covariance)
-	// refers to the Cholesky factor L such that L * L^T =
-	// covariance. See chapter 21 of Jordan's textbook, on
-	// sampling.
+	DoubleVector r = new DoubleVector(m);
+
+	for (int j = 0; j < m; j += 1) {
+	    r.set(j, bm.next());
+	}
 
-	throw new UnsupportedOperationException("Not yet implemented.");
+	try {
+	    return cholCov.multiplyL(r).add(mean);
+	} catch (SingularMatrixException sme) {
+	    throw new ArithmeticException("Something very bad happened -- the covariance matrix is singular!");
+	}
+    }
+
+    /**
+     * Returns an n-by-m matrix whose rows are independent random
+     * vectors sampled from this distribution.
+     */
+    public DoubleMatrix random(int n) {
+	DoubleMatrix r = new DoubleMatrix(n, m);
+
+	for (int i = 0; i < n; i += 1) {
+	    for (int j = 0; j < m; j += 1) {
+		r.set(i, j, bm.next());
+	    }
+	}
+
+	DoubleMatrix x;
+
+	try {
+	    x = cholCov.multiplyLRows(r);
+	} catch (SingularMatrixException sme) {
+	    throw new ArithmeticException("Something very bad happened -- the covariance matrix is singular!");
+	}
+
+	for (int i = 0; i < n; i += 1) {
+	    for (int j = 0; j < m; j += 1) {
+		x.set(i, j, x.get(i, j) + mean.get(j));
+	    }
+	}
+
+	return x;
     }
 
     public DoubleVector mean() {
 	return mean.clone();
     }
 
+    /**
+     * Returns the covariance matrix, recomputed as L * L' from its
+     * Cholesky factor.
+     */
     public DoubleMatrix covariance() {
-	return covariance.clone();
+	DoubleMatrix l = cholCov.getL();
+
+	return l.multiply(l.transpose());
     }
 
     /**
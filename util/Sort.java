@@ -1,13 +1,68 @@
 package util;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Sorting algorithms.
  *
+ * The order methods compute argsorts (the permutation which sorts an
+ * array, as for DoubleVector.order) without creating an object per
+ * element: each element is mapped to a long key whose unsigned order
+ * is the order of the elements, and the keys are sorted together with
+ * their indices by a stable LSD radix sort, RADIX_BITS bits at a
+ * time. Passes over digits which are the same for every key are
+ * skipped, so ints spanning a small range take one or two passes (a
+ * counting sort), and doubles at most six. Given a pool, long arrays
+ * are sorted in parallel: each pass counts the digits of chunks of the
+ * array in parallel, and then moves the chunks in parallel to offsets
+ * computed from the counts, so the result is the same as the serial
+ * sort.
+ *
+ * radixSort sorts arrays of doubles, longs and ints the same way, by
+ * their keys alone, and sort chooses between it and Arrays.sort by
+ * length: for arrays shorter than RADIX_THRESHOLD, the passes over
+ * the RADIX counts of each digit cost more than radix sort saves.
+ *
  * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
- * @version 20140325
+ * @version 20261017
  */
 public class Sort {
 
+    /**
+     * The number of bits of the keys sorted by each pass of radix
+     * sort.
+     */
+    static final int RADIX_BITS = 11;
+
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private static final int MASK = RADIX - 1;
+
+    /**
+     * The length below which arrays are sorted by insertion sort
+     * rather than radix sort.
+     */
+    static final int INSERTION_THRESHOLD = 64;
+
+    /**
+     * The length below which sort uses Arrays.sort rather than radix
+     * sort.
+     */
+    static final int RADIX_THRESHOLD = 1 << 11;
+
+    /**
+     * The length below which arrays are sorted serially, even if a
+     * pool is given.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * The smallest number of elements in a chunk of a parallel pass.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
     /**
      * Sorts an array of doubles in place using insertion sort. From
      * CLR, p. 3.
@@ -89,6 +144,430 @@ public class Sort {
 
     }
 
+    /**
+     * Sorts a into ascending order, as Arrays.sort does; see
+     * sort(double[], int, int, ForkJoinPool).
+     */
+    public static void sort(double[] a) {
+	sort(a, 0, a.length, null);
+    }
+
+    /**
+     * Sorts a[offset] to a[offset + length - 1] into ascending order,
+     * with the same result as Arrays.sort (except that NaNs all become
+     * the canonical NaN): with Arrays.sort if the range is shorter
+     * than RADIX_THRESHOLD, and otherwise with radix sort, in parallel
+     * in the given pool if it isn't null and the range is long enough.
+     */
+    public static void sort(double[] a, int offset, int length, ForkJoinPool pool) {
+	if (length < RADIX_THRESHOLD) {
+	    Arrays.sort(a, offset, offset + length);
+	} else {
+	    radixSort(a, offset, length, pool);
+	}
+    }
+
+    public static void sort(long[] a) {
+	sort(a, 0, a.length, null);
+    }
+
+    public static void sort(long[] a, int offset, int length, ForkJoinPool pool) {
+	if (length < RADIX_THRESHOLD) {
+	    Arrays.sort(a, offset, offset + length);
+	} else {
+	    radixSort(a, offset, length, pool);
+	}
+    }
+
+    public static void sort(int[] a) {
+	sort(a, 0, a.length, null);
+    }
+
+    public static void sort(int[] a, int offset, int length, ForkJoinPool pool) {
+	if (length < RADIX_THRESHOLD) {
+	    Arrays.sort(a, offset, offset + length);
+	} else {
+	    radixSort(a, offset, length, pool);
+	}
+    }
+
+    /**
+     * Sorts an array of doubles in place using LSD radix sort.
+     */
+    public static void radixSort(double[] a) {
+	radixSort(a, 0, a.length, null);
+    }
+
+    public static void radixSort(double[] a, int offset, int length, ForkJoinPool pool) {
+	long[] keys = new long[length];
+
+	for (int i = 0; i < length; i += 1) {
+	    keys[i] = key(a[offset + i]);
+	}
+
+	radixSort(keys, null, pool);
+
+	for (int i = 0; i < length; i += 1) {
+	    a[offset + i] = fromKey(keys[i]);
+	}
+    }
+
+    public static void radixSort(long[] a) {
+	radixSort(a, 0, a.length, null);
+    }
+
+    public static void radixSort(long[] a, int offset, int length, ForkJoinPool pool) {
+	long[] keys = new long[length];
+
+	// Flipping the sign bit gives the unsigned order.
+	for (int i = 0; i < length; i += 1) {
+	    keys[i] = a[offset + i] ^ Long.MIN_VALUE;
+	}
+
+	radixSort(keys, null, pool);
+
+	for (int i = 0; i < length; i += 1) {
+	    a[offset + i] = keys[i] ^ Long.MIN_VALUE;
+	}
+    }
+
+    public static void radixSort(int[] a) {
+	radixSort(a, 0, a.length, null);
+    }
+
+    public static void radixSort(int[] a, int offset, int length, ForkJoinPool pool) {
+	int min = Integer.MAX_VALUE;
+
+	for (int i = offset; i < offset + length; i += 1) {
+	    min = Math.min(min, a[i]);
+	}
+
+	long[] keys = new long[length];
+
+	for (int i = 0; i < length; i += 1) {
+	    keys[i] = (long) a[offset + i] - min;
+	}
+
+	radixSort(keys, null, pool);
+
+	for (int i = 0; i < length; i += 1) {
+	    a[offset + i] = (int) (keys[i] + min);
+	}
+    }
+
+    /**
+     * Returns the permutation which sorts a into ascending order: the
+     * indices of its smallest element, its next smallest, and so on.
+     * Equal elements stay in their original order, -0.0 equals 0.0,
+     * and NaNs come last.
+     */
+    public static int[] order(double[] a) {
+	return order(a, 0, a.length, null);
+    }
+
+    /**
+     * Returns the permutation which sorts a[offset] to a[offset +
+     * length - 1] (with indices from 0), in parallel in the given pool
+     * if it isn't null and the range is long enough.
+     */
+    public static int[] order(double[] a, int offset, int length, ForkJoinPool pool) {
+	long[] keys = new long[length];
+
+	// Adding 0.0 turns -0.0 into 0.0, so that they are equal.
+	for (int i = 0; i < length; i += 1) {
+	    keys[i] = key(a[offset + i] + 0.0);
+	}
+
+	return order(keys, pool);
+    }
+
+    /**
+     * Returns the permutation which sorts a into ascending order,
+     * keeping equal elements in their original order.
+     */
+    public static int[] order(int[] a) {
+	return order(a, 0, a.length, null);
+    }
+
+    public static int[] order(int[] a, int offset, int length, ForkJoinPool pool) {
+	int min = Integer.MAX_VALUE;
+
+	for (int i = offset; i < offset + length; i += 1) {
+	    min = Math.min(min, a[i]);
+	}
+
+	// Offsets from the minimum, so a small range has few digits.
+	long[] keys = new long[length];
+
+	for (int i = 0; i < length; i += 1) {
+	    keys[i] = (long) a[offset + i] - min;
+	}
+
+	return order(keys, pool);
+    }
+
+    /**
+     * Returns a long whose unsigned order is the order of doubles in
+     * Arrays.sort: the bits of x with the sign bit flipped if x is
+     * positive, and every bit flipped if it is negative. -0.0 comes
+     * just before 0.0, and every NaN is mapped with the canonical NaN,
+     * above infinity.
+     */
+    static long key(double x) {
+	long bits = Double.doubleToLongBits(x);
+
+	return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * The inverse of key.
+     */
+    static double fromKey(long key) {
+	return Double.longBitsToDouble(key ^ ((~key >> 63) | Long.MIN_VALUE));
+    }
+
+    /**
+     * Returns the permutation which sorts the given keys, as unsigned
+     * numbers, which are reordered.
+     */
+    private static int[] order(long[] keys, ForkJoinPool pool) {
+	int[] index = new int[keys.length];
+
+	for (int i = 0; i < index.length; i += 1) {
+	    index[i] = i;
+	}
+
+	radixSort(keys, index, pool);
+
+	return index;
+    }
+
+    /**
+     * Sorts the given keys, as unsigned numbers, in place, and the
+     * indices along with them unless index is null.
+     */
+    private static void radixSort(long[] keys, int[] index, ForkJoinPool pool) {
+	int n = keys.length;
+
+	if (n < INSERTION_THRESHOLD) {
+	    insertionSort(keys, index);
+
+	    return;
+	}
+
+	// The bits in which any keys differ.
+	long diff = 0;
+
+	for (int i = 1; i < n; i += 1) {
+	    diff |= keys[i] ^ keys[0];
+	}
+
+	long[] from = keys;
+	long[] to = new long[n];
+	int[] fromIndex = index;
+	int[] toIndex = (index == null) ? null : new int[n];
+
+	for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+	    if (((diff >>> shift) & MASK) == 0) {
+		continue;
+	    }
+
+	    if ((pool != null) && (n >= PARALLEL_THRESHOLD)) {
+		new Pass(from, fromIndex, to, toIndex, shift, pool.getParallelism()).run(pool);
+	    } else {
+		pass(from, fromIndex, to, toIndex, shift);
+	    }
+
+	    long[] k = from;
+	    from = to;
+	    to = k;
+
+	    int[] i = fromIndex;
+	    fromIndex = toIndex;
+	    toIndex = i;
+	}
+
+	// After an odd number of passes, the result is in the copies.
+	if (from != keys) {
+	    System.arraycopy(from, 0, keys, 0, n);
+
+	    if (index != null) {
+		System.arraycopy(fromIndex, 0, index, 0, n);
+	    }
+	}
+    }
+
+    /**
+     * Moves the keys (and their indices, unless index is null) into
+     * the order of the digit at the given shift, keeping keys with
+     * equal digits in order.
+     */
+    private static void pass(long[] keys, int[] index, long[] keys2, int[] index2, int shift) {
+	int[] start = new int[RADIX + 1];
+
+	for (int i = 0; i < keys.length; i += 1) {
+	    start[(int) ((keys[i] >>> shift) & MASK) + 1] += 1;
+	}
+
+	for (int d = 1; d < RADIX; d += 1) {
+	    start[d] += start[d - 1];
+	}
+
+	move(keys, index, keys2, index2, shift, start, 0, keys.length);
+    }
+
+    /**
+     * Moves keys[lo] to keys[hi - 1] (and their indices) to their
+     * places in keys2, where the next key with digit d goes to
+     * start[d].
+     */
+    private static void move(long[] keys, int[] index, long[] keys2, int[] index2, int shift, int[] start, int lo, int hi) {
+	if (index == null) {
+	    for (int i = lo; i < hi; i += 1) {
+		keys2[start[(int) ((keys[i] >>> shift) & MASK)]++] = keys[i];
+	    }
+	} else {
+	    for (int i = lo; i < hi; i += 1) {
+		int p = start[(int) ((keys[i] >>> shift) & MASK)]++;
+
+		keys2[p] = keys[i];
+		index2[p] = index[i];
+	    }
+	}
+    }
+
+    /**
+     * A stable insertion sort of unsigned keys and (unless index is
+     * null) their indices.
+     */
+    private static void insertionSort(long[] keys, int[] index) {
+	for (int j = 1; j < keys.length; j += 1) {
+	    long key = keys[j];
+	    int idx = (index == null) ? 0 : index[j];
+	    int i = j - 1;
+
+	    while ((i >= 0) && (Long.compareUnsigned(keys[i], key) > 0)) {
+		keys[i+1] = keys[i];
+
+		if (index != null) {
+		    index[i+1] = index[i];
+		}
+
+		i -= 1;
+	    }
+
+	    keys[i+1] = key;
+
+	    if (index != null) {
+		index[i+1] = idx;
+	    }
+	}
+    }
+
+    /**
+     * A pass of radix sort over chunks of the keys in parallel: the
+     * digits of each chunk are counted, then each chunk's keys with
+     * digit d go after those of all the smaller digits, and those of
+     * digit d in the chunks before it.
+     */
+    private static class Pass {
+
+	final long[] keys;
+	final int[] index;
+	final long[] keys2;
+	final int[] index2;
+	final int shift;
+	final int chunks;
+	final int chunkSize;
+
+	/**
+	 * The number of keys with each digit in each chunk, and then
+	 * where the first of them goes.
+	 */
+	final int[][] counts;
+
+	Pass(long[] keys, int[] index, long[] keys2, int[] index2, int shift, int parallelism) {
+	    this.keys = keys;
+	    this.index = index;
+	    this.keys2 = keys2;
+	    this.index2 = index2;
+	    this.shift = shift;
+
+	    int n = keys.length;
+	    int chunks = Math.max(1, Math.min(4 * parallelism, n / CHUNK_SIZE));
+
+	    this.chunkSize = (n + chunks - 1) / chunks;
+	    this.chunks = (n + chunkSize - 1) / chunkSize;
+	    this.counts = new int[this.chunks][RADIX];
+	}
+
+	void run(ForkJoinPool pool) {
+	    pool.invoke(new Chunks(this, false, 0, chunks));
+
+	    int p = 0;
+
+	    for (int d = 0; d < RADIX; d += 1) {
+		for (int c = 0; c < chunks; c += 1) {
+		    int count = counts[c][d];
+
+		    counts[c][d] = p;
+		    p += count;
+		}
+	    }
+
+	    pool.invoke(new Chunks(this, true, 0, chunks));
+	}
+
+	void count(int c) {
+	    int[] count = counts[c];
+	    int end = Math.min(keys.length, (c + 1) * chunkSize);
+
+	    for (int i = c * chunkSize; i < end; i += 1) {
+		count[(int) ((keys[i] >>> shift) & MASK)] += 1;
+	    }
+	}
+
+	void move(int c) {
+	    Sort.move(keys, index, keys2, index2, shift, counts[c], c * chunkSize, Math.min(keys.length, (c + 1) * chunkSize));
+	}
+
+    }
+
+    /**
+     * Counts the digits of, or moves, a range of the chunks of a pass,
+     * splitting the range in half until a single chunk remains.
+     */
+    private static class Chunks extends RecursiveAction {
+
+	private final Pass pass;
+	private final boolean move;
+	private final int lo;
+	private final int hi;
+
+	Chunks(Pass pass, boolean move, int lo, int hi) {
+	    this.pass = pass;
+	    this.move = move;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected void compute() {
+	    if (hi - lo == 1) {
+		if (move) {
+		    pass.move(lo);
+		} else {
+		    pass.count(lo);
+		}
+	    } else {
+		int mid = (lo + hi) >>> 1;
+
+		invokeAll(new Chunks(pass, move, lo, mid),
+			  new Chunks(pass, move, mid, hi));
+	    }
+	}
+
+    }
+
     public static void main(String[] args) {
 	double[] a = sample(Integer.parseInt(args[0]));
 	println(a);
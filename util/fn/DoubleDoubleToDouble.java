@@ -0,0 +1,45 @@
+package util.fn;
+
+/**
+ * A function which takes two doubles to a double.
+ *
+ * @author <a href="mailto:jmdale@gmail.com">Joseph Dale</a>
+ * @version 20261017
+ */
+public abstract class DoubleDoubleToDouble {
+
+    /**
+     * Applies this function to the given doubles.
+     */
+    public abstract double apply(double x, double y);
+
+    /**
+     * Applies this function to the corresponding elements of the given
+     * arrays, returning a new array z such that z[i] =
+     * this.apply(x[i], y[i]).
+     */
+    public double[] map(double[] x, double[] y) {
+	double[] z = new double[x.length];
+
+	for (int i = 0; i < z.length; i++) {
+	    z[i] = this.apply(x[i], y[i]);
+	}
+
+	return z;
+    }
+
+    /**
+     * Returns identity combined with each element of x in turn:
+     * apply(... apply(apply(identity, x[0]), x[1]) ..., x[n - 1]).
+     */
+    public double reduce(double identity, double[] x) {
+	double r = identity;
+
+	for (int i = 0; i < x.length; i++) {
+	    r = this.apply(r, x[i]);
+	}
+
+	return r;
+    }
+
+}